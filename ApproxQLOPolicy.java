@@ -0,0 +1,90 @@
+/**
+ * Greedy scheduling policy of a trained QFunction.
+ *
+ * Every task is moved to the destination VM with the max predicted Q value
+ * among the moves that decrease the total VM queue task absolute variance,
+ * as long as there is one. A decision predicts one value per VM and does not
+ * allocate. The function is never changed, but its scratch space is shared,
+ * so one instance must not schedule two batches at once.
+ */
+public class ApproxQLOPolicy implements SchedulingPolicy {
+
+    private final String name;
+    private final QFunction q;
+    private final int[] tasktypelist; // Task length of every task type
+    private final QFeatures features;
+    private final double[] x = new double[QFeatures.COUNT]; // Features of the relocation being rated
+
+    /**
+     * @param name policy name used in reports
+     * @param q trained value function
+     * @param vmmips MIPS of every VM
+     * @param tasktypelist task length of every task type
+     */
+    public ApproxQLOPolicy(String name, QFunction q, int[] vmmips, int[] tasktypelist) {
+        this.name = name;
+        this.q = q;
+        this.tasktypelist = tasktypelist;
+        this.features = new QFeatures(vmmips);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void schedule(VmTaskQueues vmq, VmLoadState load) {
+        rebalance(vmq, load);
+    }
+
+    /**
+     * Rebalance VM queues: move every task to the destination VM with the max
+     * predicted Q value of the moves that decrease the total VM queue task
+     * absolute variance
+     *
+     * @param vmq Vm's task queues holding task type indexes
+     * @param load VM queues load balancing state of the same tasks, balanced
+     */
+    public void rebalance(VmTaskQueues vmq, VmLoadState load) {
+        int states = vmq.getVmCount();
+        for (int state = 0; state < states; state++) {
+            int l = 0;
+            while (l < vmq.size(state)) {
+                long choosedjob = tasktypelist[vmq.get(state, l)];
+                int dest = getDestination(load, state, choosedjob);
+                if (dest >= 0) {
+                    load.move(state, dest, choosedjob);
+                    vmq.move(state, l, dest); // The last task of the queue takes slot l
+                    continue;
+                }
+                l++;
+            }
+        }
+    }
+
+    /**
+     * Destination with the max predicted Q value for a task, of the moves
+     * that decrease the total VM queue task absolute variance
+     *
+     * @param load VM queues load balancing state, balanced
+     * @param source VM queue of the task
+     * @param length task length
+     * @return destination VM, -1 when no move decreases the variance
+     */
+    public int getDestination(VmLoadState load, int source, long length) {
+        int best = -1;
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < load.getVmCount(); i++) {
+            if (i != source && load.getSumAbsVarianceAfterMove(source, i, length) < load.getSumAbsVariance()) {
+                features.get(load, source, i, length, x, 0);
+                double value = q.predict(x, 0);
+                if (best < 0 || maxValue < value) {
+                    maxValue = value;
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+}
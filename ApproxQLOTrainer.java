@@ -0,0 +1,225 @@
+import java.util.SplittableRandom;
+
+/**
+ * Q-Learning trainer of a QFunction.
+ *
+ * Episodes are the ones of QLOTrainer: a random task batch queued round
+ * robin, then learn steps relocating a random task of the current VM to a
+ * destination chosen epsilon-greedy, rewarded with the decrease of the total
+ * VM queue task absolute variance. The reward is divided by the mean queue
+ * length of the batch, like the features.
+ *
+ * Every relocation is added to an ExperienceReplay together with the max Q
+ * value of the state after it, predicted by a target copy of the function for
+ * the same task length, and every step trains the function on one minibatch
+ * drawn from the replay once it holds one. The target copy is refreshed every
+ * targetSync minibatches.
+ *
+ * The function and the replay are the only model state, and neither grows
+ * with the number of VMs. Training runs on the calling thread, so the workers
+ * and syncEpisodes of the TrainingConfig are not used, and it always runs
+ * every episode.
+ */
+public class ApproxQLOTrainer {
+
+    private final int[] vmmips;
+    private final int taskcount;
+    private final int[] tasktypelist; // Task length of every task type
+    private final double gamma; // Discount factor
+    private final double rate; // SGD learning rate
+    private final int batch; // Minibatch size
+    private final int replayCapacity; // Experiences kept for replay
+    private final int targetSync; // Minibatches between two target function refreshes
+
+    private final int states;
+    private final int tasktype;
+    private final QFeatures features;
+
+    private QLOMetrics metrics = QLOMetrics.NOOP;
+    private TaskSource tasks; // Task types of the episode batches
+
+    /**
+     * @param gamma discount factor
+     * @param rate SGD learning rate
+     * @param batch minibatch size
+     * @param replayCapacity experiences kept for replay
+     * @param targetSync minibatches between two target function refreshes
+     */
+    public ApproxQLOTrainer(int[] vmmips, int taskcount, int[] tasktypelist, double gamma, double rate, int batch,
+            int replayCapacity, int targetSync) {
+        if (batch < 1 || targetSync < 1) {
+            throw new IllegalArgumentException("Minibatch size and target sync must be at least 1");
+        }
+        this.vmmips = vmmips;
+        this.taskcount = taskcount;
+        this.tasktypelist = tasktypelist;
+        this.gamma = gamma;
+        this.rate = rate;
+        this.batch = batch;
+        this.replayCapacity = replayCapacity;
+        this.targetSync = targetSync;
+        this.states = vmmips.length;
+        this.tasktype = tasktypelist.length;
+        this.features = new QFeatures(vmmips);
+        this.tasks = TaskSource.uniform(tasktype);
+    }
+
+    /**
+     * Report episodes to a metrics registry
+     */
+    public void setMetrics(QLOMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Draw the task batches of episodes from a source, uniformly random task
+     * types by default
+     */
+    public void setTaskSource(TaskSource tasks) {
+        this.tasks = tasks;
+    }
+
+    /**
+     * Train a value function
+     *
+     * @param q value function of QFeatures.COUNT features, updated in place
+     * @param training episodes, steps, seed and epsilon schedule
+     * @return number of episodes run
+     */
+    public int train(QFunction q, TrainingConfig training) {
+        if (q.getFeatureCount() != QFeatures.COUNT) {
+            throw new IllegalArgumentException("Q function of " + q.getFeatureCount() + " features, "
+                    + QFeatures.COUNT + " expected");
+        }
+        SplittableRandom rand = training.getSeed() == null ? new SplittableRandom()
+                : new SplittableRandom(training.getSeed());
+        Learner learner = new Learner(rand, q);
+        for (int episode = 0; episode < training.getEpisodes(); episode++) {
+            learner.runEpisode(training.getSteps(), training.getEpsilonSchedule().getEpsilon(episode));
+        }
+        return training.getEpisodes();
+    }
+
+    /**
+     * Learner state of one training run
+     */
+    private class Learner {
+
+        private final SplittableRandom rand;
+        private final QFunction q;
+        private final QFunction target; // Predicts the max Q value after a relocation
+        private final ExperienceReplay replay = new ExperienceReplay(replayCapacity, QFeatures.COUNT);
+        private final VmLoadState load = new VmLoadState(vmmips);
+        private final VmTaskQueues vmq = new VmTaskQueues(states, 2 * ((taskcount + states - 1) / states));
+        private final double[] x = new double[QFeatures.COUNT]; // Features of the chosen relocation
+        private final double[] candidatex = new double[QFeatures.COUNT]; // Features of a relocation being rated
+        private final double[] batchx = new double[batch * QFeatures.COUNT];
+        private final double[] targets = new double[batch];
+        private final TaskSource source = tasks.forWorker(0, 1); // Task types of the episode batches
+        private final int[] batchtasks = new int[taskcount]; // Task types of the episode batch
+        private long minibatches;
+
+        private int state; // Current state, a VM with a non empty queue
+
+        Learner(SplittableRandom rand, QFunction q) {
+            this.rand = rand;
+            this.q = q;
+            this.target = q.copy();
+        }
+
+        void runEpisode(int steps, double epsilon) {
+            vmq.clear();
+            load.clear();
+            int vq = 0;
+            source.next(rand, batchtasks, taskcount); // Create tasks randomly, or from a trace
+            for (int j = 0; j < taskcount; j++) {
+                int jobtype = batchtasks[j];
+                vmq.add(vq, jobtype); // Task Round Robin scheduling in VM's queue
+                load.add(vq, tasktypelist[jobtype]);
+                vq = vq + 1 == states ? 0 : vq + 1;
+            }
+            load.balance();
+
+            // Choose start state randomly. The VM queue must not be empty
+            state = rand.nextInt(states);
+            while (load.getLength(state) == 0) {
+                state = rand.nextInt(states);
+            }
+
+            long reward = 0; // Sum of the episode rewards
+            for (int learn = 0; learn < steps; learn++) {
+                reward += learn(epsilon);
+            }
+            metrics.episode(steps, reward, load.getSumAbsVariance());
+        }
+
+        /**
+         * One learn step: relocate a random task of the current queue, store
+         * the experience and train one minibatch
+         *
+         * @return reward of the relocation
+         */
+        long learn(double epsilon) {
+            long prevsumvmqlabsvar = load.getSumAbsVariance();
+            double scale = features.getScale(load);
+            int choosedjobidx = rand.nextInt(vmq.size(state));
+            int choosedjob = vmq.get(state, choosedjobidx); // Task type of the relocated job
+            long length = tasktypelist[choosedjob];
+
+            int nextstate = state;
+            if (epsilon >= 1 || rand.nextDouble() < epsilon) {
+                // Explore: random next state
+                while (state == nextstate) {
+                    nextstate = rand.nextInt(states);
+                }
+                features.get(load, state, nextstate, length, x, 0);
+            } else {
+                // Exploit: next state with the max predicted Q value
+                double maxValue = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < states; i++) {
+                    if (i != state) {
+                        features.get(load, state, i, length, candidatex, 0);
+                        double value = q.predict(candidatex, 0);
+                        if (nextstate == state || maxValue < value) {
+                            maxValue = value;
+                            nextstate = i;
+                            System.arraycopy(candidatex, 0, x, 0, QFeatures.COUNT);
+                        }
+                    }
+                }
+            }
+
+            vmq.move(state, choosedjobidx, nextstate);
+            load.move(state, nextstate, length);
+            long r = prevsumvmqlabsvar - load.getSumAbsVariance(); // Get action Reward
+
+            replay.add(x, 0, r / scale, getMaxQ(nextstate, length));
+            if (replay.size() >= batch) {
+                replay.sample(rand, batch, gamma, batchx, targets);
+                q.train(batchx, targets, batch, rate);
+                minibatches++;
+                if (minibatches % targetSync == 0) {
+                    target.copyFrom(q);
+                }
+            }
+
+            state = nextstate; // Change state to next state
+            return r;
+        }
+
+        /**
+         * Max Q value of the target function for relocating a task of a length
+         * from a VM
+         */
+        private double getMaxQ(int vm, long length) {
+            double maxValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < states; i++) {
+                if (i != vm) {
+                    features.get(load, vm, i, length, candidatex, 0);
+                    maxValue = Math.max(maxValue, target.predict(candidatex, 0));
+                }
+            }
+            return maxValue == Double.NEGATIVE_INFINITY ? 0 : maxValue;
+        }
+    }
+}
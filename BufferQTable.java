@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Q table stored as little endian doubles in byte buffers, off heap when the
+ * buffers are direct or mapped. Rows are split over several buffers so the
+ * table is not limited to the 2 GB of a single buffer.
+ */
+public class BufferQTable implements QTable {
+
+    /** Max bytes of one buffer */
+    static final int CHUNK_BYTES = 1 << 30;
+
+    private final int rows;
+    private final int columns;
+    private final int rowsPerChunk;
+    private final ByteBuffer[] chunks;
+
+    /**
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param chunks buffers holding rowsPerChunk(columns) rows each, positioned at the first value
+     */
+    public BufferQTable(int rows, int columns, ByteBuffer[] chunks) {
+        this.rows = rows;
+        this.columns = columns;
+        this.rowsPerChunk = rowsPerChunk(columns);
+        this.chunks = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            this.chunks[i] = chunks[i].slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Allocate a zero filled table in direct buffers
+     */
+    public static BufferQTable allocateDirect(int rows, int columns) {
+        int rowsPerChunk = rowsPerChunk(columns);
+        ByteBuffer[] chunks = new ByteBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            int chunkRows = Math.min(rowsPerChunk, rows - i * rowsPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(chunkRows * columns * Double.BYTES);
+        }
+        return new BufferQTable(rows, columns, chunks);
+    }
+
+    /**
+     * Number of rows stored in one buffer
+     */
+    static int rowsPerChunk(int columns) {
+        return Math.max(1, CHUNK_BYTES / (columns * Double.BYTES));
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return chunks[row / rowsPerChunk].getDouble(((row % rowsPerChunk) * columns + column) * Double.BYTES);
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        chunks[row / rowsPerChunk].putDouble(((row % rowsPerChunk) * columns + column) * Double.BYTES, value);
+    }
+
+    @Override
+    public QTable newTable() {
+        return allocateDirect(rows, columns);
+    }
+
+    @Override
+    public double getMax(int row) {
+        ByteBuffer chunk = chunks[row / rowsPerChunk];
+        int base = (row % rowsPerChunk) * columns * Double.BYTES;
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < columns; i++) {
+            double value = chunk.getDouble(base + i * Double.BYTES);
+            if (maxValue < value) {
+                maxValue = value;
+            }
+        }
+        return maxValue;
+    }
+}
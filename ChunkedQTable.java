@@ -0,0 +1,117 @@
+/**
+ * Q table whose rows are allocated in chunks of CHUNK_ROWS rows on first
+ * write.
+ *
+ * Rows of a chunk that was never written read as 0 and take no memory, so a
+ * table sized for the max number of load level states only grows with the
+ * states that were visited. Every chunk is a table of the configured backend.
+ * Chunks are allocated by set(), which must not run at the same time as
+ * other methods, like the set() of the other backends.
+ */
+public class ChunkedQTable implements QTable {
+
+    /** Rows of one chunk: 1 << CHUNK_SHIFT */
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    private final String backend;
+    private final int rows;
+    private final int columns;
+    private final QTable[] chunks; // Table of every chunk, null until a row of the chunk is written
+
+    /**
+     * @param backend backend of the chunks, as for QTable.create()
+     */
+    public ChunkedQTable(String backend, int rows, int columns) {
+        QTable.create(backend, 0, columns); // Check the backend name
+        this.backend = backend;
+        this.rows = rows;
+        this.columns = columns;
+        this.chunks = new QTable[(rows + CHUNK_ROWS - 1) / CHUNK_ROWS];
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        QTable chunk = chunks[row >>> CHUNK_SHIFT];
+        return chunk == null ? 0 : chunk.get(row & CHUNK_MASK, column);
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        QTable chunk = chunks[row >>> CHUNK_SHIFT];
+        if (chunk == null) {
+            if (value == 0) {
+                return; // Already 0
+            }
+            chunk = allocate(row >>> CHUNK_SHIFT);
+        }
+        chunk.set(row & CHUNK_MASK, column, value);
+    }
+
+    private QTable allocate(int index) {
+        QTable chunk = QTable.create(backend, Math.min(CHUNK_ROWS, rows - index * CHUNK_ROWS), columns);
+        chunks[index] = chunk;
+        return chunk;
+    }
+
+    @Override
+    public QTable newTable() {
+        return new ChunkedQTable(backend, rows, columns);
+    }
+
+    @Override
+    public double getMax(int row) {
+        QTable chunk = chunks[row >>> CHUNK_SHIFT];
+        return chunk == null ? 0 : chunk.getMax(row & CHUNK_MASK);
+    }
+
+    @Override
+    public int getArgMax(int row) {
+        QTable chunk = chunks[row >>> CHUNK_SHIFT];
+        return chunk == null ? 0 : chunk.getArgMax(row & CHUNK_MASK);
+    }
+
+    /**
+     * Copy the values of another table. Only the chunks allocated in a chunked
+     * table are copied, and chunks it does not have are released.
+     */
+    @Override
+    public void copyFrom(QTable other) {
+        if (!(other instanceof ChunkedQTable) || !((ChunkedQTable) other).backend.equals(backend)) {
+            QTable.super.copyFrom(other);
+            return;
+        }
+        QTable[] from = ((ChunkedQTable) other).chunks;
+        for (int i = 0; i < chunks.length; i++) {
+            if (from[i] == null) {
+                chunks[i] = null;
+            } else {
+                (chunks[i] == null ? allocate(i) : chunks[i]).copyFrom(from[i]);
+            }
+        }
+    }
+
+    /**
+     * Rows held in memory
+     */
+    public int getAllocatedRows() {
+        int allocated = 0;
+        for (QTable chunk : chunks) {
+            if (chunk != null) {
+                allocated += chunk.getRows();
+            }
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * CSV report of cloudlet results, written on a background thread.
+ *
+ * Rows are encoded straight into reusable byte buffers, without building a
+ * String per row. A full buffer is handed to the writer thread, which writes
+ * it to a file channel and hands it back, so encoding and writing overlap and
+ * the simulation thread only waits when every buffer is waiting to be
+ * written.
+ */
+public class CloudletReportWriter implements AutoCloseable {
+
+    static final String HEADER = "cloudletId,status,datacenterId,vmId,cpuTime,startTime,finishTime,cost,responseTime\n";
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int BUFFERS = 4;
+    private static final int MAX_ROW_BYTES = 512;
+    private static final long DECIMAL_SCALE = 10000; // 4 decimals in the time and cost columns
+    private static final ByteBuffer END = ByteBuffer.allocate(0); // Marks the last buffer
+
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(BUFFERS);
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(BUFFERS + 1);
+    private final Thread writer;
+    private final byte[] digits = new byte[20]; // Scratch space of putLong
+    private volatile IOException error; // First error of the writer thread
+    private ByteBuffer buffer; // Buffer rows are encoded into
+
+    /**
+     * Create or replace a report file
+     */
+    public CloudletReportWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        for (int i = 1; i < BUFFERS; i++) {
+            free.add(ByteBuffer.allocateDirect(BUFFER_BYTES));
+        }
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        this.buffer.put(HEADER.getBytes(StandardCharsets.US_ASCII));
+        this.writer = new Thread(this::writeBuffers, "Cloudlet report writer " + file.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Append the result of one cloudlet
+     */
+    public void write(int cloudletId, int status, int datacenterId, int vmId, double cpuTime, double startTime,
+            double finishTime, double cost, double responseTime) throws IOException {
+        if (buffer.remaining() < MAX_ROW_BYTES) {
+            handOff();
+        }
+        putLong(cloudletId);
+        buffer.put((byte) ',');
+        putLong(status);
+        buffer.put((byte) ',');
+        putLong(datacenterId);
+        buffer.put((byte) ',');
+        putLong(vmId);
+        buffer.put((byte) ',');
+        putDouble(cpuTime);
+        buffer.put((byte) ',');
+        putDouble(startTime);
+        buffer.put((byte) ',');
+        putDouble(finishTime);
+        buffer.put((byte) ',');
+        putDouble(cost);
+        buffer.put((byte) ',');
+        putDouble(responseTime);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Write the remaining rows, wait for the writer thread and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (buffer.position() > 0) {
+                full.put(buffer);
+            }
+            full.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+            throw new IOException("Interrupted while writing the cloudlet report", e);
+        } finally {
+            channel.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Give the current buffer to the writer thread and take a free one
+     */
+    private void handOff() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        try {
+            full.put(buffer);
+            buffer = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the cloudlet report", e);
+        }
+    }
+
+    private void writeBuffers() {
+        try {
+            while (true) {
+                ByteBuffer next = full.take();
+                if (next == END) {
+                    return;
+                }
+                next.flip();
+                try {
+                    while (next.hasRemaining()) {
+                        channel.write(next);
+                    }
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+                next.clear();
+                free.put(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value = value / 10;
+        } while (value > 0);
+        buffer.put(digits, i, digits.length - i);
+    }
+
+    /**
+     * Put a value with 4 decimals
+     */
+    private void putDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e14) {
+            buffer.put(Double.toString(value).getBytes(StandardCharsets.US_ASCII)); // Rare, may allocate
+            return;
+        }
+        long scaled = Math.round(Math.abs(value) * DECIMAL_SCALE);
+        if (value < 0 && scaled != 0) {
+            buffer.put((byte) '-');
+        }
+        putLong(scaled / DECIMAL_SCALE);
+        buffer.put((byte) '.');
+        long fraction = scaled % DECIMAL_SCALE;
+        for (long scale = DECIMAL_SCALE / 10; scale > 0; scale = scale / 10) {
+            buffer.put((byte) ('0' + (fraction / scale) % 10));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Q table stored in one flat row-major double array on heap.
+ */
+public class DoubleQTable implements QTable {
+
+    private final int rows;
+    private final int columns;
+    private final double[] q;
+
+    public DoubleQTable(int rows, int columns) {
+        if ((long) rows * columns > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Q table too large for a heap array, use the direct backend");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.q = new double[rows * columns];
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return q[row * columns + column];
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        q[row * columns + column] = value;
+    }
+
+    @Override
+    public QTable newTable() {
+        return new DoubleQTable(rows, columns);
+    }
+
+    @Override
+    public double getMax(int row) {
+        double maxValue = Double.NEGATIVE_INFINITY;
+        int base = row * columns;
+        for (int i = base; i < base + columns; i++) {
+            if (maxValue < q[i]) {
+                maxValue = q[i];
+            }
+        }
+        return maxValue;
+    }
+
+    @Override
+    public void copyFrom(QTable other) {
+        if (other instanceof DoubleQTable) {
+            System.arraycopy(((DoubleQTable) other).q, 0, q, 0, q.length);
+        } else {
+            QTable.super.copyFrom(other);
+        }
+    }
+}
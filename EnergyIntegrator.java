@@ -0,0 +1,143 @@
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.power.models.PowerModel;
+
+/**
+ * Host energy consumption of a list of cloudlets.
+ *
+ * A VM is busy while one of its cloudlets runs in it, and the utilization of
+ * a host is the MIPS of its busy VMs over the MIPS of all its VMs. The
+ * cloudlet start and finish times are sorted and swept once, and the power
+ * of each interval of constant utilization is multiplied by its length.
+ *
+ * Energy is measured in power times ticks of 10 ms. The exact mode, the
+ * default, integrates over the real start and finish times. The tick mode
+ * rounds them to the tick grid first, which sums the host power of every
+ * tick like the table the energy was first computed with.
+ */
+public class EnergyIntegrator {
+
+    /** Ticks per simulated second */
+    static final int TICKS_PER_SECOND = 100;
+
+    private static final int VM_BITS = 20;
+    private static final long VM_MASK = (1L << VM_BITS) - 1;
+
+    private EnergyIntegrator() {
+    }
+
+    /**
+     * Power of every host of a topology integrated over the real cloudlet
+     * times from 0 until the end time
+     *
+     * @see #integrate(List, Topology, PowerModel[], double, String)
+     */
+    public static double integrate(List<? extends Cloudlet> list, Topology topology, PowerModel[] models,
+            double endTime) {
+        return integrate(list, topology, models, endTime, "exact");
+    }
+
+    /**
+     * Power of every host of a topology integrated from 0 until the end time.
+     * The utilization of a host is the MIPS of its busy VMs over the MIPS of
+     * all its VMs. Every host keeps the time its utilization last changed at,
+     * so an event only adds the interval of its own host and the sweep does
+     * not visit every host per event.
+     *
+     * @param list cloudlets, VM ids being topology VM indexes
+     * @param topology host of every VM
+     * @param models power model of every host
+     * @param endTime simulated time the integration ends at
+     * @param mode exact, or tick to round the times to the tick grid
+     * @return energy in power times ticks
+     */
+    public static double integrate(List<? extends Cloudlet> list, Topology topology, PowerModel[] models,
+            double endTime, String mode) {
+        boolean ticks;
+        switch (mode) {
+            case "exact":
+                ticks = false;
+                break;
+            case "tick":
+                ticks = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown energy integration: " + mode);
+        }
+        int vmcount = topology.getVmCount();
+        int hostcount = topology.getHostCount();
+        if (vmcount > VM_MASK) {
+            throw new IllegalArgumentException("Too many VMs: " + vmcount);
+        }
+        double end = getTick(endTime, ticks);
+        long[] mipssum = new long[hostcount]; // MIPS of all VMs of every host
+        for (int vm = 0; vm < vmcount; vm++) {
+            mipssum[topology.getVmHost(vm)] += topology.getVmMips(vm);
+        }
+
+        // Event times in ticks, sorted so an event is keyed by the rank of its time
+        double[] times = new double[list.size() * 2];
+        long[] events = new long[times.length];
+        int n = 0;
+        for (Cloudlet cl : list) {
+            double start = getTick(cl.getExecStartTime(), ticks);
+            double finish = Math.min(getTick(cl.getFinishTime(), ticks), end);
+            if (start < finish) {
+                long vm = cl.getVmId();
+                times[n] = start;
+                events[n++] = (vm << 1) | 1;
+                times[n] = finish;
+                events[n++] = vm << 1;
+            }
+        }
+        double[] sorted = Arrays.copyOf(times, n);
+        Arrays.sort(sorted);
+        // Event: time rank << (VM_BITS + 1) | vm << 1 | start
+        for (int i = 0; i < n; i++) {
+            events[i] |= (long) Arrays.binarySearch(sorted, times[i]) << (VM_BITS + 1);
+        }
+        Arrays.sort(events, 0, n);
+
+        int[] running = new int[vmcount]; // Running cloudlets of every VM
+        long[] utilsum = new long[hostcount]; // MIPS of the busy VMs of every host
+        double[] since = new double[hostcount]; // Time the utilization of every host last changed at
+        double power = 0;
+        for (int i = 0; i < n; i++) {
+            double time = sorted[(int) (events[i] >>> (VM_BITS + 1))];
+            int vm = (int) ((events[i] >>> 1) & VM_MASK);
+            int change = 0;
+            if ((events[i] & 1) == 1) {
+                if (running[vm]++ == 0) {
+                    change = topology.getVmMips(vm);
+                }
+            } else if (--running[vm] == 0) {
+                change = -topology.getVmMips(vm);
+            }
+            if (change != 0) {
+                int host = topology.getVmHost(vm);
+                power += getPower(models[host], utilsum[host], mipssum[host]) * (time - since[host]);
+                since[host] = time;
+                utilsum[host] += change;
+            }
+        }
+        for (int host = 0; host < hostcount; host++) {
+            if (end > since[host]) {
+                power += getPower(models[host], utilsum[host], mipssum[host]) * (end - since[host]);
+            }
+        }
+        return power;
+    }
+
+    /**
+     * Simulated time in ticks, rounded to the tick grid in tick mode
+     */
+    private static double getTick(double time, boolean ticks) {
+        return ticks ? Math.round(time * TICKS_PER_SECOND) : time * TICKS_PER_SECOND;
+    }
+
+    private static double getPower(PowerModel model, long utilsum, long mipssum) {
+        return model.getPower(mipssum == 0 ? 0 : (double) utilsum / mipssum);
+    }
+}
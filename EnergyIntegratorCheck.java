@@ -0,0 +1,197 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.power.models.PowerModel;
+
+/**
+ * Randomized check of EnergyIntegrator.
+ *
+ * Runs random overlapping cloudlets on the VMs of random topologies with
+ * quadratic host power models. The exact mode must match the power of every
+ * host at the middle of every interval between two cloudlet times, times the
+ * interval length, and the tick mode must match the power of every host
+ * summed over a table of the busy VMs of every tick. On times of the tick
+ * grid both modes must agree.
+ */
+public class EnergyIntegratorCheck {
+
+    private static final double TOLERANCE = 1e-9; // Relative rounding difference of the summation orders
+
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("topology", ".csv");
+        try {
+            SelfCheck.run("EnergyIntegrator", args, 200, (rand, round) -> {
+                int hosts = 1 + rand.nextInt(5);
+                int vms = 1 + rand.nextInt(4 * hosts);
+                Files.write(file, Arrays.asList("datacenter,dc," + (1 + rand.nextInt(2)),
+                        "host," + hosts + ",8,1000,65536,100000,1000000",
+                        "vm," + vms + "," + 100 * (1 + rand.nextInt(8)) + ",512,1000,1000",
+                        "vm," + vms + "," + 100 * (1 + rand.nextInt(8)) + ",512,1000,1000"),
+                        StandardCharsets.UTF_8);
+                Topology topology = Topology.load(file);
+                PowerModel[] models = new PowerModel[topology.getHostCount()];
+                for (int h = 0; h < models.length; h++) {
+                    double idle = 50 + rand.nextDouble() * 100;
+                    double linear = rand.nextDouble() * 100;
+                    double square = rand.nextDouble() * 50;
+                    models[h] = u -> idle + linear * u + square * u * u;
+                }
+
+                boolean grid = round % 4 == 0; // Times of the tick grid
+                List<TimedCloudlet> list = new ArrayList<TimedCloudlet>();
+                int count = rand.nextInt(200);
+                double endTime = 0;
+                for (int i = 0; i < count; i++) {
+                    double start = nextTime(rand, grid);
+                    double finish = start + nextTime(rand, grid);
+                    list.add(new TimedCloudlet(i, rand.nextInt(topology.getVmCount()), start, finish));
+                    endTime = Math.max(endTime, finish);
+                }
+                if (rand.nextBoolean()) {
+                    endTime = grid ? Math.round(endTime * rand.nextDouble() * 100) / 100.0
+                            : endTime * rand.nextDouble(); // Cloudlets finishing after the end
+                }
+
+                double exact = EnergyIntegrator.integrate(list, topology, models, endTime);
+                double tick = EnergyIntegrator.integrate(list, topology, models, endTime, "tick");
+                SelfCheck.checkNear(exact, exactEnergy(list, topology, models, endTime), TOLERANCE, "Exact energy");
+                SelfCheck.checkNear(tick, tickEnergy(list, topology, models, endTime), TOLERANCE, "Tick energy");
+                if (grid) {
+                    SelfCheck.checkNear(exact, tick, TOLERANCE, "Exact energy on the tick grid");
+                }
+                return 2L * count;
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Random time or duration in seconds, often a whole number of ticks
+     */
+    private static double nextTime(Random rand, boolean grid) {
+        double time = rand.nextDouble() * 20;
+        return grid || rand.nextBoolean() ? Math.round(time * 100) / 100.0 : time;
+    }
+
+    /**
+     * Energy over the intervals between all cloudlet times, the busy VMs of
+     * an interval being found at its middle
+     */
+    private static double exactEnergy(List<TimedCloudlet> list, Topology topology, PowerModel[] models,
+            double endTime) {
+        double[] times = new double[2 * list.size() + 2];
+        int n = 0;
+        times[n++] = 0;
+        times[n++] = endTime;
+        for (TimedCloudlet cl : list) {
+            times[n++] = Math.min(cl.getExecStartTime(), endTime);
+            times[n++] = Math.min(cl.getFinishTime(), endTime);
+        }
+        Arrays.sort(times);
+        double energy = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            if (times[i + 1] > times[i]) {
+                double middle = (times[i] + times[i + 1]) / 2;
+                energy += power(list, topology, models, middle) * (times[i + 1] - times[i])
+                        * EnergyIntegrator.TICKS_PER_SECOND;
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Power of every tick, the busy VMs of a tick taken from the rounded
+     * cloudlet ticks
+     */
+    private static double tickEnergy(List<TimedCloudlet> list, Topology topology, PowerModel[] models,
+            double endTime) {
+        int timeLength = (int) Math.round(endTime * EnergyIntegrator.TICKS_PER_SECOND);
+        boolean[][] busy = new boolean[topology.getVmCount()][timeLength];
+        for (TimedCloudlet cl : list) {
+            long finish = Math.min(Math.round(cl.getFinishTime() * EnergyIntegrator.TICKS_PER_SECOND), timeLength);
+            for (long t = Math.round(cl.getExecStartTime() * EnergyIntegrator.TICKS_PER_SECOND); t < finish; t++) {
+                busy[cl.getVmId()][(int) t] = true;
+            }
+        }
+        double energy = 0;
+        for (int t = 0; t < timeLength; t++) {
+            long[] utilsum = new long[topology.getHostCount()];
+            long[] mipssum = new long[topology.getHostCount()];
+            for (int vm = 0; vm < topology.getVmCount(); vm++) {
+                mipssum[topology.getVmHost(vm)] += topology.getVmMips(vm);
+                if (busy[vm][t]) {
+                    utilsum[topology.getVmHost(vm)] += topology.getVmMips(vm);
+                }
+            }
+            for (int h = 0; h < models.length; h++) {
+                energy += models[h].getPower(mipssum[h] == 0 ? 0 : (double) utilsum[h] / mipssum[h]);
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Power of all hosts at a time
+     */
+    private static double power(List<TimedCloudlet> list, Topology topology, PowerModel[] models, double time) {
+        boolean[] busy = new boolean[topology.getVmCount()];
+        for (TimedCloudlet cl : list) {
+            if (cl.getExecStartTime() < time && time < cl.getFinishTime()) {
+                busy[cl.getVmId()] = true;
+            }
+        }
+        long[] utilsum = new long[topology.getHostCount()];
+        long[] mipssum = new long[topology.getHostCount()];
+        for (int vm = 0; vm < busy.length; vm++) {
+            mipssum[topology.getVmHost(vm)] += topology.getVmMips(vm);
+            if (busy[vm]) {
+                utilsum[topology.getVmHost(vm)] += topology.getVmMips(vm);
+            }
+        }
+        double power = 0;
+        for (int h = 0; h < models.length; h++) {
+            power += models[h].getPower(mipssum[h] == 0 ? 0 : (double) utilsum[h] / mipssum[h]);
+        }
+        return power;
+    }
+
+    /**
+     * Cloudlet with given start and finish times
+     */
+    private static class TimedCloudlet extends Cloudlet {
+
+        private final int vm;
+        private final double start;
+        private final double finish;
+
+        TimedCloudlet(int id, int vm, double start, double finish) {
+            super(id, 1, 1, 0, 0, new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+            this.vm = vm;
+            this.start = start;
+            this.finish = finish;
+        }
+
+        @Override
+        public int getVmId() {
+            return vm;
+        }
+
+        @Override
+        public double getExecStartTime() {
+            return start;
+        }
+
+        @Override
+        public double getFinishTime() {
+            return finish;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Exploration rate of every training episode.
+ *
+ * With probability epsilon a learn step relocates its task to a random VM,
+ * otherwise to the VM with the max Q value.
+ */
+public interface EpsilonSchedule {
+
+    /**
+     * Create an epsilon schedule
+     *
+     * @param schedule "constant" (always start), "linear" or "exponential" decay
+     *            from start to end
+     * @param start epsilon of the first episode
+     * @param end epsilon of the last episode and after
+     * @param episodes training episodes
+     */
+    static EpsilonSchedule create(String schedule, double start, double end, int episodes) {
+        if (!(start >= 0 && start <= 1) || !(end >= 0 && end <= 1)) {
+            throw new IllegalArgumentException("Epsilon must be in [0, 1]");
+        }
+        double last = Math.max(episodes - 1, 1); // Episode reaching the end value
+        switch (schedule) {
+            case "constant":
+                return episode -> start;
+            case "linear":
+                return episode -> start + (end - start) * Math.min(episode / last, 1);
+            case "exponential":
+                if (start == 0 || end == 0) {
+                    throw new IllegalArgumentException("Exponential decay needs a positive start and end epsilon");
+                }
+                return episode -> start * Math.pow(end / start, Math.min(episode / last, 1));
+            default:
+                throw new IllegalArgumentException("Unknown epsilon schedule: " + schedule);
+        }
+    }
+
+    /**
+     * @param episode episode index, from 0
+     */
+    double getEpsilon(int episode);
+}
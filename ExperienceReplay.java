@@ -0,0 +1,82 @@
+import java.util.SplittableRandom;
+
+/**
+ * Experience replay ring buffer of a QFunction.
+ *
+ * Every experience is a relocation: its feature vector, its reward and the
+ * max Q value of the state after it, as predicted when the experience was
+ * added. Features are stored in one flat array, so adding overwrites the
+ * oldest experience once the buffer is full and nothing is allocated after
+ * construction.
+ */
+public class ExperienceReplay {
+
+    private final int capacity;
+    private final int features;
+    private final double[] x; // Feature vectors, experience * features + feature
+    private final double[] reward; // Reward of every experience
+    private final double[] nextmax; // Max Q value after every experience
+    private int next; // Slot of the next experience
+    private int size;
+
+    /**
+     * @param capacity max number of experiences
+     * @param features features of an experience
+     */
+    public ExperienceReplay(int capacity, int features) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Replay capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.features = features;
+        this.x = new double[capacity * features];
+        this.reward = new double[capacity];
+        this.nextmax = new double[capacity];
+    }
+
+    /**
+     * Add an experience, replacing the oldest one when the buffer is full
+     *
+     * @param features feature vectors
+     * @param offset index of the first feature of the experience
+     * @param r reward
+     * @param maxq max Q value of the next state, 0 when it ends the episode
+     */
+    public void add(double[] features, int offset, double r, double maxq) {
+        System.arraycopy(features, offset, x, next * this.features, this.features);
+        reward[next] = r;
+        nextmax[next] = maxq;
+        next = next + 1 == capacity ? 0 : next + 1;
+        size = Math.min(size + 1, capacity);
+    }
+
+    /**
+     * Draw a minibatch uniformly, with replacement
+     *
+     * @param rand random generator
+     * @param n minibatch size
+     * @param gamma discount factor
+     * @param batchx n feature vectors, filled
+     * @param targets target Q value r + gamma * maxq of every drawn experience, filled
+     */
+    public void sample(SplittableRandom rand, int n, double gamma, double[] batchx, double[] targets) {
+        for (int s = 0; s < n; s++) {
+            int i = rand.nextInt(size);
+            System.arraycopy(x, i * features, batchx, s * features, features);
+            targets[s] = reward[i] + gamma * nextmax[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of ExperienceReplay.
+ *
+ * Adds numbered experiences to buffers of random capacity, well past the
+ * capacity so the ring wraps around several times, and draws minibatches
+ * between the adds. Every drawn experience must be one of the last capacity
+ * experiences, with its own features and target, and a large minibatch must
+ * draw every one of them.
+ */
+public class ExperienceReplayCheck {
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("ExperienceReplay", args, 200, (rand, round) -> {
+            SplittableRandom samplerand = new SplittableRandom(rand.nextLong());
+            int capacity = 1 + rand.nextInt(200);
+            int features = 1 + rand.nextInt(9);
+            double gamma = rand.nextDouble();
+            ExperienceReplay replay = new ExperienceReplay(capacity, features);
+            double[] x = new double[3 * features]; // Feature vectors at an offset, as a worker passes them
+            double[] batchx = new double[4096 * features];
+            double[] targets = new double[4096];
+            int added = 0;
+            long checked = 0;
+            for (int step = 0; step < 20; step++) {
+                int adds = rand.nextInt(3 * capacity);
+                for (int i = 0; i < adds; i++) {
+                    int offset = rand.nextInt(3) * features;
+                    for (int f = 0; f < features; f++) {
+                        x[offset + f] = added * 16 + f;
+                    }
+                    replay.add(x, offset, added, -added);
+                    added++;
+                }
+                SelfCheck.check(replay.size() == Math.min(added, capacity), "Size " + replay.size() + " after "
+                        + added + " adds to capacity " + capacity);
+                if (added == 0) {
+                    continue;
+                }
+                int n = 1 + rand.nextInt(targets.length);
+                replay.sample(samplerand, n, gamma, batchx, targets);
+                boolean[] drawn = new boolean[capacity];
+                for (int s = 0; s < n; s++) {
+                    int number = (int) (batchx[s * features] / 16);
+                    SelfCheck.check(number < added && number >= added - capacity, "Experience " + number
+                            + " is not one of the last " + capacity + " of " + added);
+                    for (int f = 0; f < features; f++) {
+                        SelfCheck.check(batchx[s * features + f] == number * 16 + f,
+                                "Feature " + f + " of experience " + number + " differs");
+                    }
+                    SelfCheck.check(targets[s] == number + gamma * -number, "Target of experience " + number
+                            + " differs");
+                    drawn[number % capacity] = true;
+                }
+                if (n >= 20 * replay.size()) {
+                    for (int slot = 0; slot < replay.size(); slot++) {
+                        SelfCheck.check(drawn[slot], "Slot " + slot + " never drawn in " + n + " draws");
+                    }
+                }
+                checked += n;
+            }
+            replay.clear();
+            SelfCheck.check(replay.size() == 0, "Not empty after clear");
+            return checked;
+        });
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.cloudbus.cloudsim.Log;
+
+/**
+ * Monte-Carlo experiment driver.
+ *
+ * Sweeps seeds, task counts, VM MIPS profiles and task type mixes. Every run
+ * trains its own Q table and builds its own random batch from the run seed,
+ * so a run can be repeated on its own, and then compares the policies on that
+ * batch. Runs are executed in parallel; each finished run is appended to the
+ * result CSV right away and only folded into the per configuration
+ * statistics, so memory does not grow with the result rows.
+ */
+public class ExperimentRunner {
+
+    // Sweep parameters. Lists are comma separated, VM MIPS and task lengths space separated
+    final static int seeds = Integer.getInteger("qlo.experiment.seeds", 30); // Runs per configuration
+    final static long firstSeed = Long.getLong("qlo.experiment.seed", 1); // Seed of the first run
+    final static String taskcounts = System.getProperty("qlo.experiment.taskcounts", "10"); // Task counts
+    final static String vmmipsProfiles = System.getProperty("qlo.experiment.vmmips", "100 300 500 700"); // VM MIPS profiles
+    final static String tasktypeMixes = System.getProperty("qlo.experiment.tasktypes", "115 345"); // Task type mixes
+    final static int episodes = Integer.getInteger("qlo.experiment.episodes", 1000); // Training episodes per run
+    final static int steps = Integer.getInteger("qlo.experiment.steps", 1000); // Learn steps per episode
+    final static int workers = Integer.getInteger("qlo.experiment.workers", Runtime.getRuntime().availableProcessors()); // Runs at the same time
+    final static String output = System.getProperty("qlo.experiment.out", "experiment.csv"); // Result CSV, one row per run and policy
+
+    final static String[] metrics = { "executionTime", "responseTime", "energyConsumption", "energyCost",
+            "executionTimeImprovement", "responseTimeImprovement", "energyImprovement", "energyCostImprovement" };
+    final static String indent = "    ";
+
+    public static void main(String[] args) throws Exception {
+        List<int[]> profiles = parseLists(vmmipsProfiles);
+        List<int[]> mixes = parseLists(tasktypeMixes);
+        int[] counts = parseList(taskcounts.replace(',', ' '));
+
+        List<Run> runs = new ArrayList<Run>();
+        for (int[] vmmips : profiles) {
+            for (int[] tasktypelist : mixes) {
+                for (int taskcount : counts) {
+                    for (int s = 0; s < seeds; s++) {
+                        runs.add(new Run(vmmips, tasktypelist, taskcount, firstSeed + s));
+                    }
+                }
+            }
+        }
+
+        // Simulations of parallel runs go to worker processes, which only print errors
+        boolean isolated = workers > 1;
+        System.setProperty("qlo.simulation.quiet", "true");
+        Log.setDisabled(true);
+
+        Map<String, SampleStatistics[]> statistics = new LinkedHashMap<String, SampleStatistics[]>();
+        int failed = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(workers, 1));
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            out.write("seed,taskcount,vmmips,tasktypelist,policy,executionTime,responseTime,energyConsumption,energyCost,"
+                    + "executionTimeImprovement,responseTimeImprovement,energyImprovement,energyCostImprovement");
+            out.newLine();
+
+            CompletionService<Run> completion = new ExecutorCompletionService<Run>(pool);
+            for (Run run : runs) {
+                completion.submit(() -> run.execute(isolated));
+            }
+
+            for (int done = 1; done <= runs.size(); done++) {
+                Run run;
+                try {
+                    run = completion.take().get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    e.getCause().printStackTrace();
+                    continue;
+                }
+                write(out, run);
+                out.flush();
+                record(statistics, run);
+                run.results = null;
+                if (done % 100 == 0) {
+                    System.out.println(done + " of " + runs.size() + " runs done");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Log.setDisabled(false);
+        printSummary(statistics);
+        Log.printLine(runs.size() - failed + " runs written to " + output + (failed > 0 ? ", " + failed + " failed" : ""));
+    }
+
+    /**
+     * Write one row per policy of a finished run
+     */
+    private static void write(BufferedWriter out, Run run) throws IOException {
+        SimulationResult baseline = run.results.get(run.results.size() - 1);
+        for (SimulationResult result : run.results) {
+            StringBuilder line = new StringBuilder();
+            line.append(run.seed).append(',').append(run.taskcount).append(',')
+                    .append(join(run.vmmips)).append(',').append(join(run.tasktypelist)).append(',')
+                    .append(result.getPolicy()).append(',').append(result.getExecutionTime()).append(',')
+                    .append(result.getResponseTime()).append(',').append(result.getEnergyConsumption()).append(',')
+                    .append(result.getEnergyCost());
+            for (double improvement : improvements(result, baseline)) {
+                line.append(',').append(result == baseline ? "" : Double.toString(improvement));
+            }
+            out.write(line.toString());
+            out.newLine();
+        }
+    }
+
+    /**
+     * Add the results of a finished run to the statistics of its configuration
+     */
+    private static void record(Map<String, SampleStatistics[]> statistics, Run run) {
+        SimulationResult baseline = run.results.get(run.results.size() - 1);
+        for (SimulationResult result : run.results) {
+            String key = "vmmips " + join(run.vmmips) + ", tasktypelist " + join(run.tasktypelist) + ", taskcount "
+                    + run.taskcount + ", " + result.getPolicy();
+            SampleStatistics[] stats = statistics.get(key);
+            if (stats == null) {
+                stats = new SampleStatistics[metrics.length];
+                for (int m = 0; m < metrics.length; m++) {
+                    stats[m] = new SampleStatistics();
+                }
+                statistics.put(key, stats);
+            }
+            stats[0].add(result.getExecutionTime());
+            stats[1].add(result.getResponseTime());
+            stats[2].add(result.getEnergyConsumption());
+            stats[3].add(result.getEnergyCost());
+            if (result != baseline) {
+                double[] improvements = improvements(result, baseline);
+                for (int m = 0; m < improvements.length; m++) {
+                    stats[4 + m].add(improvements[m]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Improvement percentages of printImprovementResults: execution time,
+     * response time, energy consumption and energy cost
+     */
+    private static double[] improvements(SimulationResult optimized, SimulationResult nonOptimized) {
+        return new double[] {
+                (nonOptimized.getExecutionTime() - optimized.getExecutionTime()) / nonOptimized.getExecutionTime() * 100,
+                (nonOptimized.getResponseTime() - optimized.getResponseTime()) / nonOptimized.getResponseTime() * 100,
+                (nonOptimized.getEnergyConsumption() - optimized.getEnergyConsumption()) / nonOptimized.getEnergyConsumption() * 100,
+                (nonOptimized.getEnergyCost() - optimized.getEnergyCost()) / nonOptimized.getEnergyCost() * 100 };
+    }
+
+    private static void printSummary(Map<String, SampleStatistics[]> statistics) {
+        DecimalFormat dft = new DecimalFormat("###.####");
+        for (Map.Entry<String, SampleStatistics[]> entry : statistics.entrySet()) {
+            Log.printLine("=============================================================");
+            Log.printLine(entry.getKey());
+            Log.printLine("Metric" + indent + "n" + indent + "Mean" + indent + "95% CI" + indent + "P5" + indent + "P50" + indent + "P95");
+            SampleStatistics[] stats = entry.getValue();
+            for (int m = 0; m < metrics.length; m++) {
+                SampleStatistics s = stats[m];
+                if (s.getCount() == 0) {
+                    continue;
+                }
+                Log.printLine(metrics[m] + indent + s.getCount() + indent + dft.format(s.getMean()) + indent + "+/- "
+                        + (s.getCount() < 2 ? "-" : dft.format(s.getConfidence95())) + indent
+                        + dft.format(s.getPercentile(5)) + indent + dft.format(s.getPercentile(50)) + indent
+                        + dft.format(s.getPercentile(95)));
+            }
+        }
+        Log.printLine("=============================================================");
+    }
+
+    /**
+     * Parse comma separated lists of space separated integers
+     */
+    static List<int[]> parseLists(String value) {
+        List<int[]> lists = new ArrayList<int[]>();
+        for (String list : value.split(",")) {
+            lists.add(parseList(list));
+        }
+        return lists;
+    }
+
+    static int[] parseList(String list) {
+        String[] fields = list.trim().split("\\s+");
+        int[] values = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Integer.parseInt(fields[i]);
+        }
+        return values;
+    }
+
+    private static String join(int[] values) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                s.append(' ');
+            }
+            s.append(values[i]);
+        }
+        return s.toString();
+    }
+
+    /**
+     * One experiment run: a configuration and a seed
+     */
+    private static class Run {
+
+        final int[] vmmips;
+        final int[] tasktypelist;
+        final int taskcount;
+        final long seed;
+        List<SimulationResult> results; // Result of every policy, baseline last
+
+        Run(int[] vmmips, int[] tasktypelist, int taskcount, long seed) {
+            this.vmmips = vmmips;
+            this.tasktypelist = tasktypelist;
+            this.taskcount = taskcount;
+            this.seed = seed;
+        }
+
+        /**
+         * Train, schedule and simulate this run
+         *
+         * @param isolated simulate in worker processes, since other runs simulate at the same time
+         */
+        Run execute(boolean isolated) throws Exception {
+            QLOConfig config = new QLOConfig(vmmips, tasktypelist, taskcount, QLO.alpha, QLO.gamma, QLO.epsilon,
+                    QLO.qtableBackend, QLO.stateLevels, QLO.stateCapacity, QLO.createReward(Topology.single(vmmips)));
+            QLearningScheduler scheduler = new QLearningScheduler(config);
+            scheduler.train(new TrainingConfig(episodes, steps, 1, QLO.syncEpisodes, seed, // Runs are the unit of parallelism
+                    EpsilonSchedule.create(QLO.epsilonSchedule, QLO.epsilonStart, QLO.epsilon, episodes),
+                    QLO.convergenceThreshold, QLO.replay));
+
+            List<SchedulingPolicy> policies = new ArrayList<SchedulingPolicy>();
+            policies.add(scheduler.getPolicy());
+            policies.add(new RoundRobinPolicy()); // Baseline
+            VmTaskQueues batch = VmTaskQueues.roundRobin(new Random(seed), vmmips.length, taskcount, tasktypelist.length);
+            List<VmTaskQueues> scheduled = SimulationHarness.schedule(policies, batch, vmmips, tasktypelist);
+
+            results = new ArrayList<SimulationResult>(policies.size());
+            for (int p = 0; p < policies.size(); p++) {
+                String name = policies.get(p).getName();
+                results.add(isolated ? SimulationHarness.runProcess(name, scheduled.get(p), vmmips, tasktypelist)
+                        : Simulation.run(name, scheduled.get(p), vmmips, tasktypelist));
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Q table stored in one flat row-major float array on heap. Uses half the
+ * memory of the double backend at float precision.
+ */
+public class FloatQTable implements QTable {
+
+    private final int rows;
+    private final int columns;
+    private final float[] q;
+
+    public FloatQTable(int rows, int columns) {
+        if ((long) rows * columns > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Q table too large for a heap array, use the direct backend");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.q = new float[rows * columns];
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return q[row * columns + column];
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        q[row * columns + column] = (float) value;
+    }
+
+    @Override
+    public QTable newTable() {
+        return new FloatQTable(rows, columns);
+    }
+
+    @Override
+    public double getMax(int row) {
+        float maxValue = Float.NEGATIVE_INFINITY;
+        int base = row * columns;
+        for (int i = base; i < base + columns; i++) {
+            if (maxValue < q[i]) {
+                maxValue = q[i];
+            }
+        }
+        return maxValue;
+    }
+
+    @Override
+    public void copyFrom(QTable other) {
+        if (other instanceof FloatQTable) {
+            System.arraycopy(((FloatQTable) other).q, 0, q, 0, q.length);
+        } else {
+            QTable.super.copyFrom(other);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Linear Q value function: the dot product of the features and one weight
+ * per feature, starting from zero.
+ */
+public class LinearQFunction implements QFunction {
+
+    private final double[] w; // Weight of every feature
+    private final double[] gradient; // Scratch minibatch gradient
+
+    public LinearQFunction(int features) {
+        this.w = new double[features];
+        this.gradient = new double[features];
+    }
+
+    @Override
+    public int getFeatureCount() {
+        return w.length;
+    }
+
+    @Override
+    public double predict(double[] x, int offset) {
+        double sum = 0;
+        for (int i = 0; i < w.length; i++) {
+            sum += w[i] * x[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void train(double[] x, double[] targets, int n, double rate) {
+        java.util.Arrays.fill(gradient, 0);
+        for (int s = 0; s < n; s++) {
+            int offset = s * w.length;
+            double error = Math.max(-1, Math.min(1, predict(x, offset) - targets[s]));
+            for (int i = 0; i < w.length; i++) {
+                gradient[i] += error * x[offset + i];
+            }
+        }
+        for (int i = 0; i < w.length; i++) {
+            w[i] -= rate * gradient[i] / n;
+        }
+    }
+
+    @Override
+    public QFunction copy() {
+        LinearQFunction copy = new LinearQFunction(w.length);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    @Override
+    public void copyFrom(QFunction other) {
+        System.arraycopy(((LinearQFunction) other).w, 0, w, 0, w.length);
+    }
+
+    /**
+     * Weight of a feature
+     */
+    public double getWeight(int feature) {
+        return w[feature];
+    }
+
+    /**
+     * Copy of the weights, one per feature
+     */
+    double[] getWeights() {
+        return w.clone();
+    }
+
+    void setWeights(double[] weights) {
+        System.arraycopy(weights, 0, w, 0, w.length);
+    }
+}
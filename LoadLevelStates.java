@@ -0,0 +1,147 @@
+import java.util.SplittableRandom;
+
+/**
+ * Load level state encoding.
+ *
+ * A state is the current VM together with the load level of every VM. The
+ * level of a VM buckets its queue variance (vmqlvar) relative to its optimum
+ * length into levels equal bins from overloaded to idle, the middle bin
+ * being balanced. The level vector is kept as a Zobrist hash, one random key
+ * per VM and level XORed together, so moving a task only rehashes its source
+ * and destination VM. The hashes of the visited states are numbered by a
+ * shared StateIndex.
+ *
+ * State numbers start with the plain VM states 0 .. vmcount - 1, which back
+ * load level states that were never visited or did not fit the index, and
+ * continue with the indexed load level states from vmcount on.
+ */
+public class LoadLevelStates {
+
+    private final int vmcount;
+    private final int levels;
+    private final long[] levelkeys; // Key of every VM and level, vm * levels + level
+    private final long[] vmkeys; // Key of every current VM
+    private final StateIndex index;
+
+    /**
+     * @param vmcount number of VMs
+     * @param levels load levels of a VM, at least 2
+     * @param capacity max number of indexed load level states
+     */
+    public LoadLevelStates(int vmcount, int levels, int capacity) {
+        if (levels < 2) {
+            throw new IllegalArgumentException("At least 2 load levels are needed");
+        }
+        this.vmcount = vmcount;
+        this.levels = levels;
+        this.index = new StateIndex(capacity);
+        // Fixed seed, so a saved state index means the same states when it is loaded
+        SplittableRandom rand = new SplittableRandom(0x514c4f51L);
+        this.levelkeys = new long[vmcount * levels];
+        for (int i = 0; i < levelkeys.length; i++) {
+            levelkeys[i] = rand.nextLong();
+        }
+        this.vmkeys = new long[vmcount];
+        for (int i = 0; i < vmcount; i++) {
+            vmkeys[i] = rand.nextLong();
+        }
+    }
+
+    /**
+     * Load level of a VM, 0 being the most overloaded and levels - 1 idle
+     */
+    public int getLevel(VmLoadState load, int vm) {
+        long optimum = load.getOptimumLength(vm);
+        if (optimum <= 0) {
+            return load.getLength(vm) == 0 ? levels / 2 : 0;
+        }
+        double deviation = (double) load.getVariance(vm) / optimum; // At most 1, when the queue is empty
+        int level = (int) Math.floor((deviation + 1) / 2 * levels);
+        return Math.max(0, Math.min(levels - 1, level));
+    }
+
+    /**
+     * Number of plain VM states and indexed load level states
+     */
+    public int getStateCount() {
+        return vmcount + index.size();
+    }
+
+    /**
+     * Max number of states, the Q table rows per task type
+     */
+    public int getMaxStateCount() {
+        return vmcount + index.getCapacity();
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public StateIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Level vector of one load state, owned by one thread
+     */
+    public Encoder newEncoder() {
+        return new Encoder();
+    }
+
+    /**
+     * Keeps the level of every VM and the hash of the level vector up to date
+     * with a load state
+     */
+    public class Encoder {
+
+        private final int[] level = new int[vmcount]; // Current level of every VM
+        private long key; // Hash of the level vector
+
+        /**
+         * Compute every level after the load state was balanced
+         */
+        public void reset(VmLoadState load) {
+            key = 0;
+            for (int vm = 0; vm < vmcount; vm++) {
+                level[vm] = LoadLevelStates.this.getLevel(load, vm);
+                key ^= levelkeys[vm * levels + level[vm]];
+            }
+        }
+
+        /**
+         * Recompute the level of a VM after its queue changed
+         */
+        public void update(VmLoadState load, int vm) {
+            int next = LoadLevelStates.this.getLevel(load, vm);
+            if (next != level[vm]) {
+                key ^= levelkeys[vm * levels + level[vm]] ^ levelkeys[vm * levels + next];
+                level[vm] = next;
+            }
+        }
+
+        /**
+         * State of a current VM under the current levels, indexed when it is new
+         *
+         * @return load level state, or the plain VM state when the index is full
+         */
+        public int getOrAddState(int vm) {
+            int i = index.getOrAdd(key ^ vmkeys[vm]);
+            return i < 0 ? vm : vmcount + i;
+        }
+
+        /**
+         * State of a current VM under the current levels
+         *
+         * @return load level state, or the plain VM state when it was never visited
+         */
+        public int getState(int vm) {
+            int i = index.get(key ^ vmkeys[vm]);
+            return i < 0 ? vm : vmcount + i;
+        }
+
+        public int getLevel(int vm) {
+            return level[vm];
+        }
+    }
+}
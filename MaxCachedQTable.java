@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * Q table that caches the max value and its index of every row.
+ *
+ * The cache of a row is filled by one scan on first use and then kept up to
+ * date by set(). A row is scanned again only when its current max value is
+ * decreased, so getMax and getArgMax are O(1) for the update pattern of
+ * Q-learning training. Every row also counts its changes, so values derived
+ * from a row can be cached until the row changes.
+ *
+ * The caches are allocated in chunks of ChunkedQTable.CHUNK_ROWS rows on
+ * first use, so they grow with the rows in use like a ChunkedQTable. A chunk
+ * is allocated under a lock and published with final fields only, so threads
+ * that lock distinct rows can use the caches at the same time.
+ */
+public class MaxCachedQTable implements QTable {
+
+    private final QTable table;
+    private final Cache[] caches; // Cache of every chunk, null until a row of the chunk is used
+    private long epoch; // Version of the rows of unallocated caches, counts the copies
+
+    public MaxCachedQTable(QTable table) {
+        this.table = table;
+        this.caches = new Cache[(table.getRows() + ChunkedQTable.CHUNK_MASK) >>> ChunkedQTable.CHUNK_SHIFT];
+    }
+
+    /**
+     * Cache of the chunk of a row, allocated on first use
+     */
+    private Cache cache(int row) {
+        Cache cache = caches[row >>> ChunkedQTable.CHUNK_SHIFT];
+        return cache != null ? cache : allocate(row >>> ChunkedQTable.CHUNK_SHIFT);
+    }
+
+    private synchronized Cache allocate(int index) {
+        if (caches[index] == null) { // Not allocated by another thread meanwhile
+            caches[index] = new Cache(epoch);
+        }
+        return caches[index];
+    }
+
+    @Override
+    public int getRows() {
+        return table.getRows();
+    }
+
+    @Override
+    public int getColumns() {
+        return table.getColumns();
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return table.get(row, column);
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        table.set(row, column, value);
+        value = table.get(row, column); // Stored value, rounded by a float backend
+        Cache cache = cache(row);
+        int i = row & ChunkedQTable.CHUNK_MASK;
+        cache.rowversion[i]++;
+
+        int argmax = cache.rowargmax[i];
+        if (argmax < 0) {
+            return;
+        }
+        if (column == argmax) {
+            if (value >= cache.rowmax[i]) {
+                cache.rowmax[i] = value;
+            } else {
+                cache.rowargmax[i] = -1; // Max value decreased, scan the row on next use
+            }
+        } else if (value > cache.rowmax[i] || (value == cache.rowmax[i] && column < argmax)) {
+            cache.rowmax[i] = value;
+            cache.rowargmax[i] = column;
+        }
+    }
+
+    @Override
+    public QTable newTable() {
+        return new MaxCachedQTable(table.newTable());
+    }
+
+    @Override
+    public double getMax(int row) {
+        Cache cache = cache(row);
+        int i = row & ChunkedQTable.CHUNK_MASK;
+        if (cache.rowargmax[i] < 0) {
+            scan(row, cache, i);
+        }
+        return cache.rowmax[i];
+    }
+
+    @Override
+    public int getArgMax(int row) {
+        Cache cache = cache(row);
+        int i = row & ChunkedQTable.CHUNK_MASK;
+        if (cache.rowargmax[i] < 0) {
+            scan(row, cache, i);
+        }
+        return cache.rowargmax[i];
+    }
+
+    @Override
+    public void copyFrom(QTable other) {
+        table.copyFrom(other instanceof MaxCachedQTable ? ((MaxCachedQTable) other).table : other);
+        epoch++;
+        for (Cache cache : caches) {
+            if (cache != null) {
+                Arrays.fill(cache.rowargmax, -1);
+                for (int i = 0; i < cache.rowversion.length; i++) {
+                    cache.rowversion[i]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Change count of a row
+     */
+    public long getRowVersion(int row) {
+        Cache cache = caches[row >>> ChunkedQTable.CHUNK_SHIFT];
+        return cache == null ? epoch : cache.rowversion[row & ChunkedQTable.CHUNK_MASK];
+    }
+
+    /**
+     * Find the row max value and the first index holding it
+     */
+    private void scan(int row, Cache cache, int i) {
+        double maxValue = Double.NEGATIVE_INFINITY;
+        int maxValueIdx = 0;
+        for (int c = 0; c < table.getColumns(); c++) {
+            double value = table.get(row, c);
+            if (maxValue < value) {
+                maxValue = value;
+                maxValueIdx = c;
+            }
+        }
+        cache.rowmax[i] = maxValue;
+        cache.rowargmax[i] = maxValueIdx;
+    }
+
+    /**
+     * Caches of the rows of one chunk
+     */
+    private static final class Cache {
+
+        final double[] rowmax = new double[ChunkedQTable.CHUNK_ROWS]; // Row max value
+        final int[] rowargmax = new int[ChunkedQTable.CHUNK_ROWS]; // Row max value index, -1 when not known
+        final long[] rowversion = new long[ChunkedQTable.CHUNK_ROWS]; // Row change count
+
+        Cache(long version) {
+            Arrays.fill(rowargmax, -1);
+            Arrays.fill(rowversion, version);
+        }
+    }
+}
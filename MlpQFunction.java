@@ -0,0 +1,136 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Small MLP Q value function: one hidden layer of ReLU units and a linear
+ * output. Hidden weights start He initialized from a seed, output weights
+ * at zero.
+ */
+public class MlpQFunction implements QFunction {
+
+    private final int features;
+    private final int hidden;
+    private final double[] w1; // Hidden weights, unit * features + feature
+    private final double[] b1; // Hidden biases
+    private final double[] w2; // Output weights
+    private double b2; // Output bias
+
+    // Scratch space of predict() and train()
+    private final double[] h; // Hidden activations of the last prediction
+    private final double[] gw1;
+    private final double[] gb1;
+    private final double[] gw2;
+
+    public MlpQFunction(int features, int hidden, long seed) {
+        if (features < 1 || hidden < 1) {
+            throw new IllegalArgumentException("An MLP needs at least 1 feature and 1 hidden unit");
+        }
+        this.features = features;
+        this.hidden = hidden;
+        this.w1 = new double[hidden * features];
+        this.b1 = new double[hidden];
+        this.w2 = new double[hidden];
+        this.h = new double[hidden];
+        this.gw1 = new double[w1.length];
+        this.gb1 = new double[hidden];
+        this.gw2 = new double[hidden];
+        Random rand = new Random(seed);
+        double scale = Math.sqrt(2.0 / features);
+        for (int i = 0; i < w1.length; i++) {
+            w1[i] = rand.nextGaussian() * scale;
+        }
+    }
+
+    @Override
+    public int getFeatureCount() {
+        return features;
+    }
+
+    @Override
+    public double predict(double[] x, int offset) {
+        double out = b2;
+        for (int j = 0; j < hidden; j++) {
+            double sum = b1[j];
+            int row = j * features;
+            for (int i = 0; i < features; i++) {
+                sum += w1[row + i] * x[offset + i];
+            }
+            h[j] = sum > 0 ? sum : 0;
+            out += w2[j] * h[j];
+        }
+        return out;
+    }
+
+    @Override
+    public void train(double[] x, double[] targets, int n, double rate) {
+        Arrays.fill(gw1, 0);
+        Arrays.fill(gb1, 0);
+        Arrays.fill(gw2, 0);
+        double gb2 = 0;
+        for (int s = 0; s < n; s++) {
+            int offset = s * features;
+            double error = Math.max(-1, Math.min(1, predict(x, offset) - targets[s]));
+            gb2 += error;
+            for (int j = 0; j < hidden; j++) {
+                if (h[j] == 0) {
+                    continue; // No gradient through an inactive unit
+                }
+                gw2[j] += error * h[j];
+                double delta = error * w2[j];
+                gb1[j] += delta;
+                int row = j * features;
+                for (int i = 0; i < features; i++) {
+                    gw1[row + i] += delta * x[offset + i];
+                }
+            }
+        }
+        double step = rate / n;
+        for (int i = 0; i < w1.length; i++) {
+            w1[i] -= step * gw1[i];
+        }
+        for (int j = 0; j < hidden; j++) {
+            b1[j] -= step * gb1[j];
+            w2[j] -= step * gw2[j];
+        }
+        b2 -= step * gb2;
+    }
+
+    @Override
+    public QFunction copy() {
+        MlpQFunction copy = new MlpQFunction(features, hidden, 0);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    @Override
+    public void copyFrom(QFunction other) {
+        MlpQFunction mlp = (MlpQFunction) other;
+        System.arraycopy(mlp.w1, 0, w1, 0, w1.length);
+        System.arraycopy(mlp.b1, 0, b1, 0, hidden);
+        System.arraycopy(mlp.w2, 0, w2, 0, hidden);
+        b2 = mlp.b2;
+    }
+
+    /**
+     * Copy of all weights: hidden weights, hidden biases, output weights and
+     * output bias
+     */
+    double[] getWeights() {
+        double[] weights = new double[w1.length + 2 * hidden + 1];
+        System.arraycopy(w1, 0, weights, 0, w1.length);
+        System.arraycopy(b1, 0, weights, w1.length, hidden);
+        System.arraycopy(w2, 0, weights, w1.length + hidden, hidden);
+        weights[weights.length - 1] = b2;
+        return weights;
+    }
+
+    /**
+     * Set all weights, in the order of getWeights()
+     */
+    void setWeights(double[] weights) {
+        System.arraycopy(weights, 0, w1, 0, w1.length);
+        System.arraycopy(weights, w1.length, b1, 0, hidden);
+        System.arraycopy(weights, w1.length + hidden, w2, 0, hidden);
+        b2 = weights[weights.length - 1];
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.SplittableRandom;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.UtilizationModel;
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Broker of the online scheduling mode.
+ *
+ * VMs are created like the ones of TopologyBroker, every VM id being its
+ * topology VM index. Once they are created tasks arrive as simulated time
+ * events, a Poisson process of the given rate: the task types and the
+ * intervals between arrivals are drawn from one seeded random generator, so
+ * a seed always streams the same tasks at the same times. Every task is
+ * placed by the OnlineScheduler on arrival and submitted as a cloudlet to the
+ * datacenter of its VM at once, and every returned cloudlet is reported back
+ * to the scheduler. A task placed on a VM that could not be created runs on
+ * the next created VM instead, and is still reported with the placement of
+ * the scheduler. The simulation ends when all tasks have arrived and all
+ * cloudlets have returned.
+ */
+public class OnlineBroker extends TopologyBroker {
+
+    /** Next task arrives */
+    private static final int TASK_ARRIVAL = 47001;
+
+    private final int vmcount;
+    private final OnlineScheduler scheduler;
+    private final TaskSource tasks; // Task types of arriving tasks
+    private final long taskcount;
+    private final double rate;
+    private final SplittableRandom rand;
+    private final boolean keepReceived;
+    private final int[] job = new int[1]; // Task type of the arriving task
+    private final UtilizationModel utilizationModel = new UtilizationModelFull();
+    private int[] runvm; // Id of the VM the tasks of every VM index run on, the VM itself when it was created
+
+    private long arrived;
+    private int cloudletid;
+    private long completed;
+
+    /**
+     * @param name broker name
+     * @param topology datacenters, hosts and VMs of the scheduler
+     * @param datacenterIds CloudSim id of every topology datacenter
+     * @param scheduler online scheduler
+     * @param tasks task types of the arriving tasks, drawn one at a time
+     * @param taskcount number of arriving tasks
+     * @param rate mean arrivals per simulated second
+     * @param seed seed of the task types and arrival times
+     * @param keepReceived keep returned cloudlets in the received list
+     */
+    public OnlineBroker(String name, Topology topology, int[] datacenterIds, OnlineScheduler scheduler,
+            TaskSource tasks, long taskcount, double rate, long seed, boolean keepReceived) throws Exception {
+        super(name, topology, datacenterIds);
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Arrival rate must be positive: " + rate);
+        }
+        this.vmcount = topology.getVmCount();
+        this.scheduler = scheduler;
+        this.tasks = tasks;
+        this.taskcount = taskcount;
+        this.rate = rate;
+        this.rand = new SplittableRandom(seed);
+        this.keepReceived = keepReceived;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        if (ev.getTag() == TASK_ARRIVAL) {
+            arrive();
+        } else {
+            super.processEvent(ev);
+        }
+    }
+
+    /**
+     * Called once all VMs are acknowledged and at least one was created:
+     * schedule the first task arrival
+     */
+    @Override
+    protected void submitCloudlets() {
+        boolean[] created = new boolean[vmcount];
+        for (Vm vm : getVmsCreatedList()) {
+            if (vm.getId() < vmcount) {
+                created[vm.getId()] = true;
+            }
+        }
+        runvm = new int[vmcount];
+        int next = -1; // Next created VM
+        for (int pass = 0; pass < 2; pass++) { // The second pass wraps the last VMs around to the first created one
+            for (int vm = vmcount - 1; vm >= 0; vm--) {
+                if (created[vm]) {
+                    next = vm;
+                }
+                runvm[vm] = next;
+            }
+        }
+        for (int vm = 0; vm < vmcount; vm++) {
+            if (!created[vm]) {
+                Log.printLine(CloudSim.clock() + ": " + getName() + ": Tasks of VM #" + vm + " run on VM #"
+                        + runvm[vm]);
+            }
+        }
+        if (taskcount == 0) {
+            finish();
+        } else {
+            schedule(getId(), nextInterval(), TASK_ARRIVAL, null);
+        }
+    }
+
+    /**
+     * Place and submit the arriving task and schedule the next arrival
+     */
+    private void arrive() {
+        tasks.next(rand, job, 1);
+        int vm = scheduler.assign(job[0]);
+
+        OnlineCloudlet cloudlet = new OnlineCloudlet(cloudletid, scheduler.getTaskLength(job[0]), utilizationModel,
+                scheduler.getLastSource(), scheduler.getLastRow(), job[0], vm, scheduler.getLastNextRow(),
+                scheduler.getLastReward());
+        cloudletid++;
+        int vmId = runvm[vm];
+        cloudlet.setUserId(getId());
+        cloudlet.setVmId(vmId);
+        sendNow(getVmsToDatacentersMap().get(vmId), CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
+        cloudletsSubmitted++;
+
+        arrived++;
+        if (arrived < taskcount) {
+            schedule(getId(), nextInterval(), TASK_ARRIVAL, null);
+        }
+    }
+
+    /**
+     * Exponential time between two arrivals of the Poisson process
+     */
+    private double nextInterval() {
+        return -Math.log(1 - rand.nextDouble()) / rate;
+    }
+
+    @Override
+    protected void processCloudletReturn(SimEvent ev) {
+        OnlineCloudlet cloudlet = (OnlineCloudlet) ev.getData();
+        if (keepReceived) {
+            getCloudletReceivedList().add(cloudlet);
+        }
+        cloudletsSubmitted--;
+        completed++;
+        scheduler.complete(cloudlet.getSource(), cloudlet.getRow(), cloudlet.getTaskType(), cloudlet.getDest(),
+                cloudlet.getNextRow(), cloudlet.getReward());
+
+        if (arrived == taskcount && cloudletsSubmitted == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        clearDatacenters();
+        finishExecution();
+    }
+
+    /**
+     * Cloudlet remembering the placement decision it was submitted with
+     */
+    static class OnlineCloudlet extends Cloudlet {
+
+        private final int source;
+        private final int row;
+        private final int tasktype;
+        private final int dest;
+        private final int nextrow;
+        private final double reward;
+
+        OnlineCloudlet(int id, long length, UtilizationModel utilizationModel, int source, int row, int tasktype,
+                int dest, int nextrow, double reward) {
+            super(id, length, 1, 3000, 3000, utilizationModel, utilizationModel, utilizationModel);
+            this.source = source;
+            this.row = row;
+            this.tasktype = tasktype;
+            this.dest = dest;
+            this.nextrow = nextrow;
+            this.reward = reward;
+        }
+
+        int getSource() {
+            return source;
+        }
+
+        int getRow() {
+            return row;
+        }
+
+        int getTaskType() {
+            return tasktype;
+        }
+
+        int getDest() {
+            return dest;
+        }
+
+        int getNextRow() {
+            return nextrow;
+        }
+
+        double getReward() {
+            return reward;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.stream.IntStream;
+
+/**
+ * Online scheduler that places tasks one by one as they arrive.
+ *
+ * An arriving task is first given to the next VM in round robin order, the
+ * same way batch tasks are queued before rebalancing. It is then moved to the
+ * best ranked destination VM of the trained Q table if the move decreases
+ * the absolute variance of the two VM queues. A decision is O(1) and does not
+ * allocate. When a task completes, its queue length is released and the Q
+ * value of the move is updated with the reward the move earned.
+ *
+ * With LoadLevelStates the destination is the best one of the load level
+ * state of the round robin VM, falling back to the plain VM row like
+ * QLOPolicy, and a move updates both rows like a training step. With a
+ * RewardModel a move must decrease the weighted cost of the queues, and
+ * earns its decrease. Both need the levels or the cost of every VM, so a
+ * decision rebalances the load state and is O(vmcount).
+ *
+ * Not thread safe: decisions and completions must come from one thread, the
+ * simulation thread of the broker.
+ */
+public class OnlineScheduler {
+
+    private final MaxCachedQTable Q;
+    private final int[] vmmips;
+    private final int mipssum;
+    private final int[] tasktypelist; // Task length of every task type
+    private final int tasktype;
+    private final double alpha; // Learning rate
+    private final double gamma; // Discount factor
+    private final LoadLevelStates.Encoder encoder; // Levels of the VM queues, null for plain VM states
+    private final RewardModel.Tracker cost; // Cost of the VM queues, null for the absolute variance
+
+    private final VmLoadState load; // VM queue current length of task in load balancing
+    private int vq; // Round robin VM
+
+    private int lastsource; // Round robin VM of the last decision
+    private int lastrow; // Q table state of the last decision
+    private int lastnextrow; // Q table state of the destination after the last decision
+    private double lastreward; // Absolute variance or cost decrease of the last decision
+
+    private QLOMetrics metrics = QLOMetrics.NOOP;
+
+    public OnlineScheduler(MaxCachedQTable Q, int[] vmmips, int[] tasktypelist, double alpha, double gamma) {
+        this(Q, vmmips, tasktypelist, alpha, gamma, null, null);
+    }
+
+    /**
+     * @param levelStates load level state encoding the table was trained with, null for plain VM states
+     * @param reward weighted reward the table was trained with, null for the absolute variance decrease
+     */
+    public OnlineScheduler(MaxCachedQTable Q, int[] vmmips, int[] tasktypelist, double alpha, double gamma,
+            LoadLevelStates levelStates, RewardModel reward) {
+        this.Q = Q;
+        this.vmmips = vmmips;
+        this.mipssum = IntStream.of(vmmips).sum();
+        this.tasktypelist = tasktypelist;
+        this.tasktype = tasktypelist.length;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.encoder = levelStates == null ? null : levelStates.newEncoder();
+        this.cost = reward == null ? null : reward.newTracker();
+        this.load = new VmLoadState(vmmips);
+    }
+
+    /**
+     * Report decision latency and VM queue lengths to a metrics registry
+     */
+    public void setMetrics(QLOMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Choose the VM of an arriving task
+     *
+     * @param job task type
+     * @return VM index
+     */
+    public int assign(int job) {
+        long start = metrics == QLOMetrics.NOOP ? 0 : System.nanoTime();
+        long length = tasktypelist[job];
+        int state = vq;
+        vq = vq + 1;
+        if (vq == vmmips.length) {
+            vq = 0;
+        }
+
+        int dest = encoder == null && cost == null ? place(state, job, length) : rebalance(state, job, length);
+
+        lastsource = state;
+        if (metrics != QLOMetrics.NOOP) {
+            metrics.decision(System.nanoTime() - start);
+            metrics.vmQueueLength(dest, load.getLength(dest));
+        }
+        return dest;
+    }
+
+    /**
+     * Place a task on the round robin VM or its best destination, comparing
+     * the absolute variance of the two VM queues only
+     *
+     * @return destination VM
+     */
+    private int place(int state, int job, long length) {
+        int dest = state;
+        long r = 0;
+        int qline = (state * tasktype) + job;
+        int best = Q.getArgMax(qline);
+        if (best != state && Q.get(qline, best) != 0) {
+            double lbco = (double) (load.getTaskSum() + length) / mipssum; // Calc Load Balancing Coefficient
+            long sourceop = Math.round(lbco * vmmips[state]);
+            long destop = Math.round(lbco * vmmips[best]);
+            long sourcelen = load.getLength(state);
+            long destlen = load.getLength(best);
+            long stayabsvar = Math.abs(sourceop - (sourcelen + length)) + Math.abs(destop - destlen);
+            long moveabsvar = Math.abs(sourceop - sourcelen) + Math.abs(destop - (destlen + length));
+            if (moveabsvar < stayabsvar) {
+                dest = best;
+                r = stayabsvar - moveabsvar;
+            }
+        }
+
+        load.add(dest, length);
+        lastrow = state;
+        lastnextrow = dest;
+        lastreward = r;
+        return dest;
+    }
+
+    /**
+     * Queue a task on the round robin VM, rebalance the load state and move
+     * the task to the best destination of the load level state of the VM if
+     * the move decreases the total absolute variance or the weighted cost
+     *
+     * @return destination VM
+     */
+    private int rebalance(int state, int job, long length) {
+        load.add(state, length);
+        load.balance();
+        if (encoder != null) {
+            encoder.reset(load);
+        }
+        if (cost != null) {
+            cost.reset(load);
+        }
+        int row = encoder == null ? state : encoder.getState(state); // Q table state of the VM
+        int qline = (row * tasktype) + job;
+        if (row != state && Q.get(qline, Q.getArgMax(qline)) == 0) {
+            qline = (state * tasktype) + job; // Nothing learned for the load levels yet
+        }
+
+        int dest = state;
+        double r = 0;
+        int best = Q.getArgMax(qline);
+        if (best != state && Q.get(qline, best) != 0) {
+            double prevcost = cost == null ? load.getSumAbsVariance() : cost.getCost(load);
+            double nextcost = cost == null ? load.getSumAbsVarianceAfterMove(state, best, length)
+                    : cost.getCostAfterMove(load, state, best, length);
+            // Relative margin for the cost, so rounding of the estimates cannot move a task for nothing
+            if (nextcost < (cost == null ? prevcost : prevcost * (1 - 1e-9))) {
+                dest = best;
+                r = prevcost - nextcost;
+                load.move(state, dest, length);
+                if (encoder != null) {
+                    encoder.update(load, state);
+                    encoder.update(load, dest);
+                }
+            }
+        }
+
+        lastrow = row;
+        lastnextrow = encoder == null ? dest : encoder.getState(dest);
+        lastreward = r;
+        return dest;
+    }
+
+    /**
+     * Release a completed task and learn from its placement
+     *
+     * @param source round robin VM of the task
+     * @param row Q table state of the placement, the source for plain VM states
+     * @param job task type
+     * @param dest VM the task ran on
+     * @param nextrow Q table state of the destination after the placement, the destination for plain VM states
+     * @param r absolute variance or cost decrease of the placement
+     */
+    public void complete(int source, int row, int job, int dest, int nextrow, double r) {
+        long length = tasktypelist[job];
+        load.remove(dest, length);
+        metrics.vmQueueLength(dest, load.getLength(dest));
+
+        if (source != dest) {
+            update(source, job, dest, dest, r); // Plain VM row
+            if (row != source) {
+                update(row, job, dest, nextrow, r); // Load level row
+            }
+        }
+    }
+
+    private void update(int state, int job, int dest, int nextstate, double r) {
+        int qline = (state * tasktype) + job;
+        double q = Q.get(qline, dest); // Get current Q table value for state & action
+        double maxQ = Q.getMax((nextstate * tasktype) + job); // Get Max-Q value for next state
+        Q.set(qline, dest, q + alpha * (r + gamma * maxQ - q)); // Insert action value in Q table
+    }
+
+    public int getLastSource() {
+        return lastsource;
+    }
+
+    public int getLastRow() {
+        return lastrow;
+    }
+
+    public int getLastNextRow() {
+        return lastnextrow;
+    }
+
+    public double getLastReward() {
+        return lastreward;
+    }
+
+    public long getLength(int vm) {
+        return load.getLength(vm);
+    }
+
+    public int getTaskLength(int job) {
+        return tasktypelist[job];
+    }
+}
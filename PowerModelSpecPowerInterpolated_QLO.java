@@ -0,0 +1,115 @@
+package org.cloudbus.cloudsim.power.models;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Power model of a SPECpower curve, linearly interpolated between the measured
+ * points and precomputed at construction into a lookup table with
+ * resolution + 1 entries. getPower is then one range check and one array read.
+ */
+public class PowerModelSpecPowerInterpolated_QLO implements PowerModel {
+
+    /** Default lookup table resolution: 0.1 % utilization */
+    public static final int DEFAULT_RESOLUTION = 1000;
+
+    private final double[] table; // Power at utilization i / resolution
+    private final int resolution;
+
+    /**
+     * Same curve as PowerModelSpecPower_QLO at the default resolution
+     */
+    public PowerModelSpecPowerInterpolated_QLO() {
+        this(new double[] {70.0, 75.0, 80.0, 85.0, 90.0, 95.0, 100.0, 105.5, 112.1, 114.3, 118.2}, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * @param power power at equally spaced utilizations from 0 to 1, at least two points
+     * @param resolution number of lookup table intervals
+     */
+    public PowerModelSpecPowerInterpolated_QLO(double[] power, int resolution) {
+        if (power.length < 2) {
+            throw new IllegalArgumentException("Power curve needs at least two points");
+        }
+        if (resolution < 1) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+        this.resolution = resolution;
+        this.table = new double[resolution + 1];
+        int segments = power.length - 1;
+        for (int i = 0; i <= resolution; i++) {
+            double x = (double) i * segments / resolution;
+            int idx = Math.min((int) x, segments - 1);
+            table[i] = power[idx] + (power[idx + 1] - power[idx]) * (x - idx);
+        }
+    }
+
+    @Override
+    public double getPower(double utilization) throws IllegalArgumentException {
+        if (utilization < 0 || utilization > 1) {
+            throw new IllegalArgumentException("Utilization must be between 0 and 1");
+        }
+        return table[(int) (utilization * resolution + 0.5)];
+    }
+
+    /**
+     * Power of many utilizations at once
+     *
+     * @param utilizations utilizations between 0 and 1
+     * @param out power of every utilization, at least as long as utilizations
+     */
+    public void getPower(double[] utilizations, double[] out) throws IllegalArgumentException {
+        for (int i = 0; i < utilizations.length; i++) {
+            double utilization = utilizations[i];
+            if (utilization < 0 || utilization > 1) {
+                throw new IllegalArgumentException("Utilization must be between 0 and 1");
+            }
+            out[i] = table[(int) (utilization * resolution + 0.5)];
+        }
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Load the power curves of several host types. Every line holds a host type
+     * name followed by its power at equally spaced utilizations from 0 to 1,
+     * separated by commas, e.g. "HpProLiantMl110G4,86,89.4,92.6,...,117".
+     * Empty lines and lines starting with # are skipped.
+     *
+     * @param file power curve file
+     * @param resolution number of lookup table intervals
+     * @return power model of every host type, in file order
+     */
+    public static Map<String, PowerModelSpecPowerInterpolated_QLO> loadCurves(Path file, int resolution) throws IOException {
+        Map<String, PowerModelSpecPowerInterpolated_QLO> models = new LinkedHashMap<String, PowerModelSpecPowerInterpolated_QLO>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                double[] power = new double[fields.length - 1];
+                try {
+                    for (int i = 1; i < fields.length; i++) {
+                        power[i - 1] = Double.parseDouble(fields[i].trim());
+                    }
+                    models.put(fields[0].trim(), new PowerModelSpecPowerInterpolated_QLO(power, resolution));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return models;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Features of a task relocation for a QFunction.
+ *
+ * A relocation of a task of length L from a source VM s to a destination VM
+ * d is described by the MIPS of d (vmmips) and the current length (vmcurqlen)
+ * and variance (vmqlvar) of both queues, together with L. Lengths are divided
+ * by the mean queue length of the batch, so one model fits any batch size,
+ * and the last two features are the decrease of the absolute variance of
+ * both queues, which sum to the load balancing reward of the relocation.
+ */
+public class QFeatures {
+
+    /** Number of features of a relocation */
+    public static final int COUNT = 9;
+
+    private final int[] vmmips;
+    private final double maxmips;
+
+    public QFeatures(int[] vmmips) {
+        this.vmmips = vmmips;
+        int max = 1;
+        for (int mips : vmmips) {
+            max = Math.max(max, mips);
+        }
+        this.maxmips = max;
+    }
+
+    /**
+     * Write the features of a relocation, without changing the load state
+     *
+     * @param load VM queues load balancing state, balanced
+     * @param source source VM
+     * @param dest destination VM
+     * @param length task length
+     * @param out feature vectors
+     * @param offset index of the first feature in out
+     */
+    public void get(VmLoadState load, int source, int dest, long length, double[] out, int offset) {
+        double m = Math.max(1, (double) load.getTaskSum() / vmmips.length); // Mean queue length
+        long destvar = load.getVariance(dest);
+        long sourcevar = load.getVariance(source);
+        out[offset] = 1; // Bias
+        out[offset + 1] = vmmips[dest] / maxmips;
+        out[offset + 2] = load.getLength(dest) / m;
+        out[offset + 3] = destvar / m;
+        out[offset + 4] = load.getLength(source) / m;
+        out[offset + 5] = sourcevar / m;
+        out[offset + 6] = length / m;
+        out[offset + 7] = (Math.abs(destvar) - Math.abs(destvar - length)) / m;
+        out[offset + 8] = (Math.abs(sourcevar) - Math.abs(sourcevar + length)) / m;
+    }
+
+    /**
+     * Scale of the rewards of a batch: the mean queue length that features
+     * are divided by
+     */
+    public double getScale(VmLoadState load) {
+        return Math.max(1, (double) load.getTaskSum() / vmmips.length);
+    }
+}
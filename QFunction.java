@@ -0,0 +1,61 @@
+/**
+ * Q value function over load features, an alternative to the Q table.
+ *
+ * The value of relocating a task is predicted from the QFeatures of its
+ * source VM, destination VM and task length, so the model size does not
+ * depend on the number of VMs and a trained model also rates VMs it was not
+ * trained on. predict() and train() reuse scratch arrays: they do not
+ * allocate, and one instance must not be used by two threads at once.
+ */
+public interface QFunction {
+
+    /**
+     * Create a value function
+     *
+     * @param engine "linear" or "mlp"
+     * @param features number of features
+     * @param hidden hidden units of the MLP
+     * @param seed seed of the initial MLP weights
+     */
+    static QFunction create(String engine, int features, int hidden, long seed) {
+        switch (engine) {
+            case "linear":
+                return new LinearQFunction(features);
+            case "mlp":
+                return new MlpQFunction(features, hidden, seed);
+            default:
+                throw new IllegalArgumentException("Unknown Q function engine: " + engine);
+        }
+    }
+
+    int getFeatureCount();
+
+    /**
+     * Predicted Q value of one feature vector
+     *
+     * @param x feature vectors
+     * @param offset index of the first feature in x
+     */
+    double predict(double[] x, int offset);
+
+    /**
+     * One minibatch SGD step on the squared error, with the error of every
+     * sample clipped to [-1, 1]
+     *
+     * @param x n feature vectors, one after the other
+     * @param targets target Q value of every feature vector
+     * @param n minibatch size
+     * @param rate learning rate
+     */
+    void train(double[] x, double[] targets, int n, double rate);
+
+    /**
+     * Copy with the same weights
+     */
+    QFunction copy();
+
+    /**
+     * Copy the weights of a function of the same engine and size
+     */
+    void copyFrom(QFunction other);
+}
@@ -0,0 +1,96 @@
+import java.util.Random;
+
+/**
+ * Gradient check of LinearQFunction and MlpQFunction.
+ *
+ * Trains random weights one step on a random minibatch and compares the step
+ * with the central difference gradient of the mean loss of the batch. The
+ * loss of a sample is the squared error halved up to an error of 1 and
+ * linear beyond, which is the loss of an error clipped to [-1, 1], so the
+ * targets are drawn with and without clipping. Copies must predict like the
+ * function they were copied from.
+ */
+public class QFunctionCheck {
+
+    private static final double TOLERANCE = 1e-5; // Relative difference of the step and the numeric gradient
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("QFunction", args, 400, (rand, round) -> {
+            boolean mlp = round % 2 == 1;
+            int features = 1 + rand.nextInt(10);
+            int n = 1 + rand.nextInt(32);
+            QFunction f = QFunction.create(mlp ? "mlp" : "linear", features, 1 + rand.nextInt(16), rand.nextLong());
+            double[] weights = getWeights(f);
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = rand.nextGaussian() * 0.5;
+            }
+            setWeights(f, weights);
+
+            double[] x = new double[n * features];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = rand.nextGaussian();
+            }
+            double[] targets = new double[n];
+            for (int s = 0; s < n; s++) {
+                targets[s] = f.predict(x, s * features) + (rand.nextDouble() * 6 - 3);
+            }
+
+            QFunction copy = f.copy();
+            for (int s = 0; s < n; s++) {
+                SelfCheck.check(copy.predict(x, s * features) == f.predict(x, s * features),
+                        "Copy predicts differently");
+            }
+            double rate = 0.5;
+            copy.train(x, targets, n, rate);
+            double[] trained = getWeights(copy);
+
+            QFunction probe = f.copy();
+            for (int k = 0; k < weights.length; k++) {
+                double h = 1e-6 * Math.max(1, Math.abs(weights[k]));
+                double[] shifted = weights.clone();
+                shifted[k] = weights[k] + h;
+                setWeights(probe, shifted);
+                double up = loss(probe, x, targets, n, features);
+                shifted[k] = weights[k] - h;
+                setWeights(probe, shifted);
+                double down = loss(probe, x, targets, n, features);
+                double numeric = (up - down) / (2 * h);
+                double step = (weights[k] - trained[k]) / rate;
+                SelfCheck.check(Math.abs(step - numeric) <= TOLERANCE * Math.max(1, Math.abs(numeric)),
+                        (mlp ? "MLP" : "Linear") + " gradient of weight " + k + " is " + step + ", expected "
+                                + numeric);
+            }
+            probe.copyFrom(copy);
+            for (int s = 0; s < n; s++) {
+                SelfCheck.check(probe.predict(x, s * features) == copy.predict(x, s * features),
+                        "copyFrom predicts differently");
+            }
+            return weights.length;
+        });
+    }
+
+    /**
+     * Mean loss of a minibatch: squared error halved, linear beyond an error
+     * of 1
+     */
+    private static double loss(QFunction f, double[] x, double[] targets, int n, int features) {
+        double sum = 0;
+        for (int s = 0; s < n; s++) {
+            double error = Math.abs(f.predict(x, s * features) - targets[s]);
+            sum += error <= 1 ? error * error / 2 : error - 0.5;
+        }
+        return sum / n;
+    }
+
+    private static double[] getWeights(QFunction f) {
+        return f instanceof MlpQFunction ? ((MlpQFunction) f).getWeights() : ((LinearQFunction) f).getWeights();
+    }
+
+    private static void setWeights(QFunction f, double[] weights) {
+        if (f instanceof MlpQFunction) {
+            ((MlpQFunction) f).setWeights(weights);
+        } else {
+            ((LinearQFunction) f).setWeights(weights);
+        }
+    }
+}
@@ -8,6 +8,8 @@
  */
 
  import java.util.stream.*;
+ import java.io.IOException;
+ import java.nio.file.Paths;
  import java.text.DecimalFormat;
  import java.util.Random;
  
@@ -15,7 +17,6 @@
  import java.util.ArrayList;
  import java.util.Arrays;
  import java.util.Calendar;
- import java.util.LinkedList;
  import java.util.List;
  import java.util.Random;
  
@@ -23,24 +24,11 @@
  import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
  import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
  import org.cloudbus.cloudsim.Datacenter;
- import org.cloudbus.cloudsim.DatacenterBroker;
- import org.cloudbus.cloudsim.DatacenterCharacteristics;
- import org.cloudbus.cloudsim.Host;
  import org.cloudbus.cloudsim.Log;
- import org.cloudbus.cloudsim.Pe;
- import org.cloudbus.cloudsim.Storage;
- import org.cloudbus.cloudsim.UtilizationModel;
- import org.cloudbus.cloudsim.UtilizationModelFull;
  import org.cloudbus.cloudsim.Vm;
  import org.cloudbus.cloudsim.power.PowerVm;
- import org.cloudbus.cloudsim.VmAllocationPolicySimple;
- import org.cloudbus.cloudsim.VmSchedulerTimeShared;
  import org.cloudbus.cloudsim.core.CloudSim;
  import org.cloudbus.cloudsim.power.PowerHost;
- import org.cloudbus.cloudsim.power.models.PowerModelSpecPower_QLO;
- import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
- import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
- import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
  
  /**
   * A simple example showing how to create
@@ -52,616 +40,348 @@
   */
  public class QLO {
  
-     /** The cloudlet list. */
-     private static List<Cloudlet> cloudletList0;
-     private static List<Cloudlet> cloudletList1;
- 
-     /** The vmlist. */
-     private static List<Vm> vmlist0;
-     private static List<Vm> vmlist1;
- 
      final static int vmcount = 4;
      final static int vmmips[] = { 100, 300, 500, 700 };
  
      final static int taskcount = 10;
      final static int tasktype = 2;
-     final static Integer tasktypelist[] = { 115, 345 };
+     final static int tasktypelist[] = { 115, 345 };
  
      // Q-Learning parameters
      final static int states = vmcount;
      final static double alpha = 0.1; // Learning rate
      final static double gamma = 0.9; // Discount factor
      final static double epsilon = 0.1; // Exploration rate
-     final static double[][] Q = new double[states * tasktype][states]; // Q learning table
- 
-     // Energy cost per kWh ($0.15)
-     final static double energyCostPerKWh = 0.15;
- 
-     // Performance metrics storage
-     private static double optimizedExecutionTime;
-     private static double nonOptimizedExecutionTime;
-     private static double optimizedResponseTime;
-     private static double nonOptimizedResponseTime;
-     private static double optimizedEnergyCost;
-     private static double nonOptimizedEnergyCost;
-     private static double optimizedEnergyConsumption;
-     private static double nonOptimizedEnergyConsumption;
+     final static String epsilonSchedule = System.getProperty("qlo.train.epsilon", "linear"); // Exploration decay: constant, linear or exponential
+     final static double epsilonStart = Double.parseDouble(System.getProperty("qlo.train.epsilon.start", "1.0")); // Exploration rate of the first episode, decaying to epsilon
+     final static double convergenceThreshold = Double.parseDouble(System.getProperty("qlo.train.threshold", "0")); // Max |delta Q| of converged training rounds, 0 to run every episode
+     final static String qtableBackend = System.getProperty("qlo.qtable", "double"); // Q table storage: double, float or direct
+     final static int stateLevels = Integer.getInteger("qlo.state.levels", 0); // Load levels of a VM in the state, 0 for plain VM states
+     final static int stateCapacity = Integer.getInteger("qlo.state.capacity", 4096); // Max indexed load level states
+     final static double rewardVariance = Double.parseDouble(System.getProperty("qlo.reward.variance", "1")); // Reward weight of the total absolute variance
+     final static double rewardMakespan = Double.parseDouble(System.getProperty("qlo.reward.makespan", "0")); // Reward weight of the estimated makespan
+     final static double rewardEnergy = Double.parseDouble(System.getProperty("qlo.reward.energy", "0")); // Reward weight of the estimated energy
+     static QLOConfig config; // Q learning problem of the topology VMs
+     final static String engine = System.getProperty("qlo.engine", "table"); // Q value engine: table, linear or mlp
+     final static int engineHidden = Integer.getInteger("qlo.engine.hidden", 16); // Hidden units of the mlp engine
+     final static double engineRate = Double.parseDouble(System.getProperty("qlo.engine.rate", "0.01")); // SGD learning rate of the linear and mlp engines
+     final static int engineBatch = Integer.getInteger("qlo.engine.batch", 32); // SGD minibatch size
+     final static int engineReplay = Integer.getInteger("qlo.engine.replay", 10000); // Experience replay capacity
+     final static int engineTargetSync = 100; // Minibatches between two target function refreshes
+     static QLearningScheduler scheduler; // Q learning table and its policy
+ 
+     // Topology parameters
+     final static String topologyFile = System.getProperty("qlo.topology"); // Datacenter, host and VM file, one host running the vmmips VMs when not set
+     static Topology topology; // Datacenters, hosts and VMs, every VM being a Q learning state
+
+     // Trace workload parameters
+     final static String traceFile = System.getProperty("qlo.trace"); // Job trace to train and test on, random tasks of tasktypelist when not set
+     final static String traceFormat = System.getProperty("qlo.trace.format"); // swf or csv, by file name when not set
+     final static int traceColumn = Integer.getInteger("qlo.trace.column", 0); // Job length column of a csv trace
+     final static double traceScale = Double.parseDouble(System.getProperty("qlo.trace.scale", "1")); // Task length of one unit of trace run time or column value
+     final static int traceTaskTypes = Integer.getInteger("qlo.trace.tasktypes", 8); // Max task types clustered from the trace
+     final static int traceWarmup = Integer.getInteger("qlo.trace.warmup", 100000); // Trace jobs clustered into task types
+     final static int traceBatch = Integer.getInteger("qlo.trace.batch", 100); // Tasks of a trace batch
+     final static double traceHoldout = Double.parseDouble(System.getProperty("qlo.trace.holdout", "0.1")); // Share of the trace held out for the test batch
+     static TraceWorkload workload; // Trace task batches, null for random tasks
+
+     // Q table persistence parameters
+     final static String qtableLoad = System.getProperty("qlo.qtable.load"); // Trained Q table file to start from
+     final static String qtableSave = System.getProperty("qlo.qtable.save"); // File to save the trained Q table to
+     final static boolean resumeTraining = Boolean.getBoolean("qlo.train.resume"); // Keep training a loaded Q table
+     final static boolean verifyQtable = Boolean.parseBoolean(System.getProperty("qlo.qtable.verify", "true")); // Check loaded Q table checksum
+ 
+     // Parallel training parameters
+     final static int workers = Integer.getInteger("qlo.workers", Runtime.getRuntime().availableProcessors()); // Training worker threads
+     final static int syncEpisodes = Integer.getInteger("qlo.syncEpisodes", 10); // Episodes per worker between Q table merges
+     final static int replayCapacity = Integer.getInteger("qlo.replay.capacity", 0); // Transitions kept for replay per worker, 0 to update the Q table at every learn step
+     final static ReplayConfig replay = replayCapacity == 0 ? null
+             : new ReplayConfig(replayCapacity, Integer.getInteger("qlo.replay.batch", 32),
+                     Integer.getInteger("qlo.replay.period", 8), Boolean.getBoolean("qlo.replay.async"));
+ 
+     // Online scheduling mode parameters
+     final static String mode = System.getProperty("qlo.mode", "batch"); // batch or online
+     final static int onlineTaskCount = Integer.getInteger("qlo.online.tasks", 10000); // Tasks streamed in online mode
+     final static double onlineRate = Double.parseDouble(System.getProperty("qlo.online.rate", "5")); // Mean task arrivals per simulated second in online mode
+     final static long onlineSeed = Long.getLong("qlo.online.seed", 1); // Seed of the online task types and arrival times
+ 
+     // Metrics parameters
+     final static String metricsName = System.getProperty("qlo.metrics"); // JMX object name of the metrics, like QLO:type=Metrics
+     static QLOMetricsRegistry metrics; // Training and scheduling metrics, null when not enabled
+ 
+     // Comparison harness parameters
+     final static int simulationWorkers = Integer.getInteger("qlo.simulation.workers", 1); // Policy simulations run at the same time in worker processes
  
      /**
       * Creates main() to run this example
       */
      public static void main(String[] args) {
          Log.printLine("Starting QLO ...");
- 
-         // Model Training Episode
-         // =============================================================================================
-         Random rand = new Random();
-         int mipssum = IntStream.of(vmmips).sum();
-         long[] vmqoplen = new long[vmcount]; // VM queue optimum length of task in load balancing
-         long[] vmcurqlen = new long[vmcount]; // VM queue current length of task in load balancing
-         long[] vmqlvar = new long[vmcount]; // VM queue task variance
-         long[] vmqlabsvar = new long[vmcount]; // VM queue task absolute variance
-         long cursumvmqlabsvar = 0; // Current total VM queue task absolute variance
-         long prevsumvmqlabsvar = 0; // Previous total VM queue task absolute variance
- 
-         // Model Training main loop
-         for (int i = 0; i < 1000; i++) {
-             int vq = 0;
-             int k = 0;
-             int tasksum = 0;
-             int[][] vmq = new int[vmcount][taskcount]; // Vm's task queue table
- 
-             for (int j = 0; j < taskcount; j++) {
-                 int jobtype = rand.nextInt(tasktype); // Create task randomly
-                 tasksum = tasksum + tasktypelist[jobtype]; // Calc total created task in every pass
-                 // Task Round Robin scheduling in VM's queue
-                 vmq[vq][k] = tasktypelist[jobtype];
-                 vq = vq + 1;
-                 if (vq == vmcount) {
-                     vq = 0;
-                     k = k + 1;
-                 }
-             }
- 
-             double lbco = (double) tasksum / mipssum; // Calc Load Balancing Coefficient
- 
-             // Calc VM queue optimum length of task in load balancing
-             for (int j = 0; j < vmcount; j++) {
-                 vmqoplen[j] = Math.round(lbco * vmmips[j]);
-             }
- 
-             // Calc VM queue current length of task in load balancing
-             // Calc VM queue task variance
-             // Calc VM queue task absolute variance
-             // Calc Current total VM queue task absolute variance
-             cursumvmqlabsvar = 0;
-             for (int j = 0; j < vmcount; j++) {
-                 vmcurqlen[j] = IntStream.of(vmq[j]).sum();
-                 vmqlvar[j] = vmqoplen[j] - vmcurqlen[j];
-                 vmqlabsvar[j] = Math.abs(vmqlvar[j]);
-                 cursumvmqlabsvar = cursumvmqlabsvar + vmqlabsvar[j];
-             }
- 
-             // Choose start state randomly. The VM queue must not be empty
-             int state = rand.nextInt(states);
-             while (IntStream.of(vmq[state]).sum() == 0) {
-                 state = rand.nextInt(states);
-             }
-             int nextstate = state; // At first current state and next state are the same
- 
-             for (int learn = 0; learn < 1000; learn++) {
-                 prevsumvmqlabsvar = cursumvmqlabsvar;
- 
-                 // Choose a job to relocation from current queue(state) randomly
-                 int nonzerojobs = 0;
-                 int[] jobidx = new int[taskcount];
-                 for (int idx = 0; idx < vmq[state].length; idx++) {
-                     if (vmq[state][idx] != 0) {
-                         nonzerojobs++;
-                         jobidx[nonzerojobs - 1] = idx;
-                     }
-                 }
- 
-                 int choosedjobidx = rand.nextInt(nonzerojobs);
-                 int choosedjob = vmq[state][jobidx[choosedjobidx]];
-                 vmq[state][jobidx[choosedjobidx]] = 0;
- 
-                 while (state == nextstate) {
-                     nextstate = rand.nextInt(states);
-                 }
- 
-                 for (int idx = 0; idx < vmq[nextstate].length; idx++) {
-                     if (vmq[nextstate][idx] == 0) {
-                         vmq[nextstate][idx] = choosedjob;
-                         break;
-                     }
-                 }
- 
-                 // Calc current total VM queue task absolute variance
-                 cursumvmqlabsvar = 0;
-                 for (int j = 0; j < vmcount; j++) {
-                     vmcurqlen[j] = IntStream.of(vmq[j]).sum();
-                     vmqlvar[j] = vmqoplen[j] - vmcurqlen[j];
-                     vmqlabsvar[j] = Math.abs(vmqlvar[j]);
-                     cursumvmqlabsvar = cursumvmqlabsvar + vmqlabsvar[j];
-                 }
- 
-                 long r = prevsumvmqlabsvar - cursumvmqlabsvar; // Get action Reward
- 
-                 double q = getQ(state, Arrays.asList(tasktypelist).indexOf(choosedjob), nextstate); // Get current Q table value for state & action
- 
-                 double maxQ = getMaxQ(nextstate, Arrays.asList(tasktypelist).indexOf(choosedjob)); // Get Max-Q value for next state
- 
-                 double value = q + alpha * (r + gamma * maxQ - q); // Calc action value
- 
-                 setQ(state, Arrays.asList(tasktypelist).indexOf(choosedjob), nextstate, value); // Insert action value in Q table
- 
-                 state = nextstate; // Change state to next state
-             }
+
+         // Load the topology: every VM of every host is a state of the Q table
+         try {
+             topology = topologyFile == null ? Topology.single(vmmips) : Topology.load(Paths.get(topologyFile));
+         } catch (Exception e) {
+             e.printStackTrace();
+             Log.printLine("The topology could not be loaded from " + topologyFile);
+             return;
          }
-         Log.printLine("End of Training Episode...");
-         // End of Training Episode
-         // ==============================================================================================
- 
-         // Model Test Episode
+         RewardModel reward;
          try {
-             // Generate tasks for test randomly
-             int vq = 0;
-             int k = 0;
-             int tasksum = 0;
-             int[][] vmq = new int[vmcount][taskcount]; // Vm's task queue table
-             int[][] noOpVmQ = new int[vmcount][taskcount]; // Vm's task queue table
- 
-             for (int j = 0; j < taskcount; j++) {
-                 int jobtype = rand.nextInt(tasktype); // Create task randomly
-                 tasksum = tasksum + tasktypelist[jobtype]; // Calc total created task in every pass
-                 // Task Round Robin scheduling in VM's queue
-                 vmq[vq][k] = tasktypelist[jobtype];
-                 noOpVmQ[vq][k] = tasktypelist[jobtype];
-                 vq = vq + 1;
-                 if (vq == vmcount) {
-                     vq = 0;
-                     k = k + 1;
-                 }
+             reward = createReward(topology);
+         } catch (Exception e) {
+             e.printStackTrace();
+             Log.printLine("The reward power models could not be loaded");
+             return;
+         }
+         if (traceFile != null) {
+             try {
+                 workload = TraceWorkload.open(Paths.get(traceFile), traceFormat, traceColumn, traceScale, traceTaskTypes,
+                         traceWarmup, traceHoldout);
+             } catch (Exception e) {
+                 e.printStackTrace();
+                 Log.printLine("The trace could not be read from " + traceFile);
+                 return;
              }
+             Log.printLine("Trace " + traceFile + ": task types " + Arrays.toString(workload.getTaskTypeList()));
+         }
+         config = new QLOConfig(topology.getVmMips(), workload == null ? tasktypelist : workload.getTaskTypeList(),
+                 workload == null ? taskcount : traceBatch, alpha, gamma, epsilon, qtableBackend, stateLevels,
+                 stateCapacity, reward);
+         if (topologyFile != null) {
+             Log.printLine("Topology " + topologyFile + ": " + topology.getDatacenterCount() + " datacenters, "
+                     + topology.getHostCount() + " hosts, " + topology.getVmCount() + " VMs");
+         }
+
+         if (!engine.equals("table")) {
+             runEngine();
+             return;
+         }
  
-             double lbco = (double) tasksum / mipssum; // Calc Load Balancing Coefficient
- 
-             // Calc VM queue optimum length of task in load balancing
-             for (int j = 0; j < vmcount; j++) {
-                 vmqoplen[j] = Math.round(lbco * vmmips[j]);
+         // Load trained model
+         // =============================================================================================
+         if (qtableLoad != null) {
+             try {
+                 scheduler = QLearningScheduler.load(config, Paths.get(qtableLoad), verifyQtable);
+                 Log.printLine("Loaded Q table " + qtableLoad);
+             } catch (Exception e) {
+                 e.printStackTrace();
+                 Log.printLine("The simulation has been terminated due to an unexpected error");
+                 return;
              }
- 
-             // Calc VM queue current length of task in load balancing
-             // Calc VM queue task variance
-             // Calc VM queue task absolute variance
-             // Calc Current total VM queue task absolute variance
-             cursumvmqlabsvar = 0;
-             for (int j = 0; j < vmcount; j++) {
-                 vmcurqlen[j] = IntStream.of(vmq[j]).sum();
-                 vmqlvar[j] = vmqoplen[j] - vmcurqlen[j];
-                 vmqlabsvar[j] = Math.abs(vmqlvar[j]);
-                 cursumvmqlabsvar = cursumvmqlabsvar + vmqlabsvar[j];
+         } else {
+             try {
+                 scheduler = new QLearningScheduler(config);
+             } catch (IllegalArgumentException e) {
+                 Log.printLine(e.getMessage() + ": use fewer VMs or task types, or -Dqlo.engine=linear or mlp");
+                 return;
              }
-             prevsumvmqlabsvar = cursumvmqlabsvar;
- 
-             // Schedule jobs on VMs with Q-table using
-             for (int state = 0; state < states; state++) {
-                 for (int tt = 0; tt < tasktype; tt++) {
-                     double[] qline = Q[(state * tasktype) + tt]; // Trace Q-table in row mode
-                     // Determine Q-table current row max value index
-                     while (DoubleStream.of(qline).sum() != 0) {
-                         double maxValue = -Double.MAX_VALUE;
-                         int maxValueIdx = 0;
-                         for (int qlidx = 0; qlidx < states; qlidx++) {
-                             if (maxValue < qline[qlidx] && qline[qlidx] != 0) {
-                                 maxValue = qline[qlidx];
-                                 maxValueIdx = qlidx;
-                             }
-                         }
-                         qline[maxValueIdx] = 0;
- 
-                         for (int l = 0; l < vmq[state].length; l++) {
-                             if (vmq[state][l] == tasktypelist[tt]) {
-                                 int choosedjob = vmq[state][l];
-                                 long sourceVmQlAbsvar = Math.abs(vmqoplen[state] - (vmcurqlen[state] - choosedjob));
-                                 long destVmQlAbsvar = Math.abs(vmqoplen[maxValueIdx] - (vmcurqlen[maxValueIdx] + choosedjob));
-                                 long newSumVmQlAbsVar = cursumvmqlabsvar - vmqlabsvar[state] + sourceVmQlAbsvar
-                                         - vmqlabsvar[maxValueIdx] + destVmQlAbsvar;
-                                 if (newSumVmQlAbsVar < cursumvmqlabsvar) {
-                                     vmcurqlen[state] = vmcurqlen[state] - choosedjob;
-                                     vmcurqlen[maxValueIdx] = vmcurqlen[maxValueIdx] + choosedjob;
-                                     vmqlabsvar[state] = sourceVmQlAbsvar;
-                                     vmqlabsvar[maxValueIdx] = destVmQlAbsvar;
-                                     cursumvmqlabsvar = newSumVmQlAbsVar;
-                                     vmq[state][l] = 0;
-                                     for (int idx = 0; idx < vmq[maxValueIdx].length; idx++) {
-                                         if (vmq[maxValueIdx][idx] == 0) {
-                                             vmq[maxValueIdx][idx] = choosedjob;
-                                             break;
-                                         }
-                                     }
-                                 }
-                             }
-                         }
-                     }
-                 }
+         }
+         if (workload != null) {
+             scheduler.setTaskSource(workload);
+         }
+         if (metricsName != null) {
+             try {
+                 metrics = new QLOMetricsRegistry(topology.getVmCount());
+                 metrics.register(metricsName);
+                 scheduler.setMetrics(metrics);
+             } catch (Exception e) {
+                 e.printStackTrace();
+                 Log.printLine("The metrics could not be registered as " + metricsName);
              }
+         }
  
-             // Create VMs and Tasks in Cloud and assign Tasks to VMs same optimized VM's queue
-             // First step: Initialize the CloudSim package. It should be called
-             // before creating any entities.
-             int num_user = 2; // number of cloud users
-             Calendar calendar = Calendar.getInstance();
-             boolean trace_flag = false; // mean trace events
- 
-             // Initialize the CloudSim library
-             CloudSim.init(num_user, calendar, trace_flag);
- 
-             // Second step: Create Datacenters
-             // Datacenters are the resource providers in CloudSim. We need at list one of them to run a CloudSim simulation
-             @SuppressWarnings("unused")
-             Datacenter datacenter0 = createDatacenter("Datacenter_0");
-             Host host0 = datacenter0.getHostList().get(0);
-             Host host1 = datacenter0.getHostList().get(1);
- 
-             // Third step: Create Broker
-             DatacenterBroker broker0 = createBroker(0);
-             int brokerId0 = broker0.getId();
- 
-             DatacenterBroker broker1 = createBroker(1);
-             int brokerId1 = broker1.getId();
- 
-             // Fourth step: Create virtual machines
-             vmlist0 = new ArrayList<Vm>();
-             vmlist1 = new ArrayList<Vm>();
-             // Vm fqvm1,;
-             int vmid;
-             int mips = 0;
-             long size = 10000; // image size (MB)
-             int ram = 512; // vm memory (MB)
-             long bw = 1000;
-             int pesNumber = 1; // number of cpus
-             String vmm = "Xen"; // VMM name
- 
-             for (int i = 0; i < vmcount; i++) {
-                 // VM description VM
-                 vmid = i;
-                 mips = vmmips[i];
-                 // create VM
-                 Vm fqvm0 = new Vm(vmid, brokerId0, mips, pesNumber, ram, bw, size, vmm, new CloudletSchedulerSpaceShared());
-                 fqvm0.setHost(host0);
-                 vmlist0.add(fqvm0);
- 
-                 Vm fqvm1 = new Vm(vmid, brokerId1, mips, pesNumber, ram, bw, size, vmm, new CloudletSchedulerSpaceShared());
-                 fqvm1.setHost(host1);
-                 vmlist1.add(fqvm1);
+         // Model Training Episode
+         // =============================================================================================
+         if (qtableLoad == null || resumeTraining) {
+             int episodes = scheduler.trainIncrementally(new TrainingConfig(1000, 1000, workers, syncEpisodes, null,
+                     EpsilonSchedule.create(epsilonSchedule, epsilonStart, epsilon, 1000), convergenceThreshold, replay));
+             Log.printLine("End of Training Episode... (" + episodes + " episodes)");
+             if (scheduler.getLoadLevelStates() != null) {
+                 Log.printLine("Load level states visited: " + scheduler.getLoadLevelStates().getIndex().size() + " of "
+                         + stateCapacity);
              }
-             // submit vm list to the broker
-             broker0.submitVmList(vmlist0);
-             broker1.submitVmList(vmlist1);
- 
-             // Fifth step: Create Cloudlets
-             cloudletList0 = new ArrayList<Cloudlet>();
-             cloudletList1 = new ArrayList<Cloudlet>();
- 
-             // Cloudlet properties
-             pesNumber = 1;
-             long fileSize = 3000;
-             long outputSize = 3000;
-             UtilizationModel utilizationModel = new UtilizationModelFull();
-             int cloudletid0 = 0;
-             int cloudletid1 = 1000;
-             int[][] binder0 = new int[vmcount][taskcount]; // Vm to Task bind table
-             int[][] binder1 = new int[vmcount][taskcount]; // Vm to Task bind table
-             for (int i = 0; i < vmcount; i++) {
-                 for (int j = 0; j < taskcount; j++) {
-                     if (vmq[i][j] > 0) {
-                         // if (noOpVmQ[i][j] > 0){
-                         long length = vmq[i][j];
-                         Cloudlet cloudlet = new Cloudlet(cloudletid0, length, pesNumber, fileSize, outputSize, utilizationModel, utilizationModel, utilizationModel);
-                         cloudlet.setUserId(brokerId0);
-                         cloudletList0.add(cloudlet);
-                         binder0[i][j] = cloudletid0;
-                         cloudletid0++;
-                     } else {
-                         binder0[i][j] = -1;
-                     }
-                     if (noOpVmQ[i][j] > 0) {
-                         long length = noOpVmQ[i][j];
-                         Cloudlet cloudlet = new Cloudlet(cloudletid1, length, pesNumber, fileSize, outputSize, utilizationModel, utilizationModel, utilizationModel);
-                         cloudlet.setUserId(brokerId1);
-                         cloudletList1.add(cloudlet);
-                         binder1[i][j] = cloudletid1;
-                         cloudletid1++;
-                     } else {
-                         binder1[i][j] = -1;
-                     }
- 
-                 }
+             if (metrics != null) {
+                 Log.printLine("Learn steps/s: " + Math.round(metrics.getLearnStepsPerSecond()) + ", mean episode reward: "
+                         + metrics.getMeanEpisodeReward() + ", last max |delta Q|: " + metrics.getLastMaxDeltaQ());
              }
  
-             // submit cloudlet list to the broker
-             broker0.submitCloudletList(cloudletList0);
-             broker1.submitCloudletList(cloudletList1);
-             // bind the cloudlets to the vms. This way, the broker
-             // will submit the bound cloudlets only to the specific VM
-             for (int i = 0; i < vmcount; i++) {
-                 for (int j = 0; j < taskcount; j++) {
-                     if (binder0[i][j] > -1) {
-                         broker0.bindCloudletToVm(binder0[i][j], vmlist0.get(i).getId());
-                     }
-                     if (binder1[i][j] > -1) {
-                         broker1.bindCloudletToVm(binder1[i][j], vmlist1.get(i).getId());
-                     }
- 
+             if (qtableSave != null) {
+                 try {
+                     scheduler.save(Paths.get(qtableSave));
+                     Log.printLine("Saved Q table " + qtableSave);
+                 } catch (Exception e) {
+                     e.printStackTrace();
+                     Log.printLine("The Q table could not be saved to " + qtableSave);
                  }
              }
- 
-             // Sixth step: Starts the simulation
-             Log.printLine("QLO Optimized started!");
-             CloudSim.startSimulation();
- 
-             // Final step: Print results when simulation is over
-             List<Cloudlet> cloudletList0 = broker0.getCloudletReceivedList();
-             List<Cloudlet> cloudletList1 = broker1.getCloudletReceivedList();
-             List<PowerHost> powerhosts = datacenter0.getHostList();
- 
-             CloudSim.stopSimulation();
-             Log.printLine("=============================================================================");
-             Log.printLine("=============> User (Optimized) " + brokerId0 + "    ");
-             printCloudletList(cloudletList0, powerhosts.get(0), true);
- 
-             Log.printLine("=============================================================================");
-             Log.printLine("=============> User (No Optimized)" + brokerId1 + "    ");
-             printCloudletList(cloudletList1, powerhosts.get(1), false);
- 
-             Log.printLine("QLO Optimized finished!");
- 
-             // Print improvement results
-             printImprovementResults();
- 
-         } catch (Exception e) {
-             e.printStackTrace();
-             Log.printLine("The simulation has been terminated due to an unexpected error");
          }
-     }
+         // End of Training Episode
+         // ==============================================================================================
  
-     private static Datacenter createDatacenter(String name) {
- 
-         // Here are the steps needed to create a PowerDatacenter:
-         // 1. We need to create a list to store
-         // our machine
-         List<Host> hostList = new ArrayList<Host>();
- 
-         // 2. A Machine contains one or more PEs or CPUs/Cores.
-         // In this example, it will have only one core.
-         List<Pe> peList = new ArrayList<Pe>();
- 
-         int mips = 5000;
- 
-         // 3. Create PEs and add these into a list.
-         peList.add(new Pe(0, new PeProvisionerSimple(mips))); // need to store Pe id and MIPS Rating
- 
-         // 4. Create Host with its id and list of PEs and add them to the list of machines
-         int hostId = 0;
-         int ram = 20480; // host memory (MB)
-         long storage = 1000000; // host storage
-         int bw = 100000;
- 
-         hostList.add(
-                 new PowerHost(
-                         hostId,
-                         new RamProvisionerSimple(ram),
-                         new BwProvisionerSimple(bw),
-                         storage,
-                         peList,
-                         new VmSchedulerTimeShared(peList),
-                         new PowerModelSpecPower_QLO())
-         ); // This is our machine
- 
-         hostId = 1;
-         hostList.add(
-                 new PowerHost(
-                         hostId,
-                         new RamProvisionerSimple(ram),
-                         new BwProvisionerSimple(bw),
-                         storage,
-                         peList,
-                         new VmSchedulerTimeShared(peList),
-                         new PowerModelSpecPower_QLO())
-         ); // This is our machine
- 
-         // 5. Create a DatacenterCharacteristics object that stores the
-         // properties of a data center: architecture, OS, list of
-         // Machines, allocation policy: time- or space-shared, time zone
-         // and its price (G$/Pe time unit).
-         String arch = "x86"; // system architecture
-         String os = "Linux"; // operating system
-         String vmm = "Xen";
-         double time_zone = 10.0; // time zone this resource located
-         double cost = 3.0; // the cost of using processing in this resource
-         double costPerMem = 0.05; // the cost of using memory in this resource
-         double costPerStorage = 0.001; // the cost of using storage in this resource
-         double costPerBw = 0.0; // the cost of using bw in this resource
-         LinkedList<Storage> storageList = new LinkedList<Storage>(); // we are not adding SAN devices by now
- 
-         DatacenterCharacteristics characteristics = new DatacenterCharacteristics(
-                 arch, os, vmm, hostList, time_zone, cost, costPerMem, costPerStorage, costPerBw);
- 
-         // 6. Finally, we need to create a PowerDatacenter object.
-         Datacenter datacenter = null;
-         try {
-             datacenter = new Datacenter(name, characteristics, new VmAllocationPolicySimple(hostList), storageList, 0);
-         } catch (Exception e) {
-             e.printStackTrace();
+         if (mode.equals("online")) {
+             runOnline();
+             return;
          }
  
-         return datacenter;
+         // Model Test Episode
+         runTest(scheduler.getPolicy()); // Ranked destinations of the trained Q table
      }
- 
-     // We strongly encourage users to develop their own broker policies, to submit vms and cloudlets according
-     // to the specific rules of the simulated scenario
-     private static DatacenterBroker createBroker(int id) {
- 
-         DatacenterBroker broker = null;
-         try {
-             broker = new DatacenterBroker("Broker" + id);
-         } catch (Exception e) {
-             e.printStackTrace();
+
+     /**
+      * Weighted reward of the qlo.reward weights for the VMs and host power
+      * models of a topology
+      *
+      * @return null for the plain absolute variance reward
+      */
+     static RewardModel createReward(Topology topology) throws IOException {
+         if (rewardVariance == 1 && rewardMakespan == 0 && rewardEnergy == 0) {
              return null;
          }
-         return broker;
+         return RewardModel.create(topology, Simulation.createPowerModels(topology), rewardVariance, rewardMakespan,
+                 rewardEnergy);
      }
- 
+
      /**
-      * Prints the Cloudlet objects
-      * 
-      * @param list list of Cloudlets
+      * Train a linear or MLP value function instead of the Q table and test
+      * its policy. Q table files and online mode only apply to the table engine.
       */
-     private static void printCloudletList(List<Cloudlet> list, PowerHost host, boolean isOptimized) {
-         int size = list.size();
-         Cloudlet cloudlet;
- 
-         String indent = "    ";
-         Log.printLine();
-         Log.printLine("========== OUTPUT ==========");
-         Log.printLine("Cloudlet ID" + indent + "STATUS" + indent +
-                 "Data center ID" + indent + "VM ID" + indent + "Time" + indent +
-                 "Start Time" + indent + "Finish Time" + indent + "Cost" + indent + "Response Time");
- 
-         DecimalFormat dft = new DecimalFormat("###.##");
-         double maxFinishTime = 0;
-         double totalCost = 0;
-         double totalResponseTime = 0;
- 
-         for (int i = 0; i < size; i++) {
-             cloudlet = list.get(i);
-             Log.print(indent + cloudlet.getCloudletId() + indent + indent);
- 
-             if (cloudlet.getCloudletStatus() == Cloudlet.SUCCESS) {
-                 Log.print("SUCCESS");
- 
-                 // Calculate cost
-                 double costPerSecond = 0.01; // Cost of using CPU per second
-                 double costPerRam = 0.001; // Cost of using RAM per MB
-                 double costPerBw = 0.0001; // Cost of using bandwidth per MB
-                 double cost = (cloudlet.getActualCPUTime() * costPerSecond) +
-                         (cloudlet.getUtilizationOfRam(cloudlet.getActualCPUTime()) * (costPerRam * cloudlet.getCloudletLength())) +
-                         (cloudlet.getUtilizationOfBw(cloudlet.getCloudletLength() / 1000) * costPerBw);
- 
-                 // Calculate response time
-                 double responseTime = cloudlet.getFinishTime() - cloudlet.getExecStartTime();
- 
-                 // Update total cost and response time
-                 totalCost += cost;
-                 totalResponseTime += responseTime;
- 
-                 // Print the cloudlet details in table format
-                 Log.printLine(indent + indent + cloudlet.getResourceId() + indent + indent + indent + cloudlet.getVmId() +
-                         indent + indent + dft.format(cloudlet.getActualCPUTime()) + indent + indent +
-                         dft.format(cloudlet.getExecStartTime()) + indent + indent + dft.format(cloudlet.getFinishTime()) +
-                         indent + indent + dft.format(cost) + indent + indent + dft.format(responseTime));
- 
-                 // Update maxFinishTime
-                 if (cloudlet.getFinishTime() > maxFinishTime) {
-                     maxFinishTime = cloudlet.getFinishTime();
-                 }
-             }
+     private static void runEngine() {
+         QFunction q;
+         try {
+             q = QFunction.create(engine, QFeatures.COUNT, engineHidden, 0x514c4fL);
+         } catch (IllegalArgumentException e) {
+             Log.printLine(e.getMessage());
+             return;
          }
- 
-         // Calculate host energy consumption
-         int timeLength = (int) Math.round(maxFinishTime * 100);
-         double[][] timeTable = new double[vmcount][timeLength];
-         for (Cloudlet cl : list) {
-             for (int i = (int) Math.round(cl.getExecStartTime() * 100); i < (int) Math.round(cl.getFinishTime() * 100); i++) {
-                 timeTable[cl.getVmId()][i] = vmmips[cl.getVmId()];
-             }
+         ApproxQLOTrainer trainer = new ApproxQLOTrainer(config.getVmMips(), config.getTaskCount(),
+                 config.getTaskTypeList(), gamma, engineRate, engineBatch, engineReplay, engineTargetSync);
+         if (workload != null) {
+             trainer.setTaskSource(workload);
          }
- 
-         double hostPower = 0; // Host power consumption in kWh
-         for (int j = 0; j < timeLength; j++) {
-             double utilsum = 0;
-             for (int i = 0; i < vmcount; i++) {
-                 utilsum += timeTable[i][j];
+         if (metricsName != null) {
+             try {
+                 metrics = new QLOMetricsRegistry(topology.getVmCount());
+                 metrics.register(metricsName);
+                 trainer.setMetrics(metrics);
+             } catch (Exception e) {
+                 e.printStackTrace();
+                 Log.printLine("The metrics could not be registered as " + metricsName);
              }
-             double hostUtilPart = host.getPowerModel().getPower(utilsum / IntStream.of(vmmips).sum());
-             hostPower += hostUtilPart;
-         }
- 
-         // Calculate energy cost
-         double hostEnergyCost = hostPower * energyCostPerKWh; // Host energy cost
- 
-         Log.printLine("=============================================================");
-         Log.printLine("Host " + host.getId() + " Energy Consumption: " + hostPower + " kWh");
-         Log.printLine("Host " + host.getId() + " Energy Cost: $" + hostEnergyCost); // نمایش هزینه انرژی
-         Log.printLine("=============================================================");
- 
-         // Save values for percentage improvement calculation
-         if (isOptimized) {
-             optimizedExecutionTime = maxFinishTime;
-             optimizedResponseTime = totalResponseTime / size;
-             optimizedEnergyCost = hostEnergyCost;
-             optimizedEnergyConsumption = hostPower;
-         } else {
-             nonOptimizedExecutionTime = maxFinishTime;
-             nonOptimizedResponseTime = totalResponseTime / size;
-             nonOptimizedEnergyCost = hostEnergyCost;
-             nonOptimizedEnergyConsumption = hostPower;
          }
+         int episodes = trainer.train(q, new TrainingConfig(1000, 1000, 1, 1, null,
+                 EpsilonSchedule.create(epsilonSchedule, epsilonStart, epsilon, 1000), 0));
+         Log.printLine("End of Training Episode... (" + episodes + " episodes, " + engine + " engine)");
+
+         runTest(new ApproxQLOPolicy("QLO-" + engine, q, config.getVmMips(), config.getTaskTypeList()));
      }
- 
+
      /**
-      * Get Max Q
-      * 
-      * @param list state
+      * Test episode: schedule one random or trace task batch with a policy and
+      * with round robin, simulate both and print the improvement
       */
-     private static double getMaxQ(int state, int job) {
- 
-         double maxValue = Double.NEGATIVE_INFINITY;
- 
-         for (int i = 0; i < vmcount; i++) {
+     private static void runTest(SchedulingPolicy policy) {
+         List<SchedulingPolicy> policies = new ArrayList<SchedulingPolicy>();
+         policies.add(policy);
+         policies.add(new RoundRobinPolicy()); // Baseline, compared with every other policy
+         Random rand = new Random();
+         try {
+             // Generate tasks for test randomly or take the next trace jobs, Round Robin scheduled in VM's queue
+             VmTaskQueues vmq; // Vm's task queue table
+             if (workload == null) {
+                 vmq = VmTaskQueues.roundRobin(rand, topology.getVmCount(), taskcount, tasktype);
+             } else {
+                 int[] tasks = new int[config.getTaskCount()];
+                 workload.nextTest(tasks, tasks.length);
+                 vmq = VmTaskQueues.roundRobin(tasks, topology.getVmCount());
+             }
  
-             if (maxValue < Q[(state * tasktype) + job][i]) {
+             // Schedule the tasks with every policy and simulate every schedule on its own
+             List<SimulationResult> results = SimulationHarness.run(policies, vmq, topology, config.getTaskTypeList(),
+                     simulationWorkers);
  
-                 maxValue = Q[(state * tasktype) + job][i];
+             Log.printLine("QLO Optimized finished!");
  
+             // Print improvement results
+             SimulationResult baseline = results.get(results.size() - 1);
+             for (int p = 0; p < results.size() - 1; p++) {
+                 printImprovementResults(results.get(p), baseline);
              }
-         }
-         return maxValue;
- 
-         // return Arrays.stream(Q[(state * tasktype) + job]).max().getAsDouble();
  
+         } catch (Exception e) {
+             e.printStackTrace();
+             Log.printLine("The simulation has been terminated due to an unexpected error");
+         }
      }
  
      /**
-      * Get Q table value
-      * 
-      * @param list state, action
+      * Online scheduling mode: tasks are streamed from a producer thread and
+      * placed one by one by the trained policy while the simulation runs
       */
+     private static void runOnline() {
+         try {
+             CloudSim.init(1, Calendar.getInstance(), false);
  
-     private static double getQ(int state, int job, int netxstate) {
+             List<PowerHost> hostList = new ArrayList<PowerHost>(topology.getHostCount());
+             List<Datacenter> datacenters = Simulation.createDatacenters(topology, hostList);
+             int[] datacenterIds = new int[datacenters.size()];
+             for (int d = 0; d < datacenterIds.length; d++) {
+                 datacenterIds[d] = datacenters.get(d).getId();
+             }
  
-         return Q[(state * tasktype) + job][netxstate];
+             // Arriving tasks: random tasks or trace jobs, as in the test episode
+             TaskSource tasks = workload == null ? TaskSource.uniform(tasktype) : (rand, jobs, n) -> workload.nextTest(jobs, n);
+             OnlineScheduler online = new OnlineScheduler(scheduler.getTable(), topology.getVmMips(), config.getTaskTypeList(),
+                     alpha, gamma, scheduler.getLoadLevelStates(), config.getReward());
+             if (metrics != null) {
+                 online.setMetrics(metrics);
+             }
+             OnlineBroker broker = new OnlineBroker("OnlineBroker", topology, datacenterIds, online, tasks, onlineTaskCount,
+                     onlineRate, onlineSeed, true);
  
-     }
+             List<Vm> vmlist0 = new ArrayList<Vm>(topology.getVmCount());
+             for (int i = 0; i < topology.getVmCount(); i++) {
+                 vmlist0.add(new Vm(i, broker.getId(), topology.getVmMips(i), 1, topology.getVmRam(i), topology.getVmBw(i),
+                         topology.getVmSize(i), "Xen", new CloudletSchedulerSpaceShared()));
+             }
+             broker.submitVmList(vmlist0);
  
-     /**
-      * Set Q table value
-      * 
-      * @param list state, action, value
-      */
-     private static void setQ(int state, int job, int netxstate, double value) {
+             Log.printLine("QLO Online started!");
+             CloudSim.startSimulation();
  
-         Q[(state * tasktype) + job][netxstate] = value;
+             List<Cloudlet> cloudletList0 = broker.getCloudletReceivedList();
+             CloudSim.stopSimulation();
+             Log.printLine("=============================================================================");
+             Log.printLine("=============> User (Online) " + broker.getId() + "    ");
+             Simulation.printCloudletList(cloudletList0, hostList, topology, "Online");
  
+             Log.printLine("QLO Online finished!");
+             if (metrics != null) {
+                 Log.printLine("Decision latency p50/p99/max: " + metrics.getDecisionLatencyP50() + "/"
+                         + metrics.getDecisionLatencyP99() + "/" + metrics.getDecisionLatencyMax() + " ns");
+             }
+         } catch (Exception e) {
+             e.printStackTrace();
+             Log.printLine("The simulation has been terminated due to an unexpected error");
+         }
      }
  
      /**
       * Print improvement results
+      * 
+      * @param optimized result of the optimized policy
+      * @param nonOptimized result of the baseline policy
       */
-     private static void printImprovementResults() {
+     private static void printImprovementResults(SimulationResult optimized, SimulationResult nonOptimized) {
          DecimalFormat dft = new DecimalFormat("###.##");
+         double optimizedExecutionTime = optimized.getExecutionTime();
+         double nonOptimizedExecutionTime = nonOptimized.getExecutionTime();
+         double optimizedResponseTime = optimized.getResponseTime();
+         double nonOptimizedResponseTime = nonOptimized.getResponseTime();
+         double optimizedEnergyCost = optimized.getEnergyCost();
+         double nonOptimizedEnergyCost = nonOptimized.getEnergyCost();
+         double optimizedEnergyConsumption = optimized.getEnergyConsumption();
+         double nonOptimizedEnergyConsumption = nonOptimized.getEnergyConsumption();
  
          // Calculate the percentage of execution time improvement
          double executionTimeImprovement = ((nonOptimizedExecutionTime - optimizedExecutionTime) / nonOptimizedExecutionTime) * 100;
@@ -676,7 +396,7 @@
          double energyCostImprovement = ((nonOptimizedEnergyCost - optimizedEnergyCost) / nonOptimizedEnergyCost) * 100;
  
          Log.printLine("=============================================================");
-         Log.printLine("Improvement Results:");
+         Log.printLine("Improvement Results (" + optimized.getPolicy() + " vs " + nonOptimized.getPolicy() + "):");
          Log.printLine("Execution Time (Optimized): " + dft.format(optimizedExecutionTime));
          Log.printLine("Execution Time (Non-Optimized): " + dft.format(nonOptimizedExecutionTime));
          Log.printLine("Execution Time Improvement: " + dft.format(executionTimeImprovement) + "%");
@@ -691,4 +411,4 @@
          Log.printLine("Energy Improvement: " + dft.format(energyImprovement) + "%");
          Log.printLine("=============================================================");
      }
- }
\ No newline at end of file
+ }
\ No newline at end of file
@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.power.models.PowerModel;
+import org.cloudbus.cloudsim.power.models.PowerModelSpecPower_QLO;
+
+/**
+ * Microbenchmarks of the Q-learning hot paths.
+ *
+ * Every benchmark is measured for each combination of vmcount, taskcount and
+ * tasktype: warmup iterations first, so the JIT has compiled the code, then
+ * measured iterations of a fixed duration. The time per operation is reported
+ * as the mean and 95% confidence interval over the measured iterations.
+ * Operation results are folded into a sink, so the JIT cannot remove the work.
+ */
+public class QLOBenchmark {
+
+    // Benchmark parameters. Lists are comma separated
+    final static String vmcounts = System.getProperty("qlo.bench.vmcount", "4,16,64"); // VM counts
+    final static String taskcounts = System.getProperty("qlo.bench.taskcount", "10,1000"); // Task counts
+    final static String tasktypes = System.getProperty("qlo.bench.tasktype", "2,8"); // Task type counts
+    final static int steps = Integer.getInteger("qlo.bench.steps", 1000); // Learn steps of the episode benchmark
+    final static double epsilon = Double.parseDouble(System.getProperty("qlo.bench.epsilon", "0.1")); // Exploration rate of the learn steps
+    final static int stateLevels = Integer.getInteger("qlo.bench.levels", 5); // Load levels of the load level learn step
+    final static int stateCapacity = Integer.getInteger("qlo.bench.capacity", 4096); // Load level states of the load level learn step
+    final static int warmupIterations = Integer.getInteger("qlo.bench.warmup", 5);
+    final static int iterations = Integer.getInteger("qlo.bench.iterations", 10);
+    final static long iterationMillis = Long.getLong("qlo.bench.time", 200); // Duration of one iteration
+    final static Pattern filter = Pattern.compile(System.getProperty("qlo.bench.filter", ".*")); // Benchmark names to run
+
+    static long sink; // Folded operation results
+
+    /**
+     * One benchmarked operation
+     */
+    interface Operation {
+        long run();
+    }
+
+    public static void main(String[] args) {
+        System.out.println("benchmark,vmcount,taskcount,tasktype,ns/op,error");
+        for (int vmcount : ExperimentRunner.parseList(vmcounts.replace(',', ' '))) {
+            for (int taskcount : ExperimentRunner.parseList(taskcounts.replace(',', ' '))) {
+                for (int tasktype : ExperimentRunner.parseList(tasktypes.replace(',', ' '))) {
+                    runAll(vmcount, taskcount, tasktype);
+                }
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void runAll(int vmcount, int taskcount, int tasktype) {
+        if (vmcount < 2) {
+            throw new IllegalArgumentException("A learn step needs at least 2 VMs");
+        }
+        int[] vmmips = new int[vmcount];
+        for (int i = 0; i < vmcount; i++) {
+            vmmips[i] = 100 + 200 * (i % 4); // 100, 300, 500, 700 as in QLO
+        }
+        int[] tasktypelist = new int[tasktype];
+        for (int t = 0; t < tasktype; t++) {
+            tasktypelist[t] = 115 + 230 * t; // 115, 345, ... as in QLO
+        }
+        String params = vmcount + "," + taskcount + "," + tasktype;
+
+        QLOTrainer trainer = new QLOTrainer(vmmips, taskcount, tasktypelist, QLO.alpha, QLO.gamma);
+        MaxCachedQTable Q = new MaxCachedQTable(QTable.create("double", vmcount * tasktype, vmcount));
+        QLOTrainer.Worker worker = trainer.newWorker(new SplittableRandom(1), Q);
+
+        // One training learn step
+        worker.startEpisode();
+        run("learnStep", params, () -> {
+            worker.learn(epsilon);
+            return worker.getState();
+        });
+
+        // A full training episode
+        run("episode", params, () -> {
+            worker.runEpisode(steps, epsilon);
+            return worker.getState();
+        });
+
+        // One training learn step with load level states, hashed and indexed
+        LoadLevelStates levelStates = new LoadLevelStates(vmcount, stateLevels, stateCapacity);
+        QLOTrainer levelTrainer = new QLOTrainer(vmmips, taskcount, tasktypelist, QLO.alpha, QLO.gamma, levelStates);
+        QLOTrainer.Worker levelWorker = levelTrainer.newWorker(new SplittableRandom(1),
+                new MaxCachedQTable(new ChunkedQTable("double", levelStates.getMaxStateCount() * tasktype, vmcount)));
+        levelWorker.startEpisode();
+        run("learnStepLevels", params, () -> {
+            levelWorker.learn(epsilon);
+            return levelWorker.getState();
+        });
+
+        // One training learn step storing its transition, with a batch of 32 replayed every 8 steps
+        QLOTrainer.Worker replayWorker = trainer.newWorker(new SplittableRandom(1),
+                new MaxCachedQTable(QTable.create("double", vmcount * tasktype, vmcount)),
+                new ReplayConfig(10000, 32, 8, false));
+        replayWorker.startEpisode();
+        run("learnStepReplay", params, () -> {
+            replayWorker.learn(epsilon);
+            return replayWorker.getState();
+        });
+
+        // getMaxQ of the max cache and of a row scan
+        int rows = Q.getRows();
+        int[] row = { 0 };
+        run("getMaxQ", params, () -> {
+            row[0] = row[0] + 1 == rows ? 0 : row[0] + 1;
+            return Double.doubleToRawLongBits(Q.getMax(row[0]));
+        });
+        QTable scan = QTable.create("double", rows, vmcount);
+        scan.copyFrom(Q);
+        run("getMaxQScan", params, () -> {
+            row[0] = row[0] + 1 == rows ? 0 : row[0] + 1;
+            return Double.doubleToRawLongBits(scan.getMax(row[0]));
+        });
+
+        // Greedy rebalance pass over a fresh batch, with the table the benchmarks above trained.
+        // Includes copying the batch
+        QLOPolicy policy = new QLOPolicy(Q, tasktypelist);
+        VmTaskQueues batch = VmTaskQueues.roundRobin(new Random(1), vmcount, taskcount, tasktype);
+        VmLoadState batchload = new VmLoadState(vmmips);
+        run("rebalance", params, () -> {
+            VmTaskQueues copy = batch.copy();
+            batchload.clear();
+            for (int i = 0; i < vmcount; i++) {
+                for (int j = 0; j < copy.size(i); j++) {
+                    batchload.add(i, tasktypelist[copy.get(i, j)]);
+                }
+            }
+            batchload.balance();
+            policy.rebalance(copy, batchload);
+            return batchload.getSumAbsVariance();
+        });
+
+        // Host energy of the cloudlets of the batch, run back to back on their VMs
+        List<TimedCloudlet> cloudlets = new ArrayList<TimedCloudlet>(taskcount);
+        double endTime = 0;
+        for (int i = 0; i < vmcount; i++) {
+            double time = 0;
+            for (int j = 0; j < batch.size(i); j++) {
+                double finish = time + (double) tasktypelist[batch.get(i, j)] / vmmips[i];
+                cloudlets.add(new TimedCloudlet(cloudlets.size(), tasktypelist[batch.get(i, j)], i, time, finish));
+                time = finish;
+            }
+            endTime = Math.max(endTime, time);
+        }
+        Topology topology = Topology.single(vmmips);
+        PowerModel[] models = { new PowerModelSpecPower_QLO() };
+        double end = endTime;
+        run("energy", params,
+                () -> Double.doubleToRawLongBits(EnergyIntegrator.integrate(cloudlets, topology, models, end)));
+    }
+
+    private static void run(String name, String params, Operation op) {
+        if (!filter.matcher(name).matches()) {
+            return;
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(op);
+        }
+        SampleStatistics stats = new SampleStatistics();
+        for (int i = 0; i < iterations; i++) {
+            stats.add(iteration(op));
+        }
+        System.out.println(name + "," + params + "," + String.format(Locale.ROOT, "%.1f", stats.getMean()) + ","
+                + (stats.getCount() < 2 ? "" : String.format(Locale.ROOT, "%.1f", stats.getConfidence95())));
+    }
+
+    /**
+     * Run an operation for one iteration
+     *
+     * @return nanoseconds per operation
+     */
+    private static double iteration(Operation op) {
+        long deadline = System.nanoTime() + iterationMillis * 1000000;
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            // Check the clock every 64 operations only
+            for (int i = 0; i < 64; i++) {
+                sink += op.run();
+            }
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / ops;
+    }
+
+    /**
+     * Cloudlet with a fixed run time on a VM, without running a simulation
+     */
+    private static class TimedCloudlet extends Cloudlet {
+
+        private final double start;
+        private final double finish;
+
+        TimedCloudlet(int id, long length, int vm, double start, double finish) {
+            super(id, length, 1, 0, 0, new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+            setVmId(vm);
+            this.start = start;
+            this.finish = finish;
+        }
+
+        @Override
+        public double getExecStartTime() {
+            return start;
+        }
+
+        @Override
+        public double getFinishTime() {
+            return finish;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.stream.IntStream;
+
+/**
+ * Scheduler model configuration: the VMs, the task types and the Q-learning
+ * parameters.
+ */
+public class QLOConfig {
+
+    private final int[] vmmips; // MIPS of every VM, one state per VM
+    private final int[] tasktypelist; // Task length of every task type
+    private final int taskcount; // Tasks of a training batch
+    private final double alpha; // Learning rate
+    private final double gamma; // Discount factor
+    private final double epsilon; // Exploration rate the default epsilon schedule decays to
+    private final String qtableBackend; // Q table storage: double, float or direct
+    private final int stateLevels; // Load levels of a VM in the state, 0 for plain VM states
+    private final int stateCapacity; // Max indexed load level states
+    private final RewardModel reward; // Weighted reward, null for the absolute variance decrease
+
+    public QLOConfig(int[] vmmips, int[] tasktypelist, int taskcount, double alpha, double gamma, double epsilon,
+            String qtableBackend) {
+        this(vmmips, tasktypelist, taskcount, alpha, gamma, epsilon, qtableBackend, 0, 0);
+    }
+
+    /**
+     * @param stateLevels load levels of a VM in the state, 0 for plain VM states
+     * @param stateCapacity max indexed load level states, when stateLevels is not 0
+     */
+    public QLOConfig(int[] vmmips, int[] tasktypelist, int taskcount, double alpha, double gamma, double epsilon,
+            String qtableBackend, int stateLevels, int stateCapacity) {
+        this(vmmips, tasktypelist, taskcount, alpha, gamma, epsilon, qtableBackend, stateLevels, stateCapacity, null);
+    }
+
+    /**
+     * @param reward weighted reward of the same VMs, null for the absolute variance decrease
+     */
+    public QLOConfig(int[] vmmips, int[] tasktypelist, int taskcount, double alpha, double gamma, double epsilon,
+            String qtableBackend, int stateLevels, int stateCapacity, RewardModel reward) {
+        if (vmmips.length < 2 || IntStream.of(vmmips).anyMatch(mips -> mips <= 0)) {
+            throw new IllegalArgumentException("At least 2 VMs with positive MIPS are needed");
+        }
+        if (tasktypelist.length < 1 || IntStream.of(tasktypelist).anyMatch(length -> length <= 0)) {
+            throw new IllegalArgumentException("At least 1 task type with positive length is needed");
+        }
+        if (taskcount < 1) {
+            throw new IllegalArgumentException("Task count must be positive");
+        }
+        if (!(alpha > 0 && alpha <= 1) || !(gamma >= 0 && gamma < 1) || !(epsilon >= 0 && epsilon <= 1)) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1], gamma in [0, 1) and epsilon in [0, 1]");
+        }
+        if (stateLevels != 0 && (stateLevels < 2 || stateCapacity < 1)) {
+            throw new IllegalArgumentException("Load level states need at least 2 levels and a positive capacity");
+        }
+        this.vmmips = vmmips.clone();
+        this.tasktypelist = tasktypelist.clone();
+        this.taskcount = taskcount;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.epsilon = epsilon;
+        this.qtableBackend = qtableBackend;
+        this.stateLevels = stateLevels;
+        this.stateCapacity = stateLevels == 0 ? 0 : stateCapacity;
+        this.reward = reward;
+    }
+
+    public int getVmCount() {
+        return vmmips.length;
+    }
+
+    /**
+     * MIPS of every VM. The array is shared, do not change it.
+     */
+    public int[] getVmMips() {
+        return vmmips;
+    }
+
+    public int getTaskType() {
+        return tasktypelist.length;
+    }
+
+    /**
+     * Task length of every task type. The array is shared, do not change it.
+     */
+    public int[] getTaskTypeList() {
+        return tasktypelist;
+    }
+
+    public int getTaskCount() {
+        return taskcount;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Exploration rate of the last episode of a QLearningScheduler training
+     * run without an epsilon schedule
+     */
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public String getQTableBackend() {
+        return qtableBackend;
+    }
+
+    public int getStateLevels() {
+        return stateLevels;
+    }
+
+    public int getStateCapacity() {
+        return stateCapacity;
+    }
+
+    /**
+     * Weighted reward, null when training rewards the absolute variance decrease
+     */
+    public RewardModel getReward() {
+        return reward;
+    }
+
+    /**
+     * Q table states: the plain VM states and the load level states
+     */
+    public int getStateCount() {
+        return vmmips.length + stateCapacity;
+    }
+}
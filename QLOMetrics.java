@@ -0,0 +1,61 @@
+/**
+ * Metrics of training and scheduling.
+ *
+ * Called from the training workers and the schedulers while they run, so an
+ * implementation must be thread safe, cheap and must not allocate. NOOP
+ * discards everything and QLOMetricsRegistry keeps the values for JMX; other
+ * registries plug in by implementing this interface.
+ */
+public interface QLOMetrics {
+
+    /** Discards all metrics */
+    QLOMetrics NOOP = new QLOMetrics() {
+    };
+
+    /**
+     * A training episode finished
+     *
+     * @param steps learn steps of the episode
+     * @param reward sum of the rewards of the episode
+     * @param sumabsvariance total VM queue task absolute variance at the end of the episode
+     */
+    default void episode(int steps, long reward, long sumabsvariance) {
+    }
+
+    /**
+     * Worker tables were merged into the shared Q table
+     *
+     * @param maxdelta max |delta Q| of the shared table
+     */
+    default void merge(double maxdelta) {
+    }
+
+    /**
+     * An asynchronous replay worker dropped transitions because its learner
+     * thread fell behind
+     *
+     * @param transitions transitions dropped since the last report
+     */
+    default void replayDropped(long transitions) {
+    }
+
+    /**
+     * A scheduling decision was made, for one task or one batch
+     *
+     * @param nanos decision latency
+     */
+    default void decision(long nanos) {
+    }
+
+    /**
+     * Total VM queue task absolute variance after a scheduling decision
+     */
+    default void variance(long sumabsvariance) {
+    }
+
+    /**
+     * VM queue length after a scheduling decision
+     */
+    default void vmQueueLength(int vm, long length) {
+    }
+}
@@ -0,0 +1,182 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics registry kept in memory and exposed over JMX.
+ *
+ * Counters are striped LongAdder counters and the latest values are plain
+ * volatile fields, so recording does not allocate and training workers do
+ * not contend with each other. Rates and means are computed when read.
+ */
+public class QLOMetricsRegistry implements QLOMetrics, QLOMetricsRegistryMBean {
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder learnSteps = new LongAdder();
+    private final LongAdder episodes = new LongAdder();
+    private final LongAdder rewardSum = new LongAdder(); // Reward of all episodes
+    private volatile long lastEpisodeReward;
+    private volatile long lastEpisodeVariance;
+
+    private final LongAdder merges = new LongAdder();
+    private volatile double lastMaxDeltaQ;
+    private final LongAdder replayDropped = new LongAdder();
+
+    private final LatencyHistogram decisions = new LatencyHistogram();
+    private volatile long lastVariance;
+    private final AtomicLongArray vmqueue; // Last queue length of every VM
+
+    /**
+     * @param vmcount number of VMs with a queue length
+     */
+    public QLOMetricsRegistry(int vmcount) {
+        this.vmqueue = new AtomicLongArray(vmcount);
+    }
+
+    /**
+     * Register on the platform MBean server
+     *
+     * @param name object name, like "QLO:type=Metrics"
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+    }
+
+    @Override
+    public void episode(int steps, long reward, long sumabsvariance) {
+        learnSteps.add(steps);
+        episodes.increment();
+        rewardSum.add(reward);
+        lastEpisodeReward = reward;
+        lastEpisodeVariance = sumabsvariance;
+    }
+
+    @Override
+    public void merge(double maxdelta) {
+        merges.increment();
+        lastMaxDeltaQ = maxdelta;
+    }
+
+    @Override
+    public void replayDropped(long transitions) {
+        replayDropped.add(transitions);
+    }
+
+    @Override
+    public void decision(long nanos) {
+        decisions.record(nanos);
+    }
+
+    @Override
+    public void variance(long sumabsvariance) {
+        lastVariance = sumabsvariance;
+    }
+
+    @Override
+    public void vmQueueLength(int vm, long length) {
+        if (vm < vmqueue.length()) {
+            vmqueue.lazySet(vm, length);
+        }
+    }
+
+    @Override
+    public long getLearnSteps() {
+        return learnSteps.sum();
+    }
+
+    @Override
+    public double getLearnStepsPerSecond() {
+        return learnSteps.sum() / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public long getEpisodes() {
+        return episodes.sum();
+    }
+
+    @Override
+    public long getLastEpisodeReward() {
+        return lastEpisodeReward;
+    }
+
+    @Override
+    public double getMeanEpisodeReward() {
+        long n = episodes.sum();
+        return n == 0 ? 0 : (double) rewardSum.sum() / n;
+    }
+
+    @Override
+    public long getLastEpisodeVariance() {
+        return lastEpisodeVariance;
+    }
+
+    @Override
+    public long getMerges() {
+        return merges.sum();
+    }
+
+    @Override
+    public double getLastMaxDeltaQ() {
+        return lastMaxDeltaQ;
+    }
+
+    @Override
+    public long getReplayDropped() {
+        return replayDropped.sum();
+    }
+
+    @Override
+    public long getDecisions() {
+        return decisions.getCount();
+    }
+
+    @Override
+    public double getDecisionLatencyMean() {
+        return decisions.getMean();
+    }
+
+    @Override
+    public long getDecisionLatencyP50() {
+        return decisions.getPercentile(50);
+    }
+
+    @Override
+    public long getDecisionLatencyP99() {
+        return decisions.getPercentile(99);
+    }
+
+    @Override
+    public long getDecisionLatencyP999() {
+        return decisions.getPercentile(99.9);
+    }
+
+    @Override
+    public long getDecisionLatencyMax() {
+        return decisions.getMax();
+    }
+
+    @Override
+    public long getLastVariance() {
+        return lastVariance;
+    }
+
+    @Override
+    public long[] getVmQueueLengths() {
+        long[] lengths = new long[vmqueue.length()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = vmqueue.get(i);
+        }
+        return lengths;
+    }
+
+    /**
+     * Decision latency histogram in ns
+     */
+    public LatencyHistogram getDecisionLatency() {
+        return decisions;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * JMX view of QLOMetricsRegistry. Latencies are in ns.
+ */
+public interface QLOMetricsRegistryMBean {
+
+    long getLearnSteps();
+
+    double getLearnStepsPerSecond();
+
+    long getEpisodes();
+
+    long getLastEpisodeReward();
+
+    double getMeanEpisodeReward();
+
+    /** Total VM queue task absolute variance at the end of the last training episode */
+    long getLastEpisodeVariance();
+
+    long getMerges();
+
+    /** Max |delta Q| of the shared table at the last merge */
+    double getLastMaxDeltaQ();
+
+    /** Transitions dropped by asynchronous replay workers */
+    long getReplayDropped();
+
+    long getDecisions();
+
+    double getDecisionLatencyMean();
+
+    long getDecisionLatencyP50();
+
+    long getDecisionLatencyP99();
+
+    long getDecisionLatencyP999();
+
+    long getDecisionLatencyMax();
+
+    /** Total VM queue task absolute variance after the last scheduling decision */
+    long getLastVariance();
+
+    long[] getVmQueueLengths();
+}
@@ -0,0 +1,222 @@
+/**
+ * Greedy scheduling policy of a trained Q table.
+ *
+ * For every Q table row (state * tasktype + task type) the destination VMs
+ * are ranked by descending Q value, skipping zero values. A ranking is built
+ * once and cached until its row changes, and the Q table itself is never
+ * changed, so successive task batches can be rebalanced against the same
+ * trained model.
+ *
+ * With LoadLevelStates the ranking of a VM and task type is the one of the
+ * load level state of the VM at that point of the rebalance pass, falling
+ * back to the plain VM row for load level states that were never visited or
+ * have no ranked destination.
+ *
+ * With a RewardModel a move must decrease the weighted cost of the batch
+ * instead of the total absolute variance.
+ */
+public class QLOPolicy implements SchedulingPolicy {
+
+    private final MaxCachedQTable Q;
+    private final int tasktype;
+    private final int[] tasktypelist; // Task length of every task type
+
+    private final Ranking[] rankings; // Ranking of every row, null until the row is ranked
+    private final double[] qvalue; // Row values used while sorting
+    private final LoadLevelStates.Encoder encoder; // Levels of the batch being rebalanced, null for plain VM states
+    private final RewardModel.Tracker cost; // Cost of the batch being rebalanced, null for the absolute variance
+
+    public QLOPolicy(MaxCachedQTable Q, int[] tasktypelist) {
+        this(Q, tasktypelist, null);
+    }
+
+    /**
+     * @param levelStates load level state encoding the table was trained with, null for plain VM states
+     */
+    public QLOPolicy(MaxCachedQTable Q, int[] tasktypelist, LoadLevelStates levelStates) {
+        this(Q, tasktypelist, levelStates, null);
+    }
+
+    /**
+     * @param levelStates load level state encoding the table was trained with, null for plain VM states
+     * @param reward weighted reward the table was trained with, null for the absolute variance decrease
+     */
+    public QLOPolicy(MaxCachedQTable Q, int[] tasktypelist, LoadLevelStates levelStates, RewardModel reward) {
+        this.Q = Q;
+        this.tasktype = tasktypelist.length;
+        this.tasktypelist = tasktypelist;
+        this.rankings = new Ranking[Q.getRows()];
+        this.qvalue = new double[Q.getColumns()];
+        this.encoder = levelStates == null ? null : levelStates.newEncoder();
+        this.cost = reward == null ? null : reward.newTracker();
+    }
+
+    @Override
+    public String getName() {
+        return "QLO";
+    }
+
+    @Override
+    public void schedule(VmTaskQueues vmq, VmLoadState load) {
+        rebalance(vmq, load);
+    }
+
+    /**
+     * Number of ranked destinations of a state and task type
+     */
+    public int getRankingSize(int state, int job) {
+        return rank((state * tasktype) + job).size;
+    }
+
+    /**
+     * Destination VM at a rank, 0 being the destination with the max Q value
+     */
+    public int getDestination(int state, int job, int rank) {
+        return rank((state * tasktype) + job).destinations[rank];
+    }
+
+    /**
+     * Rebalance VM queues: move every task to the best ranked destination VM
+     * of its queue and type, as long as the move decreases the total VM queue
+     * task absolute variance, or the weighted cost
+     *
+     * @param vmq Vm's task queues holding task type indexes
+     * @param load VM queues load balancing state of the same tasks, balanced
+     */
+    public void rebalance(VmTaskQueues vmq, VmLoadState load) {
+        int states = vmq.getVmCount();
+        if (encoder != null) {
+            encoder.reset(load);
+        }
+        if (cost != null) {
+            cost.reset(load);
+        }
+        for (int state = 0; state < states; state++) {
+            for (int tt = 0; tt < tasktype; tt++) {
+                int row = encoder == null ? state : encoder.getState(state); // Q table state of the VM
+                Ranking ranked = rank((row * tasktype) + tt); // Trace Q-table in row mode
+                if (ranked.size == 0 && row != state) {
+                    ranked = rank((state * tasktype) + tt); // Nothing learned for the load levels yet
+                }
+                int[] destinations = ranked.destinations;
+                for (int r = 0; r < ranked.size; r++) {
+                    int maxValueIdx = destinations[r];
+
+                    int l = 0;
+                    while (l < vmq.size(state)) {
+                        if (vmq.get(state, l) == tt) {
+                            int choosedjob = tasktypelist[tt];
+                            if (decreasesCost(load, state, maxValueIdx, choosedjob)) {
+                                load.move(state, maxValueIdx, choosedjob);
+                                vmq.move(state, l, maxValueIdx); // The last task of the queue takes slot l
+                                if (cost != null) {
+                                    cost.move(load, state, maxValueIdx, choosedjob);
+                                }
+                                if (encoder != null) {
+                                    encoder.update(load, state);
+                                    encoder.update(load, maxValueIdx);
+                                }
+                                continue;
+                            }
+                        }
+                        l++;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean decreasesCost(VmLoadState load, int source, int dest, long length) {
+        if (cost == null) {
+            long newSumVmQlAbsVar = load.getSumAbsVarianceAfterMove(source, dest, length);
+            return newSumVmQlAbsVar < load.getSumAbsVariance();
+        }
+        // Relative margin, so rounding of the cost estimates cannot move a task back and forth
+        return cost.getCostAfterMove(load, source, dest, length) < cost.getCost(load) * (1 - 1e-9);
+    }
+
+    /**
+     * Build the ranking of a row if the row changed since it was built
+     *
+     * @return ranking of the row
+     */
+    private Ranking rank(int row) {
+        long version = Q.getRowVersion(row);
+        Ranking ranked = rankings[row];
+        if (ranked == null) {
+            ranked = new Ranking(Q.getColumns());
+            rankings[row] = ranked;
+        } else if (ranked.version == version) {
+            return ranked;
+        }
+
+        int columns = Q.getColumns();
+        int[] destinations = ranked.destinations;
+        int size = 0;
+        for (int i = 0; i < columns; i++) {
+            double value = Q.get(row, i);
+            if (value != 0) {
+                destinations[size] = i;
+                size++;
+            }
+            qvalue[i] = value;
+        }
+        sort(destinations, 0, size - 1);
+
+        ranked.size = size;
+        ranked.version = version;
+        return ranked;
+    }
+
+    /**
+     * Sort destinations by descending Q value, lower VM index first on ties
+     */
+    private void sort(int[] destinations, int low, int high) {
+        while (low < high) {
+            int pivot = destinations[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (before(destinations[i], pivot)) {
+                    i++;
+                }
+                while (before(pivot, destinations[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = destinations[i];
+                    destinations[i] = destinations[j];
+                    destinations[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller part only
+            if (j - low < high - i) {
+                sort(destinations, low, j);
+                low = i;
+            } else {
+                sort(destinations, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private boolean before(int a, int b) {
+        return qvalue[a] > qvalue[b] || (qvalue[a] == qvalue[b] && a < b);
+    }
+
+    /**
+     * Destination VMs of one row, best first
+     */
+    private static final class Ranking {
+
+        final int[] destinations;
+        int size; // Number of ranked destinations
+        long version = -1; // Row version the ranking was built from
+
+        Ranking(int columns) {
+            this.destinations = new int[columns];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Randomized check of QLOPolicy.
+ *
+ * Schedules random batches with one policy against a random Q table. The
+ * table must be unchanged by every batch, and a batch must be scheduled as by
+ * a new policy of the same table, so earlier batches leave nothing behind.
+ * Every ranking must list the destinations with a non zero value by
+ * descending value, lower VM first on ties, also after its row changed. A
+ * schedule must keep the tasks of the batch and must not increase the total
+ * absolute variance.
+ */
+public class QLOPolicyCheck {
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("QLOPolicy", args, 200, (rand, round) -> {
+            int vmcount = 1 + rand.nextInt(12);
+            int[] vmmips = new int[vmcount];
+            double[] vmpower = new double[vmcount];
+            for (int i = 0; i < vmcount; i++) {
+                vmmips[i] = 100 * (1 + rand.nextInt(8));
+                vmpower[i] = rand.nextDouble() * 50;
+            }
+            int[] tasktypelist = new int[1 + rand.nextInt(3)];
+            for (int i = 0; i < tasktypelist.length; i++) {
+                tasktypelist[i] = 50 * (1 + rand.nextInt(20));
+            }
+            int tasktype = tasktypelist.length;
+            RewardModel reward = rand.nextBoolean() ? null
+                    : new RewardModel(vmmips, rand.nextDouble(), rand.nextDouble(), rand.nextDouble(), 100, vmpower);
+            MaxCachedQTable Q = new MaxCachedQTable(QTable.create("double", vmcount * tasktype, vmcount));
+            for (int row = 0; row < Q.getRows(); row++) {
+                for (int col = 0; col < vmcount; col++) {
+                    Q.set(row, col, nextValue(rand));
+                }
+            }
+            QLOPolicy policy = new QLOPolicy(Q, tasktypelist, null, reward);
+
+            long checked = 0;
+            for (int batch = 0; batch < 10; batch++) {
+                if (rand.nextInt(3) == 0) {
+                    Q.set(rand.nextInt(Q.getRows()), rand.nextInt(vmcount), nextValue(rand)); // Ranking is stale
+                }
+                double[][] values = copy(Q);
+                VmTaskQueues vmq = VmTaskQueues.roundRobin(rand, vmcount, rand.nextInt(100), tasktype);
+                VmTaskQueues scheduled = vmq.copy();
+                VmLoadState load = load(scheduled, vmmips, tasktypelist);
+                long before = load.getSumAbsVariance();
+                policy.schedule(scheduled, load);
+
+                SelfCheck.check(Arrays.deepEquals(values, copy(Q)), "Q table changed by scheduling batch " + batch);
+                VmTaskQueues fresh = vmq.copy();
+                new QLOPolicy(Q, tasktypelist, null, reward).schedule(fresh, load(fresh, vmmips, tasktypelist));
+                SelfCheck.check(same(scheduled, fresh), "Batch " + batch + " scheduled unlike by a new policy");
+                SelfCheck.check(Arrays.equals(count(scheduled, tasktype), count(vmq, tasktype)),
+                        "Tasks of batch " + batch + " changed");
+                VmLoadState after = load(scheduled, vmmips, tasktypelist);
+                SelfCheck.check(after.getSumAbsVariance() == load.getSumAbsVariance(),
+                        "Load state differs from the scheduled queues");
+                SelfCheck.check(reward != null || after.getSumAbsVariance() <= before,
+                        "Total absolute variance increased");
+
+                for (int state = 0; state < vmcount; state++) {
+                    for (int tt = 0; tt < tasktype; tt++) {
+                        compareRanking(policy, Q, state, tt, tasktype);
+                    }
+                }
+                checked++;
+            }
+            return checked;
+        });
+    }
+
+    /**
+     * Q value, often 0 or tied with another value
+     */
+    private static double nextValue(Random rand) {
+        switch (rand.nextInt(4)) {
+            case 0:
+                return 0;
+            case 1:
+                return rand.nextInt(3) - 1;
+            default:
+                return rand.nextGaussian() * 100;
+        }
+    }
+
+    private static void compareRanking(QLOPolicy policy, QTable Q, int state, int tt, int tasktype) {
+        int row = state * tasktype + tt;
+        Integer[] expected = new Integer[Q.getColumns()];
+        int size = 0;
+        for (int i = 0; i < Q.getColumns(); i++) {
+            if (Q.get(row, i) != 0) {
+                expected[size++] = i;
+            }
+        }
+        Arrays.sort(expected, 0, size, (a, b) -> Q.get(row, a) != Q.get(row, b)
+                ? Double.compare(Q.get(row, b), Q.get(row, a)) : Integer.compare(a, b));
+        SelfCheck.check(policy.getRankingSize(state, tt) == size, "Ranking size of row " + row + " differs");
+        for (int r = 0; r < size; r++) {
+            SelfCheck.check(policy.getDestination(state, tt, r) == expected[r],
+                    "Rank " + r + " of row " + row + " differs");
+        }
+    }
+
+    private static VmLoadState load(VmTaskQueues vmq, int[] vmmips, int[] tasktypelist) {
+        VmLoadState load = new VmLoadState(vmmips);
+        for (int i = 0; i < vmmips.length; i++) {
+            for (int j = 0; j < vmq.size(i); j++) {
+                load.add(i, tasktypelist[vmq.get(i, j)]);
+            }
+        }
+        load.balance();
+        return load;
+    }
+
+    private static double[][] copy(QTable Q) {
+        double[][] values = new double[Q.getRows()][Q.getColumns()];
+        for (int row = 0; row < Q.getRows(); row++) {
+            for (int col = 0; col < Q.getColumns(); col++) {
+                values[row][col] = Q.get(row, col);
+            }
+        }
+        return values;
+    }
+
+    private static boolean same(VmTaskQueues a, VmTaskQueues b) {
+        for (int i = 0; i < a.getVmCount(); i++) {
+            if (a.size(i) != b.size(i)) {
+                return false;
+            }
+            for (int j = 0; j < a.size(i); j++) {
+                if (a.get(i, j) != b.get(i, j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tasks of every task type
+     */
+    private static int[] count(VmTaskQueues vmq, int tasktype) {
+        int[] counts = new int[tasktype];
+        for (int i = 0; i < vmq.getVmCount(); i++) {
+            for (int j = 0; j < vmq.size(i); j++) {
+                counts[vmq.get(i, j)]++;
+            }
+        }
+        return counts;
+    }
+}
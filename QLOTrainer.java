@@ -0,0 +1,617 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Q-Learning model trainer.
+ *
+ * Training episodes are run on a ForkJoin pool. Every worker learns on its own
+ * copy of the Q table with its own random generator, and after each round of
+ * syncEpisodes episodes the worker tables are averaged into the shared table,
+ * which is then handed back to the workers for the next round.
+ *
+ * A learn step relocates a random task of the current VM queue. The
+ * destination is chosen epsilon-greedy: with probability epsilon a random
+ * VM, otherwise the VM with the max Q value. Training stops early once
+ * CONVERGED_ROUNDS rounds in a row change no value of the shared table by the
+ * convergence threshold or more.
+ *
+ * With LoadLevelStates the Q table row of a step is the load level state of
+ * the current VM instead of the VM alone. Every step then also updates the
+ * plain VM row, which backs load level states that were not visited.
+ *
+ * With a RewardModel the reward of a relocation is the decrease of its
+ * weighted cost instead of the absolute variance decrease alone.
+ *
+ * With a ReplayConfig the transitions of the learn steps are stored in a
+ * TransitionReplay of every worker and applied to its table in batches
+ * sorted by row, by the worker itself or by a learner thread of its own.
+ * The worker and its learner thread share the worker table, the row max cache
+ * included, so they lock its rows in ROW_STRIPES stripes.
+ */
+public class QLOTrainer {
+
+    /** Consecutive rounds below the convergence threshold that stop training */
+    static final int CONVERGED_ROUNDS = 3;
+
+    /** Row locks of a worker table shared with a replay learner thread, a power of 2 */
+    static final int ROW_STRIPES = 64;
+
+    private final int[] vmmips;
+    private final int taskcount;
+    private final int[] tasktypelist; // Task length of every task type
+    private final double alpha; // Learning rate
+    private final double gamma; // Discount factor
+
+    private final int states;
+    private final int tasktype;
+    private final LoadLevelStates levelStates; // Load level state encoding, null for plain VM states
+    private final RewardModel reward; // Weighted reward, null for the absolute variance decrease
+
+    private volatile QLOMetrics metrics = QLOMetrics.NOOP;
+    private volatile TaskSource tasks; // Task types of the episode batches
+
+    public QLOTrainer(int[] vmmips, int taskcount, int[] tasktypelist, double alpha, double gamma) {
+        this(vmmips, taskcount, tasktypelist, alpha, gamma, null);
+    }
+
+    /**
+     * @param levelStates load level state encoding, null for plain VM states
+     */
+    public QLOTrainer(int[] vmmips, int taskcount, int[] tasktypelist, double alpha, double gamma,
+            LoadLevelStates levelStates) {
+        this(vmmips, taskcount, tasktypelist, alpha, gamma, levelStates, null);
+    }
+
+    /**
+     * @param levelStates load level state encoding, null for plain VM states
+     * @param reward weighted reward, null for the absolute variance decrease
+     */
+    public QLOTrainer(int[] vmmips, int taskcount, int[] tasktypelist, double alpha, double gamma,
+            LoadLevelStates levelStates, RewardModel reward) {
+        this.vmmips = vmmips;
+        this.taskcount = taskcount;
+        this.tasktypelist = tasktypelist;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.states = vmmips.length;
+        this.tasktype = tasktypelist.length;
+        this.levelStates = levelStates;
+        this.reward = reward;
+        this.tasks = TaskSource.uniform(tasktype);
+    }
+
+    /**
+     * Report episodes and merges to a metrics registry
+     */
+    public void setMetrics(QLOMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Draw the task batches of episodes from a source, uniformly random task
+     * types by default
+     */
+    public void setTaskSource(TaskSource tasks) {
+        this.tasks = tasks;
+    }
+
+    /**
+     * Train Q table with uniform random exploration
+     *
+     * @param Q Q learning table, updated in place
+     * @param episodes number of training episodes
+     * @param steps learn steps per episode
+     * @param workers number of parallel workers
+     * @param syncEpisodes episodes every worker runs between two merges
+     */
+    public void train(QTable Q, int episodes, int steps, int workers, int syncEpisodes) {
+        train(Q, new TrainingConfig(episodes, steps, workers, syncEpisodes));
+    }
+
+    /**
+     * Train Q table reproducibly with uniform random exploration. The same
+     * seed, workers and syncEpisodes give the same table.
+     *
+     * @param seed seed of the worker random generators
+     */
+    public void train(QTable Q, int episodes, int steps, int workers, int syncEpisodes, long seed) {
+        train(Q, new TrainingConfig(episodes, steps, workers, syncEpisodes, seed));
+    }
+
+    /**
+     * Train Q table
+     *
+     * @param Q Q learning table, updated in place
+     * @param training episodes, workers, seed, epsilon schedule and convergence threshold
+     * @return number of episodes run, less than the configured episodes when
+     *         training converged
+     */
+    public int train(QTable Q, TrainingConfig training) {
+        int episodes = training.getEpisodes();
+        int workers = training.getWorkers();
+        int syncEpisodes = training.getSyncEpisodes();
+        double threshold = training.getConvergenceThreshold();
+
+        SplittableRandom seed = training.getSeed() == null ? new SplittableRandom()
+                : new SplittableRandom(training.getSeed());
+        List<Worker> workerList = new ArrayList<Worker>(workers);
+        for (int w = 0; w < workers; w++) {
+            workerList.add(new Worker(seed.split(), Q.newTable(), training.getReplay(), tasks.forWorker(w, workers)));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            int done = 0;
+            int convergedRounds = 0; // Consecutive rounds below the threshold
+            while (done < episodes) {
+                List<Worker> round = new ArrayList<Worker>(workers);
+                int assigned = 0;
+                for (Worker worker : workerList) {
+                    if (done + assigned == episodes) {
+                        break;
+                    }
+                    int n = Math.min(syncEpisodes, episodes - done - assigned);
+                    worker.prepare(Q, done, n, training.getSteps(), training.getEpsilonSchedule());
+                    round.add(worker);
+                    assigned += n;
+                }
+
+                if (round.size() == 1) {
+                    round.get(0).call();
+                } else {
+                    for (Future<Void> f : pool.invokeAll(round)) {
+                        f.get();
+                    }
+                }
+
+                double maxdelta = merge(Q, round, getUsedRows(Q));
+                done += assigned;
+                metrics.merge(maxdelta);
+
+                convergedRounds = maxdelta < threshold ? convergedRounds + 1 : 0;
+                if (convergedRounds == CONVERGED_ROUNDS) {
+                    break;
+                }
+            }
+            return done;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Rows of the states visited so far, the rows after them are still empty
+     */
+    private int getUsedRows(QTable Q) {
+        return levelStates == null ? Q.getRows() : Math.min(levelStates.getStateCount() * tasktype, Q.getRows());
+    }
+
+    /**
+     * Average worker Q tables into the shared Q table
+     *
+     * @param rows rows to merge
+     * @return max |delta Q| of the shared table
+     */
+    private static double merge(QTable Q, List<Worker> round, int rows) {
+        int n = round.size();
+        double maxdelta = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < Q.getColumns(); col++) {
+                double sum = 0;
+                for (Worker worker : round) {
+                    sum += worker.q.get(row, col);
+                }
+                maxdelta = Math.max(maxdelta, Math.abs(sum / n - Q.get(row, col)));
+                Q.set(row, col, sum / n);
+            }
+        }
+        return maxdelta;
+    }
+
+    /**
+     * Create a learner with its own random generator and VM queues
+     *
+     * @param rand random generator
+     * @param Q Q learning table, updated in place
+     */
+    Worker newWorker(SplittableRandom rand, QTable Q) {
+        return new Worker(rand, Q, null, tasks.forWorker(0, 1));
+    }
+
+    /**
+     * Create a learner storing its transitions for replay
+     *
+     * @param replay experience replay, null to update the Q table at every learn step
+     */
+    Worker newWorker(SplittableRandom rand, QTable Q, ReplayConfig replay) {
+        return new Worker(rand, Q, replay, tasks.forWorker(0, 1));
+    }
+
+    /**
+     * Get Max Q
+     *
+     * @param list state
+     */
+    private double getMaxQ(QTable Q, int state, int job) {
+
+        return Q.getMax((state * tasktype) + job);
+
+    }
+
+    /**
+     * Get Q table value
+     *
+     * @param list state, action
+     */
+    private double getQ(QTable Q, int state, int job, int netxstate) {
+
+        return Q.get((state * tasktype) + job, netxstate);
+
+    }
+
+    /**
+     * Set Q table value
+     *
+     * @param list state, action, value
+     */
+    private void setQ(QTable Q, int state, int job, int netxstate, double value) {
+
+        Q.set((state * tasktype) + job, netxstate, value);
+
+    }
+
+    /**
+     * Get the next state with the max Q value, other than the current VM
+     *
+     * @param list state, current VM, action
+     */
+    private int getBestNextState(QTable Q, int state, int vm, int job) {
+        int row = (state * tasktype) + job;
+        int best = Q.getArgMax(row);
+        if (best != vm) {
+            return best;
+        }
+        // Staying has the max Q value, take the best move instead
+        best = -1;
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < states; i++) {
+            double value = Q.get(row, i);
+            if (i != vm && (best < 0 || maxValue < value)) {
+                maxValue = value;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Training worker with its own Q table, random generator and load state
+     */
+    class Worker implements Callable<Void> {
+
+        private final SplittableRandom rand;
+        private final VmLoadState load = new VmLoadState(vmmips);
+        private final VmTaskQueues vmq = new VmTaskQueues(states, 2 * ((taskcount + states - 1) / states));
+        private final QTable q;
+        private final LoadLevelStates.Encoder encoder = levelStates == null ? null : levelStates.newEncoder();
+        private final RewardModel.Tracker cost = reward == null ? null : reward.newTracker();
+        private final TaskSource source; // Task types of the episode batches of this worker
+        private final int[] batch = new int[taskcount]; // Task types of the episode batch
+        private int firstEpisode;
+        private int episodes;
+        private int steps;
+        private EpsilonSchedule schedule;
+
+        private int state; // Current state, a VM with a non empty queue
+
+        // Experience replay, all null when the Q table is updated at every learn step
+        private final ReplayConfig replayConfig;
+        private final TransitionReplay replay; // Transitions to learn from, owned by the learner
+        private final long[] order; // Row ordered sample of the replay
+        private final TransitionHandoff handoff; // Transitions on their way to the learner thread, null when synchronous
+        private final SplittableRandom learnerRand; // Sampling random generator of the learner thread
+        private final Object[] stripes; // Row locks shared with the learner thread, null when synchronous
+        private long collected; // Transitions stored since the worker was created
+        private long reportedDropped; // Handoff drops already reported to the metrics
+        private volatile boolean collecting; // The worker runs episodes, the learner thread keeps learning
+        private volatile Throwable learnerFailure;
+
+        Worker(SplittableRandom rand, QTable q, ReplayConfig replayConfig, TaskSource source) {
+            this.rand = rand;
+            this.q = q;
+            this.source = source;
+            this.replayConfig = replayConfig;
+            if (replayConfig == null) {
+                this.replay = null;
+                this.order = null;
+                this.handoff = null;
+                this.learnerRand = null;
+                this.stripes = null;
+            } else {
+                this.replay = new TransitionReplay(replayConfig.getCapacity());
+                this.order = new long[replayConfig.getBatch()];
+                this.handoff = replayConfig.isAsync() ? new TransitionHandoff(replayConfig.getCapacity()) : null;
+                this.learnerRand = rand.split();
+                this.stripes = replayConfig.isAsync() ? newStripes() : null;
+            }
+        }
+
+        private Object[] newStripes() {
+            Object[] locks = new Object[ROW_STRIPES];
+            for (int i = 0; i < ROW_STRIPES; i++) {
+                locks[i] = new Object();
+            }
+            return locks;
+        }
+
+        /**
+         * Lock of a Q table row
+         */
+        private Object stripe(int state, int job) {
+            return stripes[((state * tasktype) + job) & (ROW_STRIPES - 1)];
+        }
+
+        void prepare(QTable Q, int firstEpisode, int episodes, int steps, EpsilonSchedule schedule) {
+            q.copyFrom(Q);
+            this.firstEpisode = firstEpisode;
+            this.episodes = episodes;
+            this.steps = steps;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            if (handoff == null) {
+                for (int i = 0; i < episodes; i++) {
+                    runEpisode(steps, schedule.getEpsilon(firstEpisode + i));
+                }
+                return null;
+            }
+
+            // Collect on this thread while the learner thread updates the table
+            collecting = true;
+            Thread learner = new Thread(this::learnAsync, "QLO replay learner");
+            learner.setDaemon(true);
+            learner.start();
+            try {
+                for (int i = 0; i < episodes; i++) {
+                    runEpisode(steps, schedule.getEpsilon(firstEpisode + i));
+                }
+            } finally {
+                collecting = false;
+                learner.join();
+                long dropped = handoff.getDropped();
+                if (dropped > reportedDropped) {
+                    metrics.replayDropped(dropped - reportedDropped);
+                    reportedDropped = dropped;
+                }
+            }
+            if (learnerFailure != null) {
+                throw new IllegalStateException("Replay learner failed", learnerFailure);
+            }
+            return null;
+        }
+
+        /**
+         * Learner thread: move the handed off transitions to the replay and
+         * apply batches until the worker stopped collecting and every
+         * transition was taken
+         */
+        private void learnAsync() {
+            try {
+                while (true) {
+                    boolean finished = !collecting; // Read before draining, so nothing is left behind
+                    int n = handoff.drainTo(replay);
+                    if (replay.size() >= replayConfig.getBatch()) {
+                        applyBatch(learnerRand);
+                    } else if (n == 0) {
+                        Thread.yield();
+                    }
+                    if (finished && n == 0) {
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                learnerFailure = e;
+            }
+        }
+
+        /**
+         * Update the Q table with a batch of replayed transitions, in row order
+         *
+         * @param rand sampling random generator
+         */
+        private void applyBatch(SplittableRandom rand) {
+            int n = replayConfig.getBatch();
+            replay.sample(rand, n, tasktype, order);
+            for (int i = 0; i < n; i++) {
+                int slot = TransitionReplay.getSlot(order[i]);
+                update(replay.getState(slot), replay.getJob(slot), replay.getDest(slot), replay.getNextState(slot),
+                        replay.getReward(slot));
+            }
+        }
+
+        /**
+         * Learn from a transition: update the Q table at once, store it for
+         * replay or hand it to the learner thread
+         */
+        private void learnFrom(int state, int job, int dest, int nextstate, double r) {
+            if (replayConfig == null) {
+                update(state, job, dest, nextstate, r);
+            } else if (handoff != null) {
+                handoff.offer(state, job, dest, nextstate, r);
+            } else {
+                replay.add(state, job, dest, nextstate, r);
+                collected++;
+                if (collected % replayConfig.getPeriod() == 0 && replay.size() >= replayConfig.getBatch()) {
+                    applyBatch(rand);
+                }
+            }
+        }
+
+        /**
+         * Run one training episode: create a random task batch, schedule it
+         * round robin and relocate tasks between VM queues learning from the
+         * load balancing reward
+         *
+         * @param steps learn steps
+         * @param epsilon exploration rate
+         */
+        void runEpisode(int steps, double epsilon) {
+            startEpisode();
+            double reward = 0; // Sum of the episode rewards
+            for (int learn = 0; learn < steps; learn++) {
+                reward += learn(epsilon);
+            }
+            metrics.episode(steps, Math.round(reward), load.getSumAbsVariance());
+        }
+
+        /**
+         * Create a task batch, schedule it round robin and choose the start
+         * state of an episode
+         */
+        void startEpisode() {
+            int vq = 0;
+            vmq.clear();
+            load.clear();
+
+            source.next(rand, batch, taskcount); // Create tasks randomly, or from a trace
+            for (int j = 0; j < taskcount; j++) {
+                int jobtype = batch[j];
+                // Task Round Robin scheduling in VM's queue
+                vmq.add(vq, jobtype); // VM queues carry the task type index
+                load.add(vq, tasktypelist[jobtype]);
+                vq = vq + 1;
+                if (vq == states) {
+                    vq = 0;
+                }
+            }
+
+            // Calc Load Balancing Coefficient, VM queue optimum length and
+            // current total VM queue task absolute variance
+            load.balance();
+            if (encoder != null) {
+                encoder.reset(load);
+            }
+            if (cost != null) {
+                cost.reset(load);
+            }
+
+            // Choose start state randomly. The VM queue must not be empty
+            state = rand.nextInt(states);
+            while (load.getLength(state) == 0) {
+                state = rand.nextInt(states);
+            }
+        }
+
+        /**
+         * One learn step: relocate a random task of the current queue to
+         * another queue, chosen epsilon-greedy, and update its Q table value
+         *
+         * @param epsilon exploration rate
+         * @return reward of the relocation
+         */
+        double learn(double epsilon) {
+            // Previous total VM queue task absolute variance, or weighted cost
+            double prevcost = cost == null ? load.getSumAbsVariance() : cost.getCost(load);
+            int row = encoder == null ? state : encoder.getOrAddState(state); // Q table state of the current VM
+
+            // Choose a job to relocation from current queue(state) randomly
+            int choosedjobidx = rand.nextInt(vmq.size(state));
+
+            int nextstate = state;
+            if (epsilon >= 1 || rand.nextDouble() < epsilon) {
+                // Explore: random next state
+                while (state == nextstate) {
+                    nextstate = rand.nextInt(states);
+                }
+            } else {
+                // Exploit: next state with the max Q value for the job
+                int job = vmq.get(state, choosedjobidx);
+                if (stripes == null) {
+                    nextstate = getBestNextState(q, row, state, job);
+                } else {
+                    synchronized (stripe(row, job)) {
+                        nextstate = getBestNextState(q, row, state, job);
+                    }
+                }
+            }
+
+            int choosedjob = vmq.move(state, choosedjobidx, nextstate); // Task type of the relocated job
+
+            // Update current total VM queue task absolute variance for the source and destination queues only
+            load.move(state, nextstate, tasktypelist[choosedjob]);
+            if (cost != null) {
+                cost.move(load, state, nextstate, tasktypelist[choosedjob]);
+            }
+
+            double r = prevcost - (cost == null ? load.getSumAbsVariance() : cost.getCost(load)); // Get action Reward
+
+            learnFrom(state, choosedjob, nextstate, nextstate, r); // Plain VM row
+            if (encoder != null) {
+                encoder.update(load, state);
+                encoder.update(load, nextstate);
+                if (row != state) {
+                    learnFrom(row, choosedjob, nextstate, encoder.getOrAddState(nextstate), r); // Load level row
+                }
+            }
+
+            state = nextstate; // Change state to next state
+            return r;
+        }
+
+        /**
+         * Update the Q table value of a state and action
+         *
+         * @param state Q table state before the relocation
+         * @param job task type of the relocated task
+         * @param dest destination VM
+         * @param nextstate Q table state after the relocation
+         * @param r reward of the relocation
+         */
+        private void update(int state, int job, int dest, int nextstate, double r) {
+            if (stripes == null) {
+                update(state, job, dest, r, getMaxQ(q, nextstate, job));
+                return;
+            }
+            // One row lock at a time, the learner thread never holds two
+            double maxQ;
+            synchronized (stripe(nextstate, job)) {
+                maxQ = getMaxQ(q, nextstate, job);
+            }
+            synchronized (stripe(state, job)) {
+                update(state, job, dest, r, maxQ);
+            }
+        }
+
+        /**
+         * Update the Q table value of a state and action
+         *
+         * @param maxQ max Q value of the next state
+         */
+        private void update(int state, int job, int dest, double r, double maxQ) {
+            double qvalue = getQ(q, state, job, dest); // Get current Q table value for state & action
+
+            double value = qvalue + alpha * (r + gamma * maxQ - qvalue); // Calc action value
+
+            setQ(q, state, job, dest, value); // Insert action value in Q table
+        }
+
+        /**
+         * Current state, the VM the last task was relocated to
+         */
+        int getState() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of the parallel training of QLOTrainer.
+ *
+ * Trains random configurations on several workers and replays the same run
+ * one worker after the other: every round copies the shared table to the
+ * workers, runs their episodes from the same split random generators and
+ * averages their tables into the shared table. The parallel table must be
+ * the replayed one, bit for bit, so the merge is the mean of the worker
+ * tables and no worker sees another one's table.
+ *
+ * The replay also stops after QLOTrainer.CONVERGED_ROUNDS rounds in a row
+ * that change no value by the convergence threshold, so training must stop
+ * at the same episode, and every episode explores with the epsilon of its
+ * schedule, which must start and end at the configured values.
+ */
+public class QLOTrainerCheck {
+
+    private static final String[] SCHEDULES = { "constant", "linear", "exponential" };
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("QLOTrainer", args, 100, (rand, round) -> {
+            int[] vmmips = new int[2 + rand.nextInt(7)];
+            for (int i = 0; i < vmmips.length; i++) {
+                vmmips[i] = 100 * (1 + rand.nextInt(8));
+            }
+            int[] tasktypelist = new int[1 + rand.nextInt(3)];
+            for (int i = 0; i < tasktypelist.length; i++) {
+                tasktypelist[i] = 50 * (1 + rand.nextInt(20));
+            }
+            int taskcount = 1 + rand.nextInt(60);
+            int episodes = 1 + rand.nextInt(30);
+            int steps = 1 + rand.nextInt(50);
+            int workers = 1 + rand.nextInt(4);
+            int syncEpisodes = 1 + rand.nextInt(3);
+            long seed = rand.nextLong();
+            String schedule = SCHEDULES[rand.nextInt(SCHEDULES.length)];
+            double start = 0.05 + 0.95 * rand.nextDouble();
+            double end = 0.05 + 0.95 * rand.nextDouble();
+            EpsilonSchedule epsilon = EpsilonSchedule.create(schedule, start, end, episodes);
+            checkSchedule(epsilon, schedule, start, end, episodes);
+            // No early stop, stop after the first rounds, or a threshold met at some point
+            double threshold = round % 3 == 0 ? 0
+                    : round % 3 == 1 ? Double.MAX_VALUE : Math.pow(10, 4 * rand.nextDouble() - 2);
+            QLOTrainer trainer = new QLOTrainer(vmmips, taskcount, tasktypelist, 0.1, 0.9);
+
+            QTable trained = QTable.create("double", vmmips.length * tasktypelist.length, vmmips.length);
+            int done = trainer.train(trained, new TrainingConfig(episodes, steps, workers, syncEpisodes, seed,
+                    epsilon, threshold));
+
+            QTable expected = QTable.create("double", trained.getRows(), trained.getColumns());
+            int expectedDone = replay(trainer, expected, episodes, steps, workers, syncEpisodes, seed, epsilon,
+                    threshold);
+            SelfCheck.check(done == expectedDone, done + " episodes run, expected " + expectedDone);
+            if (threshold == 0) {
+                SelfCheck.check(done == episodes, done + " of " + episodes + " episodes run without a threshold");
+            } else if (threshold == Double.MAX_VALUE) {
+                int converged = QLOTrainer.CONVERGED_ROUNDS * workers * syncEpisodes;
+                SelfCheck.check(done == Math.min(episodes, converged), done + " episodes run, expected "
+                        + QLOTrainer.CONVERGED_ROUNDS + " rounds");
+            }
+            for (int row = 0; row < expected.getRows(); row++) {
+                for (int col = 0; col < expected.getColumns(); col++) {
+                    SelfCheck.check(Double.doubleToLongBits(trained.get(row, col)) == Double
+                            .doubleToLongBits(expected.get(row, col)), "Value " + row + ", " + col + " is "
+                                    + trained.get(row, col) + ", expected " + expected.get(row, col));
+                }
+            }
+            return (long) done * steps;
+        });
+    }
+
+    private static void checkSchedule(EpsilonSchedule epsilon, String schedule, double start, double end,
+            int episodes) {
+        double last = schedule.equals("constant") ? start : end;
+        SelfCheck.checkNear(epsilon.getEpsilon(0), start, 1e-12, schedule + " epsilon of the first episode");
+        SelfCheck.checkNear(epsilon.getEpsilon(Math.max(episodes - 1, 1)), last, 1e-12,
+                schedule + " epsilon of the last episode");
+        SelfCheck.checkNear(epsilon.getEpsilon(episodes + 10), last, 1e-12, schedule + " epsilon after training");
+        for (int i = 1; i < episodes; i++) {
+            double a = epsilon.getEpsilon(i - 1);
+            double b = epsilon.getEpsilon(i);
+            SelfCheck.check(start <= end ? a <= b : a >= b, schedule + " epsilon is not monotonic");
+        }
+    }
+
+    /**
+     * Run the training rounds one worker after the other
+     *
+     * @return episodes run
+     */
+    private static int replay(QLOTrainer trainer, QTable Q, int episodes, int steps, int workers, int syncEpisodes,
+            long seed, EpsilonSchedule epsilon, double threshold) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        QTable[] tables = new QTable[workers];
+        QLOTrainer.Worker[] workerList = new QLOTrainer.Worker[workers];
+        for (int w = 0; w < workers; w++) {
+            tables[w] = Q.newTable();
+            workerList[w] = trainer.newWorker(seeds.split(), tables[w]);
+        }
+        int done = 0;
+        int convergedRounds = 0;
+        while (done < episodes) {
+            int assigned = 0;
+            int used = 0; // Workers of the round
+            for (int w = 0; w < workers && done + assigned < episodes; w++) {
+                int n = Math.min(syncEpisodes, episodes - done - assigned);
+                tables[w].copyFrom(Q);
+                for (int i = 0; i < n; i++) {
+                    workerList[w].runEpisode(steps, epsilon.getEpsilon(done + i));
+                }
+                assigned += n;
+                used++;
+            }
+            double maxdelta = 0;
+            for (int row = 0; row < Q.getRows(); row++) {
+                for (int col = 0; col < Q.getColumns(); col++) {
+                    double sum = 0;
+                    for (int w = 0; w < used; w++) {
+                        sum += tables[w].get(row, col);
+                    }
+                    maxdelta = Math.max(maxdelta, Math.abs(sum / used - Q.get(row, col)));
+                    Q.set(row, col, sum / used);
+                }
+            }
+            done += assigned;
+            convergedRounds = maxdelta < threshold ? convergedRounds + 1 : 0;
+            if (convergedRounds == QLOTrainer.CONVERGED_ROUNDS) {
+                break;
+            }
+        }
+        return done;
+    }
+}
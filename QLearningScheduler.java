@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Q-learning task scheduler.
+ *
+ * Owns one Q table trained for the VMs and task types of its configuration,
+ * and schedules task batches with the greedy policy of that table. One
+ * instance can be trained, used for any number of batches, trained further
+ * and restored to an earlier snapshot without restarting. The scratch queues
+ * of a batch are reused, so scheduling a batch only allocates its result.
+ *
+ * With load levels in the configuration, Q table rows are load level states
+ * of LoadLevelStates. Their index is trained, saved, loaded, snapshot and
+ * restored with the table. The table is then a ChunkedQTable, so it and the
+ * worker tables of training only take memory for the rows of visited states,
+ * and a table given to or loaded by the scheduler is copied into one.
+ *
+ * Every VM is a state and an action, so the table grows with the square of
+ * the VM count, and configurations of more than MAX_CELLS values are
+ * rejected. The value function engines of ApproxQLOTrainer do not grow with
+ * the VM count.
+ *
+ * All methods are synchronized, so one instance can be shared by threads.
+ */
+public class QLearningScheduler {
+
+    /** Max Q table values, 1 GB of the double backend */
+    public static final long MAX_CELLS = 1L << 27;
+
+    private final QLOConfig config;
+    private final MaxCachedQTable Q;
+    private final LoadLevelStates levelStates; // Load level state encoding, null for plain VM states
+    private final QLOTrainer trainer;
+    private final QLOPolicy policy;
+
+    private final VmTaskQueues vmq; // Scratch queues of the batch being scheduled
+    private final VmLoadState load; // Scratch load state of the batch being scheduled
+    private final int[] vmtaskcount; // Tasks of every VM and task type after scheduling
+
+    private QLOMetrics metrics = QLOMetrics.NOOP;
+
+    /**
+     * Scheduler with an empty Q table
+     */
+    public QLearningScheduler(QLOConfig config) {
+        this(config, newTable(config));
+    }
+
+    /**
+     * Empty Q table of a configuration, allocated on first write with load
+     * levels
+     */
+    private static QTable newTable(QLOConfig config) {
+        checkSize(config);
+        int rows = config.getStateCount() * config.getTaskType();
+        return config.getStateLevels() == 0 ? QTable.create(config.getQTableBackend(), rows, config.getVmCount())
+                : new ChunkedQTable(config.getQTableBackend(), rows, config.getVmCount());
+    }
+
+    /**
+     * Reject a configuration whose Q table has more than MAX_CELLS values
+     */
+    private static void checkSize(QLOConfig config) {
+        long cells = (long) config.getStateCount() * config.getTaskType() * config.getVmCount();
+        if (cells > MAX_CELLS) {
+            throw new IllegalArgumentException("Q table of " + config.getStateCount() + " states, "
+                    + config.getTaskType() + " task types and " + config.getVmCount() + " VMs has " + cells
+                    + " values, more than " + MAX_CELLS);
+        }
+    }
+
+    /**
+     * Scheduler using a trained Q table of plain VM states, or of load level
+     * states that are not indexed yet
+     *
+     * @param table Q table with config.getStateCount() * tasktype rows and vmcount columns
+     */
+    public QLearningScheduler(QLOConfig config, QTable table) {
+        this(config, table, new long[0]);
+    }
+
+    /**
+     * @param stateKeys key of every indexed load level state of the table, in index order
+     */
+    private QLearningScheduler(QLOConfig config, QTable table, long[] stateKeys) {
+        checkSize(config);
+        int states = config.getVmCount();
+        int tasktype = config.getTaskType();
+        if (table.getRows() != config.getStateCount() * tasktype || table.getColumns() != states) {
+            throw new IllegalArgumentException("Q table of " + table.getRows() + " x " + table.getColumns()
+                    + " does not fit " + config.getStateCount() + " states, " + states + " VMs and " + tasktype
+                    + " task types");
+        }
+        this.config = config;
+        if (config.getStateLevels() > 0 && !(table instanceof ChunkedQTable) && !(table instanceof MaxCachedQTable)) {
+            QTable lazy = newTable(config);
+            lazy.copyFrom(table); // Only chunks holding a value are allocated
+            table = lazy;
+        }
+        this.Q = table instanceof MaxCachedQTable ? (MaxCachedQTable) table : new MaxCachedQTable(table);
+        this.levelStates = config.getStateLevels() == 0 ? null
+                : new LoadLevelStates(states, config.getStateLevels(), config.getStateCapacity());
+        for (long key : stateKeys) {
+            levelStates.getIndex().getOrAdd(key);
+        }
+        this.trainer = new QLOTrainer(config.getVmMips(), config.getTaskCount(), config.getTaskTypeList(),
+                config.getAlpha(), config.getGamma(), levelStates, config.getReward());
+        this.policy = new QLOPolicy(Q, config.getTaskTypeList(), levelStates, config.getReward());
+        this.vmq = new VmTaskQueues(states, (config.getTaskCount() + states - 1) / states);
+        this.load = new VmLoadState(config.getVmMips());
+        this.vmtaskcount = new int[states * tasktype];
+    }
+
+    /**
+     * Load a scheduler from a Q table file written by save()
+     *
+     * @param verify check the values against the file checksum
+     */
+    public static QLearningScheduler load(QLOConfig config, Path file, boolean verify) throws IOException {
+        // Map the file privately, so training the scheduler never changes the file
+        QTableFile qtableFile = QTableFile.load(file, MapMode.PRIVATE, verify);
+        if (qtableFile.getVmCount() != config.getVmCount() || qtableFile.getTaskType() != config.getTaskType()) {
+            throw new IllegalArgumentException("Q table file " + file + " was trained for " + qtableFile.getVmCount()
+                    + " VMs and " + qtableFile.getTaskType() + " task types");
+        }
+        if (qtableFile.getStateLevels() != config.getStateLevels()
+                || qtableFile.getStateCapacity() != config.getStateCapacity()) {
+            throw new IllegalArgumentException("Q table file " + file + " was trained for "
+                    + qtableFile.getStateLevels() + " load levels and " + qtableFile.getStateCapacity()
+                    + " load level states");
+        }
+        return new QLearningScheduler(config, qtableFile.getTable(), qtableFile.getStateKeys());
+    }
+
+    /**
+     * Save the Q table
+     */
+    public synchronized void save(Path file) throws IOException {
+        QTableFile.save(file, Q, config.getTaskType(), config.getAlpha(), config.getGamma(), levelStates);
+    }
+
+    /**
+     * Report training, decision latency, variance and VM queue lengths to a
+     * metrics registry
+     */
+    public synchronized void setMetrics(QLOMetrics metrics) {
+        this.metrics = metrics;
+        trainer.setMetrics(metrics);
+    }
+
+    /**
+     * Draw the task batches of training episodes from a source instead of
+     * uniformly random task types
+     *
+     * @param tasks task types of the configuration
+     */
+    public synchronized void setTaskSource(TaskSource tasks) {
+        trainer.setTaskSource(tasks);
+    }
+
+    /**
+     * Train a new model: clear the Q table and train it
+     *
+     * @return number of episodes run
+     */
+    public synchronized int train(TrainingConfig training) {
+        Q.copyFrom(Q.newTable());
+        if (levelStates != null) {
+            levelStates.getIndex().clear();
+        }
+        return trainIncrementally(training);
+    }
+
+    /**
+     * Keep training the current Q table. Without an epsilon schedule the
+     * exploration rate decays linearly from 1 to the QLOConfig epsilon over
+     * the episodes.
+     *
+     * @return number of episodes run
+     */
+    public synchronized int trainIncrementally(TrainingConfig training) {
+        if (!training.hasEpsilonSchedule()) {
+            training = training.withEpsilonSchedule(
+                    EpsilonSchedule.create("linear", 1, config.getEpsilon(), training.getEpisodes()));
+        }
+        return trainer.train(Q, training);
+    }
+
+    /**
+     * Schedule a task batch: queue the tasks round robin and rebalance the
+     * queues with the trained policy
+     *
+     * @param tasks task type of every task
+     * @return VM index of every task
+     */
+    public synchronized int[] schedule(int[] tasks) {
+        long start = metrics == QLOMetrics.NOOP ? 0 : System.nanoTime();
+        int states = config.getVmCount();
+        int tasktype = config.getTaskType();
+        int[] tasktypelist = config.getTaskTypeList();
+
+        vmq.clear();
+        load.clear();
+        int vq = 0;
+        for (int job : tasks) {
+            vmq.add(vq, job);
+            load.add(vq, tasktypelist[job]);
+            vq = vq + 1;
+            if (vq == states) {
+                vq = 0;
+            }
+        }
+        load.balance();
+        policy.rebalance(vmq, load);
+
+        // Tasks of a type are interchangeable, so only the count of every type on every VM matters
+        Arrays.fill(vmtaskcount, 0);
+        for (int i = 0; i < states; i++) {
+            for (int j = 0; j < vmq.size(i); j++) {
+                vmtaskcount[(i * tasktype) + vmq.get(i, j)]++;
+            }
+        }
+
+        // Tasks keep their round robin VM while it still has room for their type,
+        // the others take the remaining places
+        int[] assignment = new int[tasks.length];
+        vq = 0;
+        for (int j = 0; j < tasks.length; j++) {
+            int idx = (vq * tasktype) + tasks[j];
+            if (vmtaskcount[idx] > 0) {
+                vmtaskcount[idx]--;
+                assignment[j] = vq;
+            } else {
+                assignment[j] = -1;
+            }
+            vq = vq + 1;
+            if (vq == states) {
+                vq = 0;
+            }
+        }
+        int[] nextvm = new int[tasktype]; // First VM that may have room for a task type
+        for (int j = 0; j < tasks.length; j++) {
+            if (assignment[j] < 0) {
+                int job = tasks[j];
+                while (vmtaskcount[(nextvm[job] * tasktype) + job] == 0) {
+                    nextvm[job]++;
+                }
+                vmtaskcount[(nextvm[job] * tasktype) + job]--;
+                assignment[j] = nextvm[job];
+            }
+        }
+
+        if (metrics != QLOMetrics.NOOP) {
+            metrics.decision(System.nanoTime() - start);
+            metrics.variance(load.getSumAbsVariance());
+            for (int i = 0; i < states; i++) {
+                metrics.vmQueueLength(i, load.getLength(i));
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * Copy of the current Q table and load level state index
+     */
+    public synchronized Snapshot snapshot() {
+        QTable copy = Q.newTable();
+        copy.copyFrom(Q);
+        long[] stateKeys = new long[levelStates == null ? 0 : levelStates.getIndex().size()];
+        for (int i = 0; i < stateKeys.length; i++) {
+            stateKeys[i] = levelStates.getIndex().getKey(i);
+        }
+        return new Snapshot(copy, stateKeys);
+    }
+
+    /**
+     * Replace the Q table values and the load level state index with a
+     * snapshot
+     */
+    public synchronized void restore(Snapshot snapshot) {
+        QTable table = snapshot.table;
+        if (table.getRows() != Q.getRows() || table.getColumns() != Q.getColumns()) {
+            throw new IllegalArgumentException("Snapshot size does not match the Q table");
+        }
+        Q.copyFrom(table);
+        if (levelStates != null) {
+            StateIndex index = levelStates.getIndex();
+            index.clear();
+            for (long key : snapshot.stateKeys) {
+                index.getOrAdd(key); // Same keys in the same order give the same rows
+            }
+        }
+    }
+
+    public QLOConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Load level state encoding of the Q table, null for plain VM states
+     */
+    public LoadLevelStates getLoadLevelStates() {
+        return levelStates;
+    }
+
+    /**
+     * Q table of the scheduler. Not synchronized with training and scheduling.
+     */
+    public MaxCachedQTable getTable() {
+        return Q;
+    }
+
+    /**
+     * Greedy policy of the Q table. Not synchronized with training and scheduling.
+     */
+    public QLOPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Q table values and load level state keys of a scheduler at one time
+     */
+    public static final class Snapshot {
+
+        private final QTable table;
+        private final long[] stateKeys; // Key of every indexed load level state, in index order
+
+        private Snapshot(QTable table, long[] stateKeys) {
+            this.table = table;
+            this.stateKeys = stateKeys;
+        }
+
+        /**
+         * Copy of the Q table, do not change it
+         */
+        public QTable getTable() {
+            return table;
+        }
+
+        /**
+         * Number of indexed load level states
+         */
+        public int getStateCount() {
+            return stateKeys.length;
+        }
+    }
+}
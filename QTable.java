@@ -0,0 +1,83 @@
+/**
+ * Q learning table.
+ *
+ * Rows are addressed by (state * tasktype) + task type and columns by next
+ * state. The backend is chosen when the table is created, so the table can be
+ * kept on heap as double or float values, or off heap in direct buffers.
+ */
+public interface QTable {
+
+    /**
+     * Create a Q table
+     *
+     * @param backend "double", "float" or "direct"
+     * @param rows number of rows (states * tasktype)
+     * @param columns number of columns (states)
+     */
+    static QTable create(String backend, int rows, int columns) {
+        switch (backend) {
+            case "double":
+                return new DoubleQTable(rows, columns);
+            case "float":
+                return new FloatQTable(rows, columns);
+            case "direct":
+                return BufferQTable.allocateDirect(rows, columns);
+            default:
+                throw new IllegalArgumentException("Unknown Q table backend: " + backend);
+        }
+    }
+
+    int getRows();
+
+    int getColumns();
+
+    double get(int row, int column);
+
+    void set(int row, int column, double value);
+
+    /**
+     * Create an empty table with the same backend and size
+     */
+    QTable newTable();
+
+    /**
+     * Max value of a row
+     */
+    default double getMax(int row) {
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < getColumns(); i++) {
+            double value = get(row, i);
+            if (maxValue < value) {
+                maxValue = value;
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Index of the first max value of a row
+     */
+    default int getArgMax(int row) {
+        double maxValue = Double.NEGATIVE_INFINITY;
+        int maxValueIdx = 0;
+        for (int i = 0; i < getColumns(); i++) {
+            double value = get(row, i);
+            if (maxValue < value) {
+                maxValue = value;
+                maxValueIdx = i;
+            }
+        }
+        return maxValueIdx;
+    }
+
+    /**
+     * Copy all values of another table of the same size into this table
+     */
+    default void copyFrom(QTable other) {
+        for (int row = 0; row < getRows(); row++) {
+            for (int col = 0; col < getColumns(); col++) {
+                set(row, col, other.get(row, col));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Random;
+
+/**
+ * Randomized check of the Q table backends.
+ *
+ * Runs random writes and copies on every backend, plain, chunked and with
+ * cached row maxima, and compares get, getMax, getArgMax and the row versions
+ * with an array of the stored values.
+ */
+public class QTableCheck {
+
+    private static final String[] BACKENDS = { "double", "float", "direct" };
+    private static final int STEPS = 5000; // Operations of a round
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("QTable", args, 120, (rand, round) -> {
+            String backend = BACKENDS[round % BACKENDS.length];
+            int layout = round / BACKENDS.length % 4;
+            int rows = 1 + rand.nextInt(3 * ChunkedQTable.CHUNK_ROWS);
+            int columns = 1 + rand.nextInt(12);
+            QTable Q = create(backend, layout, rows, columns);
+            double[][] expected = new double[rows][columns];
+            for (int step = 0; step < STEPS; step++) {
+                int row = rand.nextInt(rows);
+                long version = Q instanceof MaxCachedQTable ? ((MaxCachedQTable) Q).getRowVersion(row) : 0;
+                if (rand.nextInt(1000) == 0) {
+                    QTable other = create(backend, rand.nextInt(4), rows, columns);
+                    int writes = rand.nextInt(100);
+                    for (int i = 0; i < writes; i++) {
+                        other.set(rand.nextInt(rows), rand.nextInt(columns), rand.nextGaussian());
+                    }
+                    Q.copyFrom(other);
+                    for (int r = 0; r < rows; r++) {
+                        for (int c = 0; c < columns; c++) {
+                            expected[r][c] = other.get(r, c);
+                        }
+                    }
+                    compareAll(Q, expected, "copyFrom");
+                } else {
+                    int column = rand.nextInt(columns);
+                    double value = nextValue(rand, expected[row]);
+                    Q.set(row, column, value);
+                    expected[row][column] = backend.equals("float") ? (float) value : value;
+                }
+                compareRow(Q, expected, row, "set");
+                if (Q instanceof MaxCachedQTable) {
+                    SelfCheck.check(((MaxCachedQTable) Q).getRowVersion(row) > version,
+                            "Version of row " + row + " did not change");
+                }
+            }
+            return STEPS;
+        });
+    }
+
+    /**
+     * @param layout 0 plain, 1 chunked, 2 plain with cached maxima, 3 chunked
+     *            with cached maxima
+     */
+    private static QTable create(String backend, int layout, int rows, int columns) {
+        QTable Q = layout % 2 == 0 ? QTable.create(backend, rows, columns)
+                : new ChunkedQTable(backend, rows, columns);
+        return layout < 2 ? Q : new MaxCachedQTable(Q);
+    }
+
+    /**
+     * Value of a write, often tied with or below the row max, or 0
+     */
+    private static double nextValue(Random rand, double[] row) {
+        switch (rand.nextInt(4)) {
+            case 0:
+                return 0;
+            case 1:
+                return row[rand.nextInt(row.length)];
+            case 2:
+                return row[rand.nextInt(row.length)] - rand.nextDouble();
+            default:
+                return rand.nextGaussian() * 100;
+        }
+    }
+
+    private static void compareAll(QTable Q, double[][] expected, String after) {
+        for (int row = 0; row < expected.length; row++) {
+            compareRow(Q, expected, row, after);
+        }
+    }
+
+    private static void compareRow(QTable Q, double[][] expected, int row, String after) {
+        double max = Double.NEGATIVE_INFINITY;
+        int argmax = 0;
+        for (int col = 0; col < expected[row].length; col++) {
+            SelfCheck.check(Q.get(row, col) == expected[row][col],
+                    "Value " + row + ", " + col + " differs after " + after);
+            if (max < expected[row][col]) {
+                max = expected[row][col];
+                argmax = col;
+            }
+        }
+        SelfCheck.check(Q.getMax(row) == max, "Max of row " + row + " differs after " + after);
+        SelfCheck.check(Q.getArgMax(row) == argmax, "Max index of row " + row + " differs after " + after);
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary Q table file.
+ *
+ * The file starts with a fixed size header (magic, version, vmcount, tasktype,
+ * alpha, gamma, the CRC32 checksum of the values and the load level state
+ * encoding) followed by the Q table values as little endian doubles in
+ * row-major order, and by the keys of the indexed load level states in index
+ * order. Loading maps the values into memory instead of reading them, so a
+ * trained table is ready to use without waiting for training.
+ */
+public class QTableFile {
+
+    static final int MAGIC = 0x514c4f51; // "QLOQ"
+    static final int VERSION = 2; // Version 1 files have no load level states
+    static final int HEADER_BYTES = 64;
+
+    private final int vmcount;
+    private final int tasktype;
+    private final double alpha;
+    private final double gamma;
+    private final long checksum;
+    private final QTable table;
+    private final int stateLevels; // Load levels of a VM in the state, 0 for plain VM states
+    private final long[] stateKeys; // Key of every indexed load level state
+
+    private QTableFile(int vmcount, int tasktype, double alpha, double gamma, long checksum, QTable table,
+            int stateLevels, long[] stateKeys) {
+        this.vmcount = vmcount;
+        this.tasktype = tasktype;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.checksum = checksum;
+        this.table = table;
+        this.stateLevels = stateLevels;
+        this.stateKeys = stateKeys;
+    }
+
+    /**
+     * Save a Q table. The file is written next to the target and then moved
+     * over it, so a table mapped from the target stays valid.
+     *
+     * @param file target file
+     * @param Q Q learning table with states * tasktype rows and states columns
+     * @param tasktype number of task types
+     * @param alpha learning rate the table was trained with
+     * @param gamma discount factor the table was trained with
+     */
+    public static void save(Path file, QTable Q, int tasktype, double alpha, double gamma) throws IOException {
+        save(file, Q, tasktype, alpha, gamma, null);
+    }
+
+    /**
+     * Save a Q table trained with load level states
+     *
+     * @param levelStates load level state encoding of the table, null for plain VM states
+     */
+    public static void save(Path file, QTable Q, int tasktype, double alpha, double gamma, LoadLevelStates levelStates)
+            throws IOException {
+        int rows = Q.getRows();
+        int columns = Q.getColumns();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(columns * Double.BYTES, 1 << 16))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            channel.position(HEADER_BYTES);
+            for (int row = 0; row < rows; row++) {
+                if (buffer.remaining() < columns * Double.BYTES) {
+                    write(channel, buffer, crc);
+                }
+                for (int col = 0; col < columns; col++) {
+                    buffer.putDouble(Q.get(row, col));
+                }
+            }
+            int statecount = levelStates == null ? 0 : levelStates.getIndex().size();
+            for (int i = 0; i < statecount; i++) {
+                if (buffer.remaining() < Long.BYTES) {
+                    write(channel, buffer, crc);
+                }
+                buffer.putLong(levelStates.getIndex().getKey(i));
+            }
+            write(channel, buffer, crc);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(columns); // vmcount
+            header.putInt(tasktype);
+            header.putInt(rows);
+            header.putInt(columns);
+            header.putDouble(alpha);
+            header.putDouble(gamma);
+            header.putLong(crc.getValue());
+            header.putInt(levelStates == null ? 0 : levelStates.getLevels());
+            header.putInt(statecount);
+            header.clear();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Load a Q table by mapping the file into memory
+     *
+     * @param file Q table file
+     * @param mode READ_ONLY to only use the table, PRIVATE to keep training it
+     *            without changing the file
+     * @param verify check the values against the header checksum
+     */
+    public static QTableFile load(Path file, MapMode mode, boolean verify) throws IOException {
+        // A private mapping needs a channel opened for writing, although the file is never written
+        StandardOpenOption[] options = mode == MapMode.READ_ONLY
+                ? new StandardOpenOption[] { StandardOpenOption.READ }
+                : new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Q table file header is truncated: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a Q table file: " + file);
+            }
+            int version = header.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported Q table file version " + version + ": " + file);
+            }
+            int vmcount = header.getInt();
+            int tasktype = header.getInt();
+            int rows = header.getInt();
+            int columns = header.getInt();
+            double alpha = header.getDouble();
+            double gamma = header.getDouble();
+            long checksum = header.getLong();
+            int stateLevels = version == 1 ? 0 : header.getInt();
+            int statecount = version == 1 ? 0 : header.getInt();
+
+            if (columns != vmcount || tasktype < 1 || rows % tasktype != 0
+                    || (stateLevels == 0 ? rows != vmcount * tasktype || statecount != 0
+                            : rows < vmcount * tasktype || statecount > rows / tasktype - vmcount)) {
+                throw new IOException("Q table file header is inconsistent: " + file);
+            }
+            long valueBytes = (long) rows * columns * Double.BYTES;
+            if (channel.size() != HEADER_BYTES + valueBytes + (long) statecount * Long.BYTES) {
+                throw new IOException("Q table file size does not match its header: " + file);
+            }
+
+            // Map the values in chunks of whole rows, the same layout BufferQTable uses
+            int rowsPerChunk = BufferQTable.rowsPerChunk(columns);
+            ByteBuffer[] chunks = new ByteBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+            CRC32 crc = new CRC32();
+            long position = HEADER_BYTES;
+            for (int i = 0; i < chunks.length; i++) {
+                long chunkBytes = (long) Math.min(rowsPerChunk, rows - i * rowsPerChunk) * columns * Double.BYTES;
+                chunks[i] = channel.map(mode, position, chunkBytes);
+                if (verify) {
+                    crc.update(chunks[i].duplicate());
+                }
+                position += chunkBytes;
+            }
+            // The state keys are few, read them
+            long[] stateKeys = new long[statecount];
+            ByteBuffer keys = ByteBuffer.allocate(statecount * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES + valueBytes);
+            while (keys.hasRemaining()) {
+                if (channel.read(keys) < 0) {
+                    throw new IOException("Q table file state keys are truncated: " + file);
+                }
+            }
+            keys.flip();
+            if (verify) {
+                crc.update(keys.duplicate());
+            }
+            keys.asLongBuffer().get(stateKeys);
+            if (verify && crc.getValue() != checksum) {
+                throw new IOException("Q table file checksum mismatch: " + file);
+            }
+
+            return new QTableFile(vmcount, tasktype, alpha, gamma, checksum, new BufferQTable(rows, columns, chunks),
+                    stateLevels, stateKeys);
+        }
+    }
+
+    public int getVmCount() {
+        return vmcount;
+    }
+
+    public int getTaskType() {
+        return tasktype;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Load levels of a VM in the state, 0 for plain VM states
+     */
+    public int getStateLevels() {
+        return stateLevels;
+    }
+
+    /**
+     * Number of load level states the table has rows for
+     */
+    public int getStateCapacity() {
+        return table.getRows() / tasktype - vmcount;
+    }
+
+    /**
+     * Key of every indexed load level state, in index order
+     */
+    public long[] getStateKeys() {
+        return stateKeys.clone();
+    }
+
+    /**
+     * Mapped Q table. The mapping stays valid after the file is closed.
+     */
+    public QTable getTable() {
+        return table;
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Round trip check of QTableFile.
+ *
+ * Saves random tables of every backend, with plain VM states and with load
+ * level states, loads them back and compares the header, values and state
+ * keys. A plain table is also written by hand as a version 1 file, which has
+ * no load level states, and loaded, and a changed value must fail the
+ * checksum.
+ */
+public class QTableFileCheck {
+
+    private static final String[] BACKENDS = { "double", "float", "direct" };
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("qtablefile");
+        Path file = dir.resolve("q.bin");
+        try {
+            SelfCheck.run("QTableFile", args, 60, (rand, round) -> {
+                String backend = BACKENDS[round % BACKENDS.length];
+                int vmcount = 1 + rand.nextInt(12);
+                int tasktype = 1 + rand.nextInt(4);
+                LoadLevelStates levelStates = null;
+                int states = vmcount;
+                if (rand.nextBoolean()) {
+                    levelStates = new LoadLevelStates(vmcount, 2 + rand.nextInt(4), 1 + rand.nextInt(50));
+                    int added = rand.nextInt(levelStates.getIndex().getCapacity() + 1);
+                    for (int i = 0; i < added; i++) {
+                        levelStates.getIndex().getOrAdd(rand.nextLong());
+                    }
+                    states = levelStates.getMaxStateCount();
+                }
+                QTable Q = QTable.create(backend, states * tasktype, vmcount);
+                fill(rand, Q);
+                double alpha = rand.nextDouble();
+                double gamma = rand.nextDouble();
+                QTableFile.save(file, Q, tasktype, alpha, gamma, levelStates);
+
+                QTableFile loaded = QTableFile.load(file, MapMode.READ_ONLY, true);
+                SelfCheck.check(loaded.getVmCount() == vmcount && loaded.getTaskType() == tasktype
+                        && loaded.getAlpha() == alpha && loaded.getGamma() == gamma, "Header differs");
+                compare(loaded.getTable(), Q);
+                if (levelStates == null) {
+                    SelfCheck.check(loaded.getStateLevels() == 0 && loaded.getStateKeys().length == 0,
+                            "Plain table loaded with load level states");
+                } else {
+                    StateIndex index = levelStates.getIndex();
+                    SelfCheck.check(loaded.getStateLevels() == levelStates.getLevels()
+                            && loaded.getStateCapacity() == index.getCapacity()
+                            && loaded.getStateKeys().length == index.size(), "Load level states differ");
+                    for (int i = 0; i < index.size(); i++) {
+                        SelfCheck.check(loaded.getStateKeys()[i] == index.getKey(i), "State key " + i + " differs");
+                    }
+                }
+
+                // A private mapping is trained without changing the file
+                QTable copy = QTableFile.load(file, MapMode.PRIVATE, false).getTable();
+                copy.set(0, 0, Q.get(0, 0) + 1);
+                compare(QTableFile.load(file, MapMode.READ_ONLY, true).getTable(), Q);
+
+                if (levelStates == null) {
+                    writeVersion1(file, Q, tasktype, alpha, gamma);
+                    loaded = QTableFile.load(file, MapMode.READ_ONLY, true);
+                    SelfCheck.check(loaded.getVmCount() == vmcount && loaded.getTaskType() == tasktype
+                            && loaded.getStateLevels() == 0 && loaded.getStateKeys().length == 0,
+                            "Version 1 header differs");
+                    compare(loaded.getTable(), Q);
+                }
+
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    ByteBuffer value = ByteBuffer.allocate(1); // A byte of the first value
+                    channel.read(value, QTableFile.HEADER_BYTES + 3);
+                    value.put(0, (byte) (value.get(0) ^ 1));
+                    value.rewind();
+                    channel.write(value, QTableFile.HEADER_BYTES + 3);
+                }
+                boolean failed = false;
+                try {
+                    QTableFile.load(file, MapMode.READ_ONLY, true);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                SelfCheck.check(failed, "Changed value passed the checksum");
+                return 1;
+            });
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void fill(Random rand, QTable Q) {
+        for (int row = 0; row < Q.getRows(); row++) {
+            for (int col = 0; col < Q.getColumns(); col++) {
+                Q.set(row, col, rand.nextInt(4) == 0 ? 0 : rand.nextGaussian() * 1000);
+            }
+        }
+    }
+
+    /**
+     * Write a table in the version 1 layout: the header without the load
+     * level state fields, followed by the values
+     */
+    private static void writeVersion1(Path file, QTable Q, int tasktype, double alpha, double gamma)
+            throws IOException {
+        ByteBuffer values = ByteBuffer.allocate(Q.getRows() * Q.getColumns() * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int row = 0; row < Q.getRows(); row++) {
+            for (int col = 0; col < Q.getColumns(); col++) {
+                values.putDouble(Q.get(row, col));
+            }
+        }
+        values.flip();
+        CRC32 crc = new CRC32();
+        crc.update(values.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(QTableFile.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(QTableFile.MAGIC);
+        header.putInt(1);
+        header.putInt(Q.getColumns());
+        header.putInt(tasktype);
+        header.putInt(Q.getRows());
+        header.putInt(Q.getColumns());
+        header.putDouble(alpha);
+        header.putDouble(gamma);
+        header.putLong(crc.getValue());
+        header.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (values.hasRemaining()) {
+                channel.write(values);
+            }
+        }
+    }
+
+    private static void compare(QTable actual, QTable expected) {
+        SelfCheck.check(actual.getRows() == expected.getRows() && actual.getColumns() == expected.getColumns(),
+                "Table size differs");
+        for (int row = 0; row < expected.getRows(); row++) {
+            for (int col = 0; col < expected.getColumns(); col++) {
+                SelfCheck.check(Double.doubleToLongBits(actual.get(row, col)) == Double
+                        .doubleToLongBits(expected.get(row, col)), "Value " + row + ", " + col + " differs");
+            }
+        }
+    }
+}
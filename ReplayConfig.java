@@ -0,0 +1,51 @@
+/**
+ * Experience replay configuration of Q table training.
+ *
+ * Learn steps store their transitions in a TransitionReplay of capacity
+ * transitions instead of updating the Q table at once, and batches of batch
+ * transitions drawn from it update the table in row order. A synchronous
+ * worker applies a batch every period learn steps, so every transition is
+ * replayed batch / period times on average. An asynchronous worker hands its
+ * transitions to a learner thread of its own, which applies batches for as
+ * long as the worker collects; the learner races the worker for the Q table,
+ * so asynchronous training is not reproducible from its seed.
+ */
+public class ReplayConfig {
+
+    private final int capacity; // Transitions kept for replay
+    private final int batch; // Transitions of an update batch
+    private final int period; // Learn steps between two batches of a synchronous worker
+    private final boolean async; // Learn on a thread of its own
+
+    /**
+     * @param capacity transitions kept for replay
+     * @param batch transitions of an update batch
+     * @param period learn steps between two batches of a synchronous worker
+     * @param async learn on a thread of its own, fed through a TransitionHandoff
+     */
+    public ReplayConfig(int capacity, int batch, int period, boolean async) {
+        if (capacity < 1 || batch < 1 || period < 1) {
+            throw new IllegalArgumentException("Replay capacity, batch and period must be positive");
+        }
+        this.capacity = capacity;
+        this.batch = batch;
+        this.period = period;
+        this.async = async;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+}
@@ -0,0 +1,239 @@
+import org.cloudbus.cloudsim.power.models.PowerModel;
+
+/**
+ * Weighted multi-objective reward of a task relocation.
+ *
+ * The cost of a batch is a weighted sum of three estimates, all in task
+ * length units:
+ *
+ * - variance: the total VM queue task absolute variance
+ * - makespan: the max completion time vmcurqlen / vmmips of the VMs, times
+ *   the MIPS of all VMs
+ * - energy: the idle power of every host over the makespan plus the
+ *   marginal power of every VM over its completion time, divided by the
+ *   energy of one unit of task length on a balanced batch
+ *
+ * The reward of a relocation is the decrease of the cost, so the default
+ * weights 1, 0, 0 give the plain absolute variance reward. The marginal power
+ * of a VM is the power of its host at the share of the host VM MIPS the VM
+ * has, less the idle power, as EnergyIntegrator measures host utilization.
+ */
+public class RewardModel {
+
+    private final int[] vmmips;
+    private final long mipssum;
+    private final double varianceWeight;
+    private final double makespanWeight;
+    private final double energyWeight;
+    private final double idlepower; // Idle power of all hosts
+    private final double[] vmenergy; // Marginal energy of a unit of task length on every VM
+    private final double energyscale; // Task length units per energy unit
+
+    /**
+     * @param vmmips MIPS of every VM
+     * @param varianceWeight weight of the total absolute variance
+     * @param makespanWeight weight of the makespan
+     * @param energyWeight weight of the energy
+     * @param idlepower idle power of all hosts
+     * @param vmpower marginal power of every VM while it is busy
+     */
+    public RewardModel(int[] vmmips, double varianceWeight, double makespanWeight, double energyWeight,
+            double idlepower, double[] vmpower) {
+        if (varianceWeight < 0 || makespanWeight < 0 || energyWeight < 0) {
+            throw new IllegalArgumentException("Reward weights must not be negative");
+        }
+        this.vmmips = vmmips;
+        this.varianceWeight = varianceWeight;
+        this.makespanWeight = makespanWeight;
+        this.energyWeight = energyWeight;
+        this.idlepower = idlepower;
+        this.vmenergy = new double[vmmips.length];
+        long sum = 0;
+        double power = idlepower;
+        for (int i = 0; i < vmmips.length; i++) {
+            sum += vmmips[i];
+            power += vmpower[i];
+            vmenergy[i] = vmpower[i] / vmmips[i];
+        }
+        this.mipssum = sum;
+        this.energyscale = power > 0 ? sum / power : 0;
+    }
+
+    /**
+     * Reward model of the VMs of a topology
+     *
+     * @param models power model of every host
+     */
+    public static RewardModel create(Topology topology, PowerModel[] models, double varianceWeight,
+            double makespanWeight, double energyWeight) {
+        long[] hostmips = new long[topology.getHostCount()]; // VM MIPS of every host
+        for (int i = 0; i < topology.getVmCount(); i++) {
+            hostmips[topology.getVmHost(i)] += topology.getVmMips(i);
+        }
+        double idlepower = 0;
+        for (int h = 0; h < topology.getHostCount(); h++) {
+            idlepower += models[h].getPower(0);
+        }
+        double[] vmpower = new double[topology.getVmCount()];
+        for (int i = 0; i < vmpower.length; i++) {
+            PowerModel model = models[topology.getVmHost(i)];
+            vmpower[i] = model.getPower((double) topology.getVmMips(i) / hostmips[topology.getVmHost(i)])
+                    - model.getPower(0);
+        }
+        return new RewardModel(topology.getVmMips(), varianceWeight, makespanWeight, energyWeight, idlepower, vmpower);
+    }
+
+    public double getVarianceWeight() {
+        return varianceWeight;
+    }
+
+    public double getMakespanWeight() {
+        return makespanWeight;
+    }
+
+    public double getEnergyWeight() {
+        return energyWeight;
+    }
+
+    /**
+     * Cost estimates of one load state, owned by one thread
+     */
+    public Tracker newTracker() {
+        return new Tracker();
+    }
+
+    /**
+     * Keeps the makespan and the marginal energy up to date with a load state.
+     * The completion times of the VMs are kept in an indexed binary max-heap,
+     * so a relocation costs O(log n) and the cost after a relocation O(1).
+     */
+    public class Tracker {
+
+        /** Heap positions of the top 3 levels, which hold the max time of all VMs but 2 */
+        private static final int TOP = 7;
+
+        private final double[] time = new double[vmmips.length]; // Completion time of every VM
+        private final int[] heap = new int[vmmips.length]; // VMs, a max-heap of their completion times
+        private final int[] pos = new int[vmmips.length]; // Heap position of every VM
+        private double busyenergy; // Marginal energy of all VMs
+
+        /**
+         * Compute the estimates after the load state was balanced
+         */
+        public void reset(VmLoadState load) {
+            busyenergy = 0;
+            for (int i = 0; i < vmmips.length; i++) {
+                busyenergy += vmenergy[i] * load.getLength(i);
+                time[i] = getTime(load, i, 0);
+                place(i, i);
+            }
+            for (int i = heap.length / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        /**
+         * Update the estimates after a task was migrated
+         *
+         * @param load load state, the task already migrated
+         * @param source source VM index
+         * @param dest destination VM index
+         * @param length task length
+         */
+        public void move(VmLoadState load, int source, int dest, long length) {
+            busyenergy += (vmenergy[dest] - vmenergy[source]) * length;
+            setTime(source, getTime(load, source, 0));
+            setTime(dest, getTime(load, dest, 0));
+        }
+
+        /**
+         * Cost of the load state
+         */
+        public double getCost(VmLoadState load) {
+            return cost(load.getSumAbsVariance(), getMakespan(), busyenergy);
+        }
+
+        /**
+         * Cost if a task were migrated, without changing the state
+         *
+         * @param source source VM index
+         * @param dest destination VM index
+         * @param length task length
+         */
+        public double getCostAfterMove(VmLoadState load, int source, int dest, long length) {
+            double next = Math.max(getTime(load, dest, length), getTime(load, source, -length));
+            // Only source and dest can be above the max time of the other VMs in the heap
+            for (int i = 0; i < Math.min(TOP, heap.length); i++) {
+                int vm = heap[i];
+                if (vm != source && vm != dest) {
+                    next = Math.max(next, time[vm]);
+                }
+            }
+            return cost(load.getSumAbsVarianceAfterMove(source, dest, length), next,
+                    busyenergy + (vmenergy[dest] - vmenergy[source]) * length);
+        }
+
+        private void setTime(int vm, double t) {
+            double old = time[vm];
+            time[vm] = t;
+            if (t > old) {
+                siftUp(pos[vm]);
+            } else if (t < old) {
+                siftDown(pos[vm]);
+            }
+        }
+
+        private void siftUp(int i) {
+            int vm = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (time[heap[parent]] >= time[vm]) {
+                    break;
+                }
+                place(i, heap[parent]);
+                i = parent;
+            }
+            place(i, vm);
+        }
+
+        private void siftDown(int i) {
+            int vm = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heap.length) {
+                    break;
+                }
+                if (child + 1 < heap.length && time[heap[child + 1]] > time[heap[child]]) {
+                    child++;
+                }
+                if (time[heap[child]] <= time[vm]) {
+                    break;
+                }
+                place(i, heap[child]);
+                i = child;
+            }
+            place(i, vm);
+        }
+
+        private void place(int i, int vm) {
+            heap[i] = vm;
+            pos[vm] = i;
+        }
+
+        private double getTime(VmLoadState load, int vm, long delta) {
+            return (double) (load.getLength(vm) + delta) / vmmips[vm];
+        }
+
+        private double cost(long sumabsvariance, double makespan, double busyenergy) {
+            return varianceWeight * sumabsvariance + makespanWeight * makespan * mipssum
+                    + energyWeight * energyscale * (idlepower * makespan + busyenergy);
+        }
+
+        /**
+         * Max completion time of the VMs
+         */
+        public double getMakespan() {
+            return time[heap[0]];
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Randomized check of RewardModel.Tracker.
+ *
+ * Migrates random tasks between VMs of random speed and power and compares
+ * the incrementally tracked cost and makespan, and the cost estimate of every
+ * migration, with a tracker reset from the new load state.
+ */
+public class RewardModelCheck {
+
+    private static final double TOLERANCE = 1e-9; // Relative rounding difference of the incremental sums
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("RewardModel", args, 100, (rand, round) -> {
+            int vmcount = 2 + rand.nextInt(40);
+            int[] vmmips = new int[vmcount];
+            double[] vmpower = new double[vmcount];
+            for (int i = 0; i < vmcount; i++) {
+                vmmips[i] = 100 * (1 + rand.nextInt(10));
+                vmpower[i] = rand.nextDouble() * 50;
+            }
+            RewardModel model = new RewardModel(vmmips, rand.nextDouble(), rand.nextDouble(), rand.nextDouble(),
+                    rand.nextDouble() * 200, vmpower);
+            VmLoadState load = new VmLoadState(vmmips);
+            for (int j = 0; j < 4 * vmcount; j++) {
+                load.add(rand.nextInt(vmcount), 100 * (1 + rand.nextInt(3)));
+            }
+            load.balance();
+            RewardModel.Tracker tracker = model.newTracker();
+            tracker.reset(load);
+
+            int checked = 0;
+            for (int step = 0; step < 1000; step++) {
+                int source = rand.nextInt(vmcount);
+                int dest = rand.nextInt(vmcount);
+                long length = 100 * (1 + rand.nextInt(3));
+                if (source == dest || load.getLength(source) < length) {
+                    continue;
+                }
+                double estimate = tracker.getCostAfterMove(load, source, dest, length);
+                load.move(source, dest, length);
+                tracker.move(load, source, dest, length);
+
+                RewardModel.Tracker expected = model.newTracker();
+                expected.reset(load);
+                double cost = expected.getCost(load);
+                SelfCheck.checkNear(tracker.getCost(load), cost, TOLERANCE, "Tracked cost");
+                SelfCheck.checkNear(estimate, cost, TOLERANCE, "Cost estimate");
+                SelfCheck.checkNear(tracker.getMakespan(), expected.getMakespan(), TOLERANCE, "Makespan");
+                checked++;
+            }
+            return checked;
+        });
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Baseline policy: tasks stay on the VMs they were queued on round robin.
+ */
+public class RoundRobinPolicy implements SchedulingPolicy {
+
+    @Override
+    public String getName() {
+        return "RoundRobin";
+    }
+
+    @Override
+    public void schedule(VmTaskQueues vmq, VmLoadState load) {
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+/**
+ * Samples of one metric over many runs.
+ *
+ * Samples are kept in a growable primitive array, which costs 8 bytes per run,
+ * so percentiles can be computed exactly once all runs are done.
+ */
+public class SampleStatistics {
+
+    private double[] samples = new double[16];
+    private int count;
+    private double mean; // Running mean (Welford)
+    private double m2; // Running sum of squared differences from the mean
+
+    public void add(double value) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count] = value;
+        count = count + 1;
+
+        double delta = value - mean;
+        mean = mean + delta / count;
+        m2 = m2 + delta * (value - mean);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Sample standard deviation
+     */
+    public double getStandardDeviation() {
+        return count < 2 ? Double.NaN : Math.sqrt(m2 / (count - 1));
+    }
+
+    /**
+     * Half width of the 95% confidence interval of the mean, using the normal
+     * approximation
+     */
+    public double getConfidence95() {
+        return count < 2 ? Double.NaN : 1.96 * getStandardDeviation() / Math.sqrt(count);
+    }
+
+    /**
+     * Percentile with linear interpolation between the closest ranks
+     *
+     * @param p percentile between 0 and 100
+     */
+    public double getPercentile(double p) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        double rank = p / 100 * (count - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = Math.min(lower + 1, count - 1);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+}
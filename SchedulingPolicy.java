@@ -0,0 +1,21 @@
+/**
+ * Task scheduling policy compared by the simulation harness.
+ *
+ * A policy gets a batch of tasks queued round robin on the VMs and moves them
+ * between the VM queues before the batch is simulated.
+ */
+public interface SchedulingPolicy {
+
+    /**
+     * Policy name used in reports
+     */
+    String getName();
+
+    /**
+     * Schedule a batch of tasks
+     *
+     * @param vmq Vm's task queues holding task type indexes, queued round robin
+     * @param load VM queues load balancing state of the same tasks, balanced
+     */
+    void schedule(VmTaskQueues vmq, VmLoadState load);
+}
@@ -0,0 +1,60 @@
+import java.util.Random;
+
+/**
+ * Driver of the randomized self checks.
+ *
+ * A check runs a number of rounds of random operations from one seed, the
+ * first program argument or 1, so a failing seed can be run again. Every
+ * round returns the operations it checked and the total is printed at the
+ * end. A difference throws IllegalStateException at once.
+ */
+public final class SelfCheck {
+
+    /**
+     * One round of a check
+     */
+    public interface Round {
+
+        /**
+         * @param rand random generator of the check
+         * @param round round number, from 0
+         * @return number of operations checked
+         */
+        long run(Random rand, int round) throws Exception;
+    }
+
+    private SelfCheck() {
+    }
+
+    /**
+     * Run the rounds of a check and print the operations checked
+     *
+     * @param name checked class
+     * @param args program arguments, the first one being the seed
+     */
+    public static void run(String name, String[] args, int rounds, Round round) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        Random rand = new Random(seed);
+        long checked = 0;
+        for (int i = 0; i < rounds; i++) {
+            checked += round.run(rand, i);
+        }
+        System.out.println(name + ": " + checked + " operations checked in " + rounds + " rounds, seed " + seed);
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Check a value computed another way, equal up to a relative rounding
+     * difference
+     */
+    public static void checkNear(double actual, double expected, double tolerance, String name) {
+        if (!(Math.abs(actual - expected) <= tolerance * Math.max(1, Math.abs(expected)))) {
+            throw new IllegalStateException(name + " " + actual + ", expected " + expected);
+        }
+    }
+}
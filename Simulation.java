@@ -0,0 +1,417 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+import org.cloudbus.cloudsim.Datacenter;
+import org.cloudbus.cloudsim.DatacenterCharacteristics;
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.VmSchedulerTimeShared;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.power.models.PowerModel;
+import org.cloudbus.cloudsim.power.models.PowerModelSpecPowerInterpolated_QLO;
+import org.cloudbus.cloudsim.power.models.PowerModelSpecPower_QLO;
+import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+
+/**
+ * CloudSim simulation of one scheduled task batch.
+ *
+ * Every run initializes its own CloudSim instance with the datacenters,
+ * hosts and VMs of its topology and its own broker, and returns its own
+ * result. CloudSim keeps its state in static fields, so runs inside one JVM
+ * must not overlap; main() runs one batch written by writeBatch() in a
+ * separate worker process.
+ */
+public class Simulation {
+
+    // Host power model parameters
+    final static String powerCurves = System.getProperty("qlo.power.curves"); // SPECpower curve file, example curve when not set
+    final static String powerHostType = System.getProperty("qlo.power.host"); // Host type of the curve file, first one when not set
+    final static int powerResolution = Integer.getInteger("qlo.power.resolution", PowerModelSpecPowerInterpolated_QLO.DEFAULT_RESOLUTION);
+
+    // Energy cost per kWh ($0.15)
+    final static double energyCostPerKWh = 0.15;
+    final static String energyIntegration = System.getProperty("qlo.energy.integration", "exact"); // Host energy over the real cloudlet times (exact) or rounded to 10 ms ticks (tick)
+
+    // Result report parameters
+    final static String reportDir = System.getProperty("qlo.report"); // Directory of the cloudlet CSV reports, one per policy
+    final static boolean printTable = Boolean.parseBoolean(System.getProperty("qlo.report.table", Boolean.toString(reportDir == null))); // Print the cloudlet table
+
+    // Worker process output
+    final static boolean quiet = Boolean.getBoolean("qlo.simulation.quiet"); // No cloudlet tables in worker processes
+
+    /**
+     * Worker process entry: simulate the batch file and write the result file
+     *
+     * @param args policy name, batch file, result file
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: java Simulation <policy> <batch file> <result file>");
+            System.exit(2);
+        }
+        if (quiet) {
+            Log.setDisabled(true);
+        }
+        Topology topology;
+        int[] tasktypelist;
+        VmTaskQueues vmq;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[1]))))) {
+            topology = Topology.read(in);
+            tasktypelist = new int[in.readInt()];
+            for (int i = 0; i < tasktypelist.length; i++) {
+                tasktypelist[i] = in.readInt();
+            }
+            vmq = new VmTaskQueues(topology.getVmCount(), 1);
+            for (int i = 0; i < topology.getVmCount(); i++) {
+                int size = in.readInt();
+                for (int j = 0; j < size; j++) {
+                    vmq.add(i, in.readInt());
+                }
+            }
+        }
+        SimulationResult result = run(args[0], vmq, topology, tasktypelist);
+        Files.write(Paths.get(args[2]), result.toLine().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write a scheduled batch for a worker process
+     */
+    static void writeBatch(Path file, VmTaskQueues vmq, Topology topology, int[] tasktypelist) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            topology.write(out);
+            out.writeInt(tasktypelist.length);
+            for (int length : tasktypelist) {
+                out.writeInt(length);
+            }
+            for (int i = 0; i < topology.getVmCount(); i++) {
+                out.writeInt(vmq.size(i));
+                for (int j = 0; j < vmq.size(i); j++) {
+                    out.writeInt(vmq.get(i, j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulate a scheduled batch on the default topology, one host running every VM
+     *
+     * @param policy policy name
+     * @param vmq Vm's task queues holding task type indexes
+     * @param vmmips MIPS of every VM
+     * @param tasktypelist task length of every task type
+     */
+    public static SimulationResult run(String policy, VmTaskQueues vmq, int[] vmmips, int[] tasktypelist) throws Exception {
+        return run(policy, vmq, Topology.single(vmmips), tasktypelist);
+    }
+
+    /**
+     * Simulate a scheduled batch: every task runs as a cloudlet on the VM of its queue
+     *
+     * @param policy policy name
+     * @param vmq Vm's task queues holding task type indexes
+     * @param topology datacenters, hosts and VMs
+     * @param tasktypelist task length of every task type
+     */
+    public static SimulationResult run(String policy, VmTaskQueues vmq, Topology topology, int[] tasktypelist) throws Exception {
+        // First step: Initialize the CloudSim package. It should be called
+        // before creating any entities.
+        int num_user = 1; // number of cloud users
+        Calendar calendar = Calendar.getInstance();
+        boolean trace_flag = false; // mean trace events
+
+        // Initialize the CloudSim library
+        CloudSim.init(num_user, calendar, trace_flag);
+
+        // Second step: Create Datacenters
+        // Datacenters are the resource providers in CloudSim. We need at list one of them to run a CloudSim simulation
+        List<PowerHost> hostList = new ArrayList<PowerHost>(topology.getHostCount());
+        List<Datacenter> datacenters = createDatacenters(topology, hostList);
+        int[] datacenterIds = new int[datacenters.size()];
+        for (int d = 0; d < datacenterIds.length; d++) {
+            datacenterIds[d] = datacenters.get(d).getId();
+        }
+
+        // Third step: Create Broker
+        TopologyBroker broker0 = new TopologyBroker("Broker0", topology, datacenterIds);
+        int brokerId0 = broker0.getId();
+
+        // Fourth step: Create virtual machines, VM ids being topology VM indexes
+        int vmcount = topology.getVmCount();
+        List<Vm> vmlist0 = new ArrayList<Vm>(vmcount);
+        int pesNumber = 1; // number of cpus
+        String vmm = "Xen"; // VMM name
+
+        for (int i = 0; i < vmcount; i++) {
+            vmlist0.add(new Vm(i, brokerId0, topology.getVmMips(i), pesNumber, topology.getVmRam(i),
+                    topology.getVmBw(i), topology.getVmSize(i), vmm, new CloudletSchedulerSpaceShared()));
+        }
+        // submit vm list to the broker
+        broker0.submitVmList(vmlist0);
+
+        // Fifth step: Create Cloudlets, bound to the VM of their queue, VM by VM in queue order
+        int taskcount = 0;
+        for (int i = 0; i < vmcount; i++) {
+            taskcount += vmq.size(i);
+        }
+        int[] assignment = new int[taskcount];
+        int[] tasks = new int[taskcount];
+        int task = 0;
+        for (int i = 0; i < vmcount; i++) {
+            for (int j = 0; j < vmq.size(i); j++) {
+                assignment[task] = i;
+                tasks[task] = vmq.get(i, j);
+                task++;
+            }
+        }
+        // create, bind and submit the cloudlets to the broker in one pass
+        broker0.submitTasks(assignment, tasks, tasktypelist);
+
+        // Sixth step: Starts the simulation
+        Log.printLine("QLO " + policy + " started!");
+        CloudSim.startSimulation();
+
+        // Final step: Print results when simulation is over
+        List<Cloudlet> received = broker0.getCloudletReceivedList();
+        CloudSim.stopSimulation();
+        Log.printLine("=============================================================================");
+        Log.printLine("=============> User (" + policy + ") " + brokerId0 + "    ");
+        return printCloudletList(received, hostList, topology, policy);
+    }
+
+    /**
+     * Create the host power model: the example SPECpower curve, or the
+     * interpolated curve of a host type loaded from the curve file
+     */
+    static PowerModel createPowerModel() throws IOException {
+        if (powerCurves == null) {
+            return new PowerModelSpecPower_QLO();
+        }
+        Map<String, PowerModelSpecPowerInterpolated_QLO> models = PowerModelSpecPowerInterpolated_QLO.loadCurves(Paths.get(powerCurves), powerResolution);
+        if (models.isEmpty()) {
+            throw new IOException("No power curve in " + powerCurves);
+        }
+        PowerModel model = powerHostType == null ? models.values().iterator().next() : models.get(powerHostType);
+        if (model == null) {
+            throw new IOException("No power curve for host type " + powerHostType + " in " + powerCurves);
+        }
+        return model;
+    }
+
+    /**
+     * Create the power model of every host of a topology: the power curve of
+     * its host type, or the default power model. The curve files are read once.
+     *
+     * @return power model of every host, in topology host order
+     */
+    static PowerModel[] createPowerModels(Topology topology) throws IOException {
+        PowerModel defaultModel = null;
+        Map<String, PowerModelSpecPowerInterpolated_QLO> models = null;
+        PowerModel[] powerModels = new PowerModel[topology.getHostCount()];
+        for (int host = 0; host < topology.getHostCount(); host++) {
+            String hostType = topology.getHostPowerType(host);
+            if (hostType == null) {
+                if (defaultModel == null) {
+                    defaultModel = createPowerModel();
+                }
+                powerModels[host] = defaultModel;
+            } else {
+                if (powerCurves == null) {
+                    throw new IOException("Host type " + hostType + " needs a power curve file (qlo.power.curves)");
+                }
+                if (models == null) {
+                    models = PowerModelSpecPowerInterpolated_QLO.loadCurves(Paths.get(powerCurves), powerResolution);
+                }
+                powerModels[host] = models.get(hostType);
+                if (powerModels[host] == null) {
+                    throw new IOException("No power curve for host type " + hostType + " in " + powerCurves);
+                }
+            }
+        }
+        return powerModels;
+    }
+
+    /**
+     * Create the datacenters of a topology with their hosts. Every host gets
+     * the power curve of its host type, or the default power model.
+     *
+     * @param topology datacenters, hosts and VMs
+     * @param hostList receives the hosts, in topology host order
+     * @return datacenters, in topology datacenter order
+     */
+    static List<Datacenter> createDatacenters(Topology topology, List<PowerHost> hostList) throws Exception {
+        PowerModel[] powerModels = createPowerModels(topology);
+        PowerHost[] hosts = new PowerHost[topology.getHostCount()];
+        List<Datacenter> datacenters = new ArrayList<Datacenter>(topology.getDatacenterCount());
+
+        int host = 0;
+        for (int d = 0; d < topology.getDatacenterCount(); d++) {
+            // 1. We need to create a list to store our machines
+            List<Host> dcHostList = new ArrayList<Host>();
+            for (; host < topology.getHostCount() && topology.getHostDatacenter(host) == d; host++) {
+                // 2. A Machine contains one or more PEs or CPUs/Cores.
+                List<Pe> peList = new ArrayList<Pe>(topology.getHostPes(host));
+                for (int pe = 0; pe < topology.getHostPes(host); pe++) {
+                    peList.add(new Pe(pe, new PeProvisionerSimple(topology.getHostPeMips(host)))); // need to store Pe id and MIPS Rating
+                }
+
+                // 3. Create Host with its id and list of PEs and add them to the list of machines
+                hosts[host] = new PowerHost(
+                        host,
+                        new RamProvisionerSimple(topology.getHostRam(host)),
+                        new BwProvisionerSimple(topology.getHostBw(host)),
+                        topology.getHostStorage(host),
+                        peList,
+                        new VmSchedulerTimeShared(peList),
+                        powerModels[host]);
+                dcHostList.add(hosts[host]);
+                hostList.add(hosts[host]);
+            }
+
+            // 4. Create a DatacenterCharacteristics object that stores the
+            // properties of a data center: architecture, OS, list of
+            // Machines, allocation policy: time- or space-shared, time zone
+            // and its price (G$/Pe time unit).
+            String arch = "x86"; // system architecture
+            String os = "Linux"; // operating system
+            String vmm = "Xen";
+            double time_zone = 10.0; // time zone this resource located
+            double cost = 3.0; // the cost of using processing in this resource
+            double costPerMem = 0.05; // the cost of using memory in this resource
+            double costPerStorage = 0.001; // the cost of using storage in this resource
+            double costPerBw = 0.0; // the cost of using bw in this resource
+            LinkedList<Storage> storageList = new LinkedList<Storage>(); // we are not adding SAN devices by now
+
+            DatacenterCharacteristics characteristics = new DatacenterCharacteristics(
+                    arch, os, vmm, dcHostList, time_zone, cost, costPerMem, costPerStorage, costPerBw);
+
+            // 5. Finally, we need to create a Datacenter object, creating every VM on its placed host.
+            datacenters.add(new Datacenter(topology.getDatacenterName(d), characteristics,
+                    new TopologyVmAllocationPolicy(dcHostList, topology, d, hosts), storageList, 0));
+        }
+        return datacenters;
+    }
+
+    /**
+     * Prints the Cloudlet objects
+     *
+     * Every cloudlet is written to the CSV report of the policy when a report
+     * directory is set, and to the cloudlet table when the table is enabled.
+     * The energy summary is always printed.
+     *
+     * @param list list of Cloudlets
+     * @return performance metrics of the cloudlets
+     */
+    static SimulationResult printCloudletList(List<Cloudlet> list, List<PowerHost> hostList, Topology topology,
+            String policy) throws IOException {
+        int size = list.size();
+        Cloudlet cloudlet;
+
+        String indent = "    ";
+        if (printTable) {
+            Log.printLine();
+            Log.printLine("========== OUTPUT ==========");
+            Log.printLine("Cloudlet ID" + indent + "STATUS" + indent +
+                    "Data center ID" + indent + "VM ID" + indent + "Time" + indent +
+                    "Start Time" + indent + "Finish Time" + indent + "Cost" + indent + "Response Time");
+        }
+
+        DecimalFormat dft = new DecimalFormat("###.##");
+        double maxFinishTime = 0;
+        double totalCost = 0;
+        double totalResponseTime = 0;
+
+        CloudletReportWriter report = reportDir == null ? null
+                : new CloudletReportWriter(Paths.get(reportDir, "cloudlets-" + policy + ".csv"));
+        try {
+            for (int i = 0; i < size; i++) {
+                cloudlet = list.get(i);
+                double cost = 0;
+                double responseTime = 0;
+
+                if (cloudlet.getCloudletStatus() == Cloudlet.SUCCESS) {
+                    // Calculate cost
+                    double costPerSecond = 0.01; // Cost of using CPU per second
+                    double costPerRam = 0.001; // Cost of using RAM per MB
+                    double costPerBw = 0.0001; // Cost of using bandwidth per MB
+                    cost = (cloudlet.getActualCPUTime() * costPerSecond) +
+                            (cloudlet.getUtilizationOfRam(cloudlet.getActualCPUTime()) * (costPerRam * cloudlet.getCloudletLength())) +
+                            (cloudlet.getUtilizationOfBw(cloudlet.getCloudletLength() / 1000) * costPerBw);
+
+                    // Calculate response time
+                    responseTime = cloudlet.getFinishTime() - cloudlet.getExecStartTime();
+
+                    // Update total cost and response time
+                    totalCost += cost;
+                    totalResponseTime += responseTime;
+
+                    // Update maxFinishTime
+                    if (cloudlet.getFinishTime() > maxFinishTime) {
+                        maxFinishTime = cloudlet.getFinishTime();
+                    }
+                }
+
+                if (report != null) {
+                    report.write(cloudlet.getCloudletId(), cloudlet.getCloudletStatus(), cloudlet.getResourceId(),
+                            cloudlet.getVmId(), cloudlet.getActualCPUTime(), cloudlet.getExecStartTime(),
+                            cloudlet.getFinishTime(), cost, responseTime);
+                }
+
+                if (printTable) {
+                    Log.print(indent + cloudlet.getCloudletId() + indent + indent);
+                    if (cloudlet.getCloudletStatus() == Cloudlet.SUCCESS) {
+                        Log.print("SUCCESS");
+
+                        // Print the cloudlet details in table format
+                        Log.printLine(indent + indent + cloudlet.getResourceId() + indent + indent + indent + cloudlet.getVmId() +
+                                indent + indent + dft.format(cloudlet.getActualCPUTime()) + indent + indent +
+                                dft.format(cloudlet.getExecStartTime()) + indent + indent + dft.format(cloudlet.getFinishTime()) +
+                                indent + indent + dft.format(cost) + indent + indent + dft.format(responseTime));
+                    }
+                }
+            }
+        } finally {
+            if (report != null) {
+                report.close();
+            }
+        }
+
+        // Calculate energy consumption of all hosts until the last cloudlet finished
+        PowerModel[] models = new PowerModel[hostList.size()];
+        for (int h = 0; h < models.length; h++) {
+            models[h] = hostList.get(h).getPowerModel();
+        }
+        double hostPower = EnergyIntegrator.integrate(list, topology, models, maxFinishTime, energyIntegration); // Host power consumption in kWh
+
+        // Calculate energy cost
+        double hostEnergyCost = hostPower * energyCostPerKWh; // Host energy cost
+
+        String hosts = hostList.size() == 1 ? "Host " + hostList.get(0).getId() : hostList.size() + " hosts";
+        Log.printLine("=============================================================");
+        Log.printLine(hosts + " Energy Consumption: " + hostPower + " kWh");
+        Log.printLine(hosts + " Energy Cost: $" + hostEnergyCost); // نمایش هزینه انرژی
+        Log.printLine("=============================================================");
+
+        return new SimulationResult(policy, maxFinishTime, totalResponseTime / size, hostPower, hostEnergyCost);
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares scheduling policies on the same task batch.
+ *
+ * Every policy schedules its own copy of the batch and is simulated as an
+ * independent CloudSim run with its own result. With one worker the runs
+ * follow each other in this JVM. With more workers every run is a separate
+ * JVM process, since CloudSim cannot run two simulations in one JVM at once,
+ * and up to workers processes run at the same time.
+ */
+public class SimulationHarness {
+
+    private SimulationHarness() {
+    }
+
+    /**
+     * Schedule and simulate a batch with every policy on the default topology
+     *
+     * @param policies scheduling policies
+     * @param batch Vm's task queues holding task type indexes, queued round robin
+     * @param vmmips MIPS of every VM
+     * @param tasktypelist task length of every task type
+     * @param workers number of simulations running at the same time
+     * @return result of every policy, in policy order
+     */
+    public static List<SimulationResult> run(List<SchedulingPolicy> policies, VmTaskQueues batch, int[] vmmips,
+            int[] tasktypelist, int workers) throws Exception {
+        return run(policies, batch, Topology.single(vmmips), tasktypelist, workers);
+    }
+
+    /**
+     * Schedule and simulate a batch with every policy
+     *
+     * @param policies scheduling policies
+     * @param batch Vm's task queues holding task type indexes, queued round robin
+     * @param topology datacenters, hosts and VMs
+     * @param tasktypelist task length of every task type
+     * @param workers number of simulations running at the same time
+     * @return result of every policy, in policy order
+     */
+    public static List<SimulationResult> run(List<SchedulingPolicy> policies, VmTaskQueues batch, Topology topology,
+            int[] tasktypelist, int workers) throws Exception {
+        List<VmTaskQueues> scheduled = schedule(policies, batch, topology.getVmMips(), tasktypelist);
+
+        List<SimulationResult> results = new ArrayList<SimulationResult>(policies.size());
+        if (workers <= 1) {
+            for (int p = 0; p < policies.size(); p++) {
+                results.add(Simulation.run(policies.get(p).getName(), scheduled.get(p), topology, tasktypelist));
+            }
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, policies.size()));
+        try {
+            List<Future<SimulationResult>> futures = new ArrayList<Future<SimulationResult>>(policies.size());
+            for (int p = 0; p < policies.size(); p++) {
+                final String name = policies.get(p).getName();
+                final VmTaskQueues vmq = scheduled.get(p);
+                futures.add(pool.submit(() -> runProcess(name, vmq, topology, tasktypelist)));
+            }
+            for (Future<SimulationResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Schedule a copy of the batch with every policy
+     *
+     * @return scheduled Vm's task queues of every policy, in policy order
+     */
+    static List<VmTaskQueues> schedule(List<SchedulingPolicy> policies, VmTaskQueues batch, int[] vmmips,
+            int[] tasktypelist) {
+        List<VmTaskQueues> scheduled = new ArrayList<VmTaskQueues>(policies.size());
+        VmLoadState load = new VmLoadState(vmmips);
+        for (SchedulingPolicy policy : policies) {
+            VmTaskQueues vmq = batch.copy();
+            load.clear();
+            for (int i = 0; i < vmmips.length; i++) {
+                for (int j = 0; j < vmq.size(i); j++) {
+                    load.add(i, tasktypelist[vmq.get(i, j)]);
+                }
+            }
+            load.balance();
+            policy.schedule(vmq, load);
+            scheduled.add(vmq);
+        }
+        return scheduled;
+    }
+
+    /**
+     * Simulate a scheduled batch in a worker JVM with the same class path and
+     * the same qlo.* system properties
+     */
+    static SimulationResult runProcess(String policy, VmTaskQueues vmq, int[] vmmips, int[] tasktypelist)
+            throws IOException, InterruptedException {
+        return runProcess(policy, vmq, Topology.single(vmmips), tasktypelist);
+    }
+
+    static SimulationResult runProcess(String policy, VmTaskQueues vmq, Topology topology, int[] tasktypelist)
+            throws IOException, InterruptedException {
+        Path batchFile = Files.createTempFile("qlo-batch-", ".bin");
+        Path resultFile = Files.createTempFile("qlo-result-", ".csv");
+        try {
+            Simulation.writeBatch(batchFile, vmq, topology, tasktypelist);
+
+            List<String> command = new ArrayList<String>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+                String key = property.getKey().toString();
+                if (key.startsWith("qlo.")) {
+                    command.add("-D" + key + "=" + property.getValue());
+                }
+            }
+            command.add("Simulation");
+            command.add(policy);
+            command.add(batchFile.toString());
+            command.add(resultFile.toString());
+
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            int exit = process.waitFor();
+            if (exit != 0) {
+                throw new IOException("Simulation of " + policy + " failed with exit code " + exit);
+            }
+            return SimulationResult.parse(new String(Files.readAllBytes(resultFile), StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(batchFile);
+            Files.deleteIfExists(resultFile);
+        }
+    }
+}
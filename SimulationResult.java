@@ -0,0 +1,59 @@
+/**
+ * Performance metrics of one simulated scheduling policy.
+ */
+public class SimulationResult {
+
+    private final String policy;
+    private final double executionTime; // Finish time of the last cloudlet
+    private final double responseTime; // Average cloudlet response time
+    private final double energyConsumption; // Host energy consumption in kWh
+    private final double energyCost; // Host energy cost in $
+
+    public SimulationResult(String policy, double executionTime, double responseTime, double energyConsumption,
+            double energyCost) {
+        this.policy = policy;
+        this.executionTime = executionTime;
+        this.responseTime = responseTime;
+        this.energyConsumption = energyConsumption;
+        this.energyCost = energyCost;
+    }
+
+    /**
+     * Parse a result written by toLine()
+     */
+    public static SimulationResult parse(String line) {
+        String[] fields = line.trim().split(",");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Not a simulation result: " + line);
+        }
+        return new SimulationResult(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+    }
+
+    /**
+     * One comma separated line holding the exact values
+     */
+    public String toLine() {
+        return policy + "," + executionTime + "," + responseTime + "," + energyConsumption + "," + energyCost;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public double getExecutionTime() {
+        return executionTime;
+    }
+
+    public double getResponseTime() {
+        return responseTime;
+    }
+
+    public double getEnergyConsumption() {
+        return energyConsumption;
+    }
+
+    public double getEnergyCost() {
+        return energyCost;
+    }
+}
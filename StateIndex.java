@@ -0,0 +1,141 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Dense index of visited state keys.
+ *
+ * An open addressing hash table of primitive arrays maps a 64 bit state key
+ * to the order it was first seen in, so a Q table only needs rows for the
+ * states that were visited. Training workers share one index: a new key
+ * claims its slot with a compare-and-set and then publishes its index, and a
+ * lookup neither locks nor allocates.
+ */
+public class StateIndex {
+
+    private static final long EMPTY = 0; // Key of an empty slot
+    private static final long ZERO_KEY = 0x9e3779b97f4a7c15L; // Stored in place of key 0
+    private static final int UNPUBLISHED = 0; // Slot claimed, index not set yet
+    private static final int FULL = -1; // Slot claimed after the index was full
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray keys; // Key of every slot
+    private final AtomicIntegerArray indexes; // Index + 1 of every slot, UNPUBLISHED or FULL
+    private final AtomicLongArray keyByIndex; // Key of every index
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity max number of indexed states
+     */
+    public StateIndex(int capacity) {
+        if (capacity < 1 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("State capacity must be between 1 and 2^29");
+        }
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1; // At most half full
+        this.capacity = capacity;
+        this.mask = slots - 1;
+        this.keys = new AtomicLongArray(slots);
+        this.indexes = new AtomicIntegerArray(slots);
+        this.keyByIndex = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Index of a key, added when it is new
+     *
+     * @return index from 0, -1 when the key is new and the index is full
+     */
+    public int getOrAdd(long key) {
+        key = key == EMPTY ? ZERO_KEY : key;
+        int slot = slot(key);
+        while (true) {
+            long k = keys.get(slot);
+            if (k == key) {
+                return await(slot);
+            }
+            if (k == EMPTY) {
+                if (size.get() >= capacity) {
+                    return -1;
+                }
+                if (!keys.compareAndSet(slot, EMPTY, key)) {
+                    continue; // Another key took the slot, look at it again
+                }
+                int index = size.getAndIncrement();
+                if (index >= capacity) {
+                    indexes.set(slot, FULL);
+                    return -1;
+                }
+                keyByIndex.set(index, key);
+                indexes.set(slot, index + 1);
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Index of a key
+     *
+     * @return index from 0, -1 when the key was never added
+     */
+    public int get(long key) {
+        key = key == EMPTY ? ZERO_KEY : key;
+        int slot = slot(key);
+        while (true) {
+            long k = keys.get(slot);
+            if (k == key) {
+                return await(slot);
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int await(int slot) {
+        int value;
+        while ((value = indexes.get(slot)) == UNPUBLISHED) {
+            Thread.yield(); // The adding thread is between claiming the slot and publishing the index
+        }
+        return value == FULL ? -1 : value - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Key of an index, as passed to getOrAdd()
+     */
+    public long getKey(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("State index " + index + " of " + size());
+        }
+        long key = keyByIndex.get(index);
+        return key == ZERO_KEY ? EMPTY : key;
+    }
+
+    /**
+     * Number of indexed states
+     */
+    public int size() {
+        return Math.min(size.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Remove every key. Must not run at the same time as other methods.
+     */
+    public void clear() {
+        for (int i = 0; i < keys.length(); i++) {
+            keys.set(i, EMPTY);
+            indexes.set(i, UNPUBLISHED);
+        }
+        size.set(0);
+    }
+}
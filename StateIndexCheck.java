@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Concurrent check of StateIndex.
+ *
+ * Several threads add the same keys in their own random order at the same
+ * time, to an index with room for all of them or for only part of them.
+ * Every thread must get the same index for a key, the indexes must be dense
+ * and getKey() and get() must agree with them.
+ */
+public class StateIndexCheck {
+
+    public static void main(String[] args) throws Exception {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            SelfCheck.run("StateIndex", args, 100, (rand, round) -> {
+                long[] keys = new long[1 + rand.nextInt(5000)];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = i == 0 ? 0 : rand.nextLong(); // Key 0 is stored in place
+                }
+                int capacity = rand.nextBoolean() ? keys.length : 1 + rand.nextInt(keys.length);
+                StateIndex index = new StateIndex(capacity);
+                CyclicBarrier start = new CyclicBarrier(threads);
+                List<Future<int[]>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    long[] order = shuffle(keys, new Random(rand.nextLong()));
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        int[] found = new int[order.length];
+                        for (int i = 0; i < order.length; i++) {
+                            found[i] = index.getOrAdd(order[i]);
+                        }
+                        Map<Long, Integer> byKey = new HashMap<>();
+                        for (int i = 0; i < order.length; i++) {
+                            byKey.put(order[i], found[i]);
+                        }
+                        int[] byPosition = new int[keys.length];
+                        for (int i = 0; i < keys.length; i++) {
+                            byPosition[i] = byKey.get(keys[i]);
+                        }
+                        return byPosition;
+                    }));
+                }
+                int[] expected = new int[keys.length];
+                Arrays.fill(expected, -1);
+                for (Future<int[]> result : results) {
+                    int[] found = result.get();
+                    for (int i = 0; i < keys.length; i++) {
+                        if (found[i] < 0) {
+                            continue; // Only when the index was filled at the same time
+                        }
+                        SelfCheck.check(expected[i] < 0 || expected[i] == found[i],
+                                "Threads got distinct indexes for a key");
+                        expected[i] = found[i];
+                    }
+                }
+                compare(index, keys, expected, capacity);
+                return (long) threads * keys.length;
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long[] shuffle(long[] keys, Random rand) {
+        long[] order = keys.clone();
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            long key = order[i];
+            order[i] = order[j];
+            order[j] = key;
+        }
+        return order;
+    }
+
+    private static void compare(StateIndex index, long[] keys, int[] expected, int capacity) {
+        SelfCheck.check(index.size() == Math.min(keys.length, capacity), "Size " + index.size() + " of " + keys.length
+                + " keys and capacity " + capacity);
+        boolean[] used = new boolean[index.size()];
+        for (int i = 0; i < keys.length; i++) {
+            SelfCheck.check(index.get(keys[i]) == expected[i], "get() differs from getOrAdd() for key " + keys[i]);
+            SelfCheck.check(index.getOrAdd(keys[i]) == expected[i], "getOrAdd() of a known key changed");
+            if (expected[i] >= 0) {
+                SelfCheck.check(!used[expected[i]], "Index " + expected[i] + " given to two keys");
+                used[expected[i]] = true;
+                SelfCheck.check(index.getKey(expected[i]) == keys[i], "getKey() differs for index " + expected[i]);
+            }
+        }
+        for (int i = 0; i < used.length; i++) {
+            SelfCheck.check(used[i], "Index " + i + " has no key");
+        }
+    }
+}
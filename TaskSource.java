@@ -0,0 +1,44 @@
+import java.util.SplittableRandom;
+
+/**
+ * Source of the task batches of training episodes and test batches.
+ *
+ * Every training worker draws its batches from the source returned by
+ * forWorker(), which is the shared source itself unless the source splits its
+ * tasks between the workers. A shared source must be thread safe.
+ */
+public interface TaskSource {
+
+    /**
+     * Fill a batch with task type indexes
+     *
+     * @param rand random generator of the calling worker
+     * @param tasks receives the task types
+     * @param n number of tasks
+     */
+    void next(SplittableRandom rand, int[] tasks, int n);
+
+    /**
+     * Source of one training worker, called before the worker runs
+     *
+     * @param worker worker index, from 0
+     * @param workers number of workers
+     */
+    default TaskSource forWorker(int worker, int workers) {
+        return this;
+    }
+
+    /**
+     * Uniformly random task types, drawn from the random generator of the
+     * calling worker
+     *
+     * @param tasktype number of task types
+     */
+    static TaskSource uniform(int tasktype) {
+        return (rand, tasks, n) -> {
+            for (int j = 0; j < n; j++) {
+                tasks[j] = rand.nextInt(tasktype);
+            }
+        };
+    }
+}
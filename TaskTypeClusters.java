@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+/**
+ * On-line clustering of job lengths into task types.
+ *
+ * Sequential k-means on the logarithm of the length, since trace job lengths
+ * span orders of magnitude: every added length moves its nearest centroid
+ * towards it by 1 / (jobs of the centroid). The first distinct lengths seed
+ * the centroids. Once frozen, the centroids are sorted, task type 0 being
+ * the shortest, and lengths are only classified.
+ */
+public class TaskTypeClusters {
+
+    private final double[] centroid; // Mean log length of every cluster
+    private final long[] count; // Jobs of every cluster
+    private int size; // Clusters seeded so far
+    private boolean frozen;
+
+    /**
+     * @param k max number of task types
+     */
+    public TaskTypeClusters(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("At least 1 task type is needed");
+        }
+        this.centroid = new double[k];
+        this.count = new long[k];
+    }
+
+    /**
+     * Add a job length
+     *
+     * @param length job length, positive
+     * @return task type of the length
+     */
+    public int add(long length) {
+        if (frozen) {
+            throw new IllegalStateException("Task types are frozen");
+        }
+        double x = Math.log(length);
+        int nearest = nearest(x);
+        if (size < centroid.length && (nearest < 0 || centroid[nearest] != x)) {
+            centroid[size] = x; // Seed a new cluster
+            count[size] = 1;
+            return size++;
+        }
+        count[nearest]++;
+        centroid[nearest] += (x - centroid[nearest]) / count[nearest];
+        return nearest;
+    }
+
+    /**
+     * Sort the clusters by length and stop adapting them
+     */
+    public void freeze() {
+        if (size == 0) {
+            throw new IllegalStateException("No job length was added");
+        }
+        double[] sorted = Arrays.copyOf(centroid, size);
+        Arrays.sort(sorted);
+        System.arraycopy(sorted, 0, centroid, 0, size);
+        frozen = true;
+    }
+
+    /**
+     * Task type of a job length: the cluster with the nearest log length
+     */
+    public int classify(long length) {
+        return nearest(Math.log(length));
+    }
+
+    private int nearest(double x) {
+        int best = -1;
+        double bestdistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            double distance = Math.abs(x - centroid[i]);
+            if (distance < bestdistance) {
+                bestdistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Number of task types
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Task length of every task type: the geometric mean length of its cluster
+     */
+    public int[] getLengths() {
+        int[] lengths = new int[size];
+        for (int i = 0; i < size; i++) {
+            lengths[i] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(Math.exp(centroid[i]))));
+        }
+        return lengths;
+    }
+}
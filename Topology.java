@@ -0,0 +1,465 @@
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Datacenters, hosts and VMs of a simulation, and the host of every VM.
+ *
+ * Every VM is one Q learning state and action, so the Q table covers the VMs
+ * of every host and every datacenter, and its size is bounded by
+ * QLearningScheduler.MAX_CELLS. Hosts are not part of the state or the
+ * action: the host of a VM only counts for the host energy and the energy
+ * reward, through the power model of the host. VMs are placed on hosts when
+ * the topology is built, once for all VMs, and the datacenters create every
+ * VM on its placed host, so no host or VM list is searched per VM or per
+ * cloudlet.
+ *
+ * Hosts and VMs are indexed from 0 over the whole topology, in datacenter
+ * order, and the VM index is the CloudSim VM id.
+ */
+public class Topology {
+
+    // Host and VM of the default topology
+    final static int defaultHostMips = 5000;
+    final static int defaultHostRam = 20480; // host memory (MB)
+    final static long defaultHostBw = 100000;
+    final static long defaultHostStorage = 1000000; // host storage
+    final static int defaultVmRam = 512; // vm memory (MB)
+    final static long defaultVmBw = 1000;
+    final static long defaultVmSize = 10000; // image size (MB)
+
+    private final String[] datacenters; // Name of every datacenter
+    private final int[] hostdatacenter; // Datacenter of every host
+    private final int[] hostpes; // Pes of every host
+    private final int[] hostpemips; // MIPS of every host Pe
+    private final int[] hostram; // Memory of every host (MB)
+    private final long[] hostbw; // Bandwidth of every host
+    private final long[] hoststorage; // Storage of every host (MB)
+    private final String[] hostpower; // Power curve host type of every host, null for the default power model
+    private final int[] vmmips; // MIPS of every VM
+    private final int[] vmram; // Memory of every VM (MB)
+    private final long[] vmbw; // Bandwidth of every VM
+    private final long[] vmsize; // Image size of every VM (MB)
+    private final int[] vmhost; // Host of every VM
+
+    private Topology(String[] datacenters, int[] hostdatacenter, int[] hostpes, int[] hostpemips, int[] hostram,
+            long[] hostbw, long[] hoststorage, String[] hostpower, int[] vmmips, int[] vmram, long[] vmbw,
+            long[] vmsize, int[] vmhost) {
+        this.datacenters = datacenters;
+        this.hostdatacenter = hostdatacenter;
+        this.hostpes = hostpes;
+        this.hostpemips = hostpemips;
+        this.hostram = hostram;
+        this.hostbw = hostbw;
+        this.hoststorage = hoststorage;
+        this.hostpower = hostpower;
+        this.vmmips = vmmips;
+        this.vmram = vmram;
+        this.vmbw = vmbw;
+        this.vmsize = vmsize;
+        this.vmhost = vmhost;
+    }
+
+    /**
+     * Default topology: one datacenter with one 5000 MIPS host running every VM
+     *
+     * @param vmmips MIPS of every VM
+     */
+    public static Topology single(int[] vmmips) {
+        int vmcount = vmmips.length;
+        int[] vmram = new int[vmcount];
+        long[] vmbw = new long[vmcount];
+        long[] vmsize = new long[vmcount];
+        Arrays.fill(vmram, defaultVmRam);
+        Arrays.fill(vmbw, defaultVmBw);
+        Arrays.fill(vmsize, defaultVmSize);
+        return new Topology(new String[] { "Datacenter_0" }, new int[1], new int[] { 1 },
+                new int[] { defaultHostMips }, new int[] { defaultHostRam }, new long[] { defaultHostBw },
+                new long[] { defaultHostStorage }, new String[1], vmmips.clone(), vmram, vmbw, vmsize,
+                new int[vmcount]);
+    }
+
+    /**
+     * Load a topology file. Every line is one of
+     *
+     * <pre>
+     * datacenter,&lt;name&gt;,&lt;copies&gt;
+     * host,&lt;count&gt;,&lt;pes&gt;,&lt;mips per pe&gt;,&lt;ram MB&gt;,&lt;bw&gt;,&lt;storage MB&gt;[,&lt;power curve host type&gt;]
+     * vm,&lt;count&gt;,&lt;mips&gt;,&lt;ram MB&gt;,&lt;bw&gt;,&lt;image size MB&gt;
+     * </pre>
+     *
+     * Host and VM lines belong to the datacenter line above them, and a
+     * datacenter is repeated copies times, named name_0, name_1, ... Hosts
+     * without a power curve host type use the default power model. VMs have
+     * one Pe and are placed round robin on the hosts of their datacenter they
+     * fit on. Empty lines and lines starting with # are skipped.
+     */
+    public static Topology load(Path file) throws IOException {
+        List<Block> blocks = new ArrayList<Block>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = fields[i].trim();
+                }
+                try {
+                    if (fields[0].equals("datacenter") && fields.length == 3) {
+                        blocks.add(new Block(fields[1], positive(fields[2])));
+                    } else if (blocks.isEmpty()) {
+                        throw new IllegalArgumentException("Host or VM line before the first datacenter line");
+                    } else if (fields[0].equals("host") && (fields.length == 7 || fields.length == 8)) {
+                        Block block = blocks.get(blocks.size() - 1);
+                        block.hosts.add(new long[] { positive(fields[1]), positive(fields[2]), positive(fields[3]),
+                                positive(fields[4]), positive(fields[5]), positive(fields[6]) });
+                        block.hostpower.add(fields.length == 8 ? fields[7] : null);
+                    } else if (fields[0].equals("vm") && fields.length == 6) {
+                        blocks.get(blocks.size() - 1).vms.add(new long[] { positive(fields[1]), positive(fields[2]),
+                                positive(fields[3]), positive(fields[4]), positive(fields[5]) });
+                    } else {
+                        throw new IllegalArgumentException("Unknown line " + line);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        if (blocks.isEmpty()) {
+            throw new IOException("No datacenter in " + file);
+        }
+        try {
+            return build(blocks);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int positive(String field) {
+        int value = Integer.parseInt(field);
+        if (value <= 0) {
+            throw new IllegalArgumentException("Not a positive number: " + field);
+        }
+        return value;
+    }
+
+    /**
+     * Expand the datacenter blocks and place the VMs
+     */
+    private static Topology build(List<Block> blocks) {
+        int dccount = 0;
+        long hostcount = 0;
+        long vmcount = 0;
+        for (Block block : blocks) {
+            dccount += block.copies;
+            hostcount += block.copies * block.count(block.hosts);
+            vmcount += block.copies * block.count(block.vms);
+        }
+        if (hostcount > Integer.MAX_VALUE || vmcount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many hosts or VMs");
+        }
+
+        String[] datacenters = new String[dccount];
+        int[] hostdatacenter = new int[(int) hostcount];
+        int[] hostpes = new int[(int) hostcount];
+        int[] hostpemips = new int[(int) hostcount];
+        int[] hostram = new int[(int) hostcount];
+        long[] hostbw = new long[(int) hostcount];
+        long[] hoststorage = new long[(int) hostcount];
+        String[] hostpower = new String[(int) hostcount];
+        int[] vmmips = new int[(int) vmcount];
+        int[] vmram = new int[(int) vmcount];
+        long[] vmbw = new long[(int) vmcount];
+        long[] vmsize = new long[(int) vmcount];
+        int[] vmhost = new int[(int) vmcount];
+
+        int dc = 0;
+        int host = 0;
+        int vm = 0;
+        for (Block block : blocks) {
+            for (int copy = 0; copy < block.copies; copy++, dc++) {
+                datacenters[dc] = block.name + "_" + copy;
+                int firsthost = host;
+                for (int k = 0; k < block.hosts.size(); k++) {
+                    long[] h = block.hosts.get(k);
+                    for (int c = 0; c < h[0]; c++, host++) {
+                        hostdatacenter[host] = dc;
+                        hostpes[host] = (int) h[1];
+                        hostpemips[host] = (int) h[2];
+                        hostram[host] = (int) h[3];
+                        hostbw[host] = h[4];
+                        hoststorage[host] = h[5];
+                        hostpower[host] = block.hostpower.get(k);
+                    }
+                }
+                int firstvm = vm;
+                for (long[] v : block.vms) {
+                    for (int c = 0; c < v[0]; c++, vm++) {
+                        vmmips[vm] = (int) v[1];
+                        vmram[vm] = (int) v[2];
+                        vmbw[vm] = v[3];
+                        vmsize[vm] = v[4];
+                    }
+                }
+                place(datacenters[dc], firsthost, host, placementOrder(block, firstvm), hostpes, hostpemips,
+                        hostram, hostbw, hoststorage, vmmips, vmram, vmbw, vmsize, vmhost);
+            }
+        }
+        return new Topology(datacenters, hostdatacenter, hostpes, hostpemips, hostram, hostbw, hoststorage,
+                hostpower, vmmips, vmram, vmbw, vmsize, vmhost);
+    }
+
+    /**
+     * VMs of one datacenter copy, the VM lines with the most MIPS first, so
+     * large VMs find a host before the small ones fill them up
+     */
+    private static int[] placementOrder(Block block, int firstvm) {
+        int[] linevm = new int[block.vms.size()]; // First VM of every line
+        Integer[] lines = new Integer[block.vms.size()];
+        int vm = firstvm;
+        for (int l = 0; l < lines.length; l++) {
+            lines[l] = l;
+            linevm[l] = vm;
+            vm += block.vms.get(l)[0];
+        }
+        Arrays.sort(lines, (a, b) -> Long.compare(block.vms.get(b)[1], block.vms.get(a)[1]));
+        int[] order = new int[vm - firstvm];
+        int n = 0;
+        for (int l : lines) {
+            for (int c = 0; c < block.vms.get(l)[0]; c++) {
+                order[n++] = linevm[l] + c;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Place the VMs of one datacenter round robin on the hosts with room left.
+     * The next VM tries the host after the last used one, so a full pass over
+     * the hosts only happens when most of them are full.
+     *
+     * @param order VMs of the datacenter, in placement order
+     */
+    private static void place(String datacenter, int firsthost, int endhost, int[] order, int[] hostpes,
+            int[] hostpemips, int[] hostram, long[] hostbw, long[] hoststorage, int[] vmmips, int[] vmram,
+            long[] vmbw, long[] vmsize, int[] vmhost) {
+        int hostcount = endhost - firsthost;
+        if (hostcount == 0 && order.length > 0) {
+            throw new IllegalArgumentException("No host for the VMs of " + datacenter);
+        }
+        // Capacity left on every host
+        long[] freemips = new long[hostcount];
+        long[] freeram = new long[hostcount];
+        long[] freebw = new long[hostcount];
+        long[] freestorage = new long[hostcount];
+        for (int h = 0; h < hostcount; h++) {
+            freemips[h] = (long) hostpes[firsthost + h] * hostpemips[firsthost + h];
+            freeram[h] = hostram[firsthost + h];
+            freebw[h] = hostbw[firsthost + h];
+            freestorage[h] = hoststorage[firsthost + h];
+        }
+        int next = 0;
+        for (int vm : order) {
+            int tried = 0;
+            while (tried < hostcount && (vmmips[vm] > hostpemips[firsthost + next] || vmmips[vm] > freemips[next]
+                    || vmram[vm] > freeram[next] || vmbw[vm] > freebw[next] || vmsize[vm] > freestorage[next])) {
+                next = (next + 1) % hostcount;
+                tried++;
+            }
+            if (tried == hostcount) {
+                throw new IllegalArgumentException("No host of " + datacenter + " has room for VM " + vm);
+            }
+            freemips[next] -= vmmips[vm];
+            freeram[next] -= vmram[vm];
+            freebw[next] -= vmbw[vm];
+            freestorage[next] -= vmsize[vm];
+            vmhost[vm] = firsthost + next;
+            next = (next + 1) % hostcount;
+        }
+    }
+
+    /**
+     * Write the topology to a stream, as read by read()
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(datacenters.length);
+        for (String name : datacenters) {
+            out.writeUTF(name);
+        }
+        out.writeInt(hostpes.length);
+        for (int h = 0; h < hostpes.length; h++) {
+            out.writeInt(hostdatacenter[h]);
+            out.writeInt(hostpes[h]);
+            out.writeInt(hostpemips[h]);
+            out.writeInt(hostram[h]);
+            out.writeLong(hostbw[h]);
+            out.writeLong(hoststorage[h]);
+            out.writeUTF(hostpower[h] == null ? "" : hostpower[h]);
+        }
+        out.writeInt(vmmips.length);
+        for (int v = 0; v < vmmips.length; v++) {
+            out.writeInt(vmmips[v]);
+            out.writeInt(vmram[v]);
+            out.writeLong(vmbw[v]);
+            out.writeLong(vmsize[v]);
+            out.writeInt(vmhost[v]);
+        }
+    }
+
+    /**
+     * Read a topology written by write()
+     */
+    static Topology read(DataInput in) throws IOException {
+        String[] datacenters = new String[in.readInt()];
+        for (int d = 0; d < datacenters.length; d++) {
+            datacenters[d] = in.readUTF();
+        }
+        int hostcount = in.readInt();
+        int[] hostdatacenter = new int[hostcount];
+        int[] hostpes = new int[hostcount];
+        int[] hostpemips = new int[hostcount];
+        int[] hostram = new int[hostcount];
+        long[] hostbw = new long[hostcount];
+        long[] hoststorage = new long[hostcount];
+        String[] hostpower = new String[hostcount];
+        for (int h = 0; h < hostcount; h++) {
+            hostdatacenter[h] = in.readInt();
+            hostpes[h] = in.readInt();
+            hostpemips[h] = in.readInt();
+            hostram[h] = in.readInt();
+            hostbw[h] = in.readLong();
+            hoststorage[h] = in.readLong();
+            String power = in.readUTF();
+            hostpower[h] = power.isEmpty() ? null : power;
+        }
+        int vmcount = in.readInt();
+        int[] vmmips = new int[vmcount];
+        int[] vmram = new int[vmcount];
+        long[] vmbw = new long[vmcount];
+        long[] vmsize = new long[vmcount];
+        int[] vmhost = new int[vmcount];
+        for (int v = 0; v < vmcount; v++) {
+            vmmips[v] = in.readInt();
+            vmram[v] = in.readInt();
+            vmbw[v] = in.readLong();
+            vmsize[v] = in.readLong();
+            vmhost[v] = in.readInt();
+        }
+        return new Topology(datacenters, hostdatacenter, hostpes, hostpemips, hostram, hostbw, hoststorage,
+                hostpower, vmmips, vmram, vmbw, vmsize, vmhost);
+    }
+
+    public int getDatacenterCount() {
+        return datacenters.length;
+    }
+
+    public String getDatacenterName(int datacenter) {
+        return datacenters[datacenter];
+    }
+
+    public int getHostCount() {
+        return hostpes.length;
+    }
+
+    public int getHostDatacenter(int host) {
+        return hostdatacenter[host];
+    }
+
+    public int getHostPes(int host) {
+        return hostpes[host];
+    }
+
+    public int getHostPeMips(int host) {
+        return hostpemips[host];
+    }
+
+    public int getHostRam(int host) {
+        return hostram[host];
+    }
+
+    public long getHostBw(int host) {
+        return hostbw[host];
+    }
+
+    public long getHostStorage(int host) {
+        return hoststorage[host];
+    }
+
+    /**
+     * Power curve host type of a host, null for the default power model
+     */
+    public String getHostPowerType(int host) {
+        return hostpower[host];
+    }
+
+    public int getVmCount() {
+        return vmmips.length;
+    }
+
+    /**
+     * MIPS of every VM, the Q learning states
+     */
+    public int[] getVmMips() {
+        return vmmips.clone();
+    }
+
+    public int getVmMips(int vm) {
+        return vmmips[vm];
+    }
+
+    public int getVmRam(int vm) {
+        return vmram[vm];
+    }
+
+    public long getVmBw(int vm) {
+        return vmbw[vm];
+    }
+
+    public long getVmSize(int vm) {
+        return vmsize[vm];
+    }
+
+    public int getVmHost(int vm) {
+        return vmhost[vm];
+    }
+
+    public int getVmDatacenter(int vm) {
+        return hostdatacenter[vmhost[vm]];
+    }
+
+    /**
+     * One datacenter line of a topology file with its host and VM lines
+     */
+    private static class Block {
+        final String name;
+        final int copies;
+        final List<long[]> hosts = new ArrayList<long[]>(); // count, pes, mips per pe, ram, bw, storage
+        final List<String> hostpower = new ArrayList<String>(); // Power curve host type of every host line
+        final List<long[]> vms = new ArrayList<long[]>(); // count, mips, ram, bw, size
+
+        Block(String name, int copies) {
+            this.name = name;
+            this.copies = copies;
+        }
+
+        long count(List<long[]> lines) {
+            long count = 0;
+            for (long[] line : lines) {
+                count += line[0];
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.DatacenterBroker;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.UtilizationModel;
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Broker of a Topology with many datacenters, hosts and VMs.
+ *
+ * Every VM is created in the datacenter of its host at once, instead of
+ * trying the datacenters one after the other. VMs are found by id in an
+ * array, so creating the VMs and submitting the cloudlets takes one pass,
+ * where DatacenterBroker searches the VM list for every VM acknowledgement
+ * and every bound cloudlet.
+ *
+ * Tasks with a precomputed VM assignment, like the one of
+ * QLearningScheduler.schedule(), are turned into bound cloudlets by
+ * submitTasks() in one pass. Cloudlets are indexed by id, so binding a
+ * cloudlet does not search the cloudlet list either.
+ */
+public class TopologyBroker extends DatacenterBroker {
+
+    private final Topology topology;
+    private final int[] datacenterIds; // CloudSim id of every topology datacenter
+    private final UtilizationModel utilizationModel = new UtilizationModelFull(); // Shared by every task cloudlet
+    private Cloudlet[] cloudlets = new Cloudlet[0]; // Cloudlet of every id created by submitTasks()
+    private int cloudletcount; // Cloudlets created by submitTasks()
+    private Vm[] vms; // VM of every VM id
+    private boolean requested; // VMs were sent to their datacenters
+
+    /**
+     * @param name broker name
+     * @param topology datacenters, hosts and VMs
+     * @param datacenterIds CloudSim id of every topology datacenter
+     */
+    public TopologyBroker(String name, Topology topology, int[] datacenterIds) throws Exception {
+        super(name);
+        if (datacenterIds.length != topology.getDatacenterCount()) {
+            throw new IllegalArgumentException("Expected " + topology.getDatacenterCount() + " datacenter ids");
+        }
+        this.topology = topology;
+        this.datacenterIds = datacenterIds.clone();
+    }
+
+    /**
+     * Create, bind and submit one cloudlet per task. Cloudlet ids follow the
+     * ids of the cloudlets created by earlier calls.
+     *
+     * @param assignment VM id of every task
+     * @param tasks task type of every task
+     * @param tasktypelist task length of every task type
+     * @return created cloudlets, in task order
+     */
+    public List<Cloudlet> submitTasks(int[] assignment, int[] tasks, int[] tasktypelist) {
+        if (assignment.length != tasks.length) {
+            throw new IllegalArgumentException("Expected a VM for each of the " + tasks.length + " tasks");
+        }
+        int first = cloudletcount;
+        if (first + tasks.length > cloudlets.length) {
+            cloudlets = Arrays.copyOf(cloudlets, Math.max(first + tasks.length, cloudlets.length * 2));
+        }
+        List<Cloudlet> created = new ArrayList<Cloudlet>(tasks.length);
+        int userId = getId();
+        for (int i = 0; i < tasks.length; i++) {
+            Cloudlet cloudlet = new Cloudlet(first + i, tasktypelist[tasks[i]], 1, 3000, 3000, utilizationModel,
+                    utilizationModel, utilizationModel);
+            cloudlet.setUserId(userId);
+            cloudlet.setVmId(assignment[i]);
+            cloudlets[first + i] = cloudlet;
+            created.add(cloudlet);
+        }
+        cloudletcount = first + tasks.length;
+        List<Cloudlet> received = getCloudletReceivedList();
+        if (received instanceof ArrayList) {
+            ((ArrayList<Cloudlet>) received).ensureCapacity(received.size() + tasks.length);
+        }
+        submitCloudletList(created);
+        return created;
+    }
+
+    /**
+     * Cloudlet created by submitTasks(), null for other ids
+     */
+    public Cloudlet getCloudlet(int cloudletId) {
+        return cloudletId >= 0 && cloudletId < cloudletcount ? cloudlets[cloudletId] : null;
+    }
+
+    /**
+     * Bind a cloudlet created by submitTasks() through the id index, other
+     * cloudlets through the cloudlet list
+     */
+    @Override
+    public void bindCloudletToVm(int cloudletId, int vmId) {
+        Cloudlet cloudlet = getCloudlet(cloudletId);
+        if (cloudlet == null) {
+            super.bindCloudletToVm(cloudletId, vmId);
+        } else {
+            cloudlet.setVmId(vmId);
+        }
+    }
+
+    /**
+     * Called for the first datacenter once all datacenters are known: send
+     * every VM to the datacenter of its host
+     */
+    @Override
+    protected void createVmsInDatacenter(int datacenterId) {
+        if (requested) {
+            super.createVmsInDatacenter(datacenterId);
+            return;
+        }
+        requested = true;
+        List<Vm> vmList = getVmList();
+        vms = new Vm[topology.getVmCount()];
+        int requestedVms = 0;
+        for (Vm vm : vmList) {
+            if (vm.getId() < 0 || vm.getId() >= vms.length) {
+                Log.printLine(CloudSim.clock() + ": " + getName() + ": VM #" + vm.getId() + " is not in the topology");
+                continue;
+            }
+            vms[vm.getId()] = vm;
+            sendNow(datacenterIds[topology.getVmDatacenter(vm.getId())], CloudSimTags.VM_CREATE_ACK, vm);
+            requestedVms++;
+        }
+        for (int id : datacenterIds) {
+            getDatacenterRequestedIdsList().add(id);
+        }
+        setVmsRequested(requestedVms);
+        setVmsAcks(0);
+    }
+
+    @Override
+    protected void processVmCreate(SimEvent ev) {
+        int[] data = (int[]) ev.getData();
+        int datacenterId = data[0];
+        int vmId = data[1];
+        if (data[2] == CloudSimTags.TRUE) {
+            getVmsToDatacentersMap().put(vmId, datacenterId);
+            getVmsCreatedList().add(vms[vmId]);
+        } else {
+            Log.printLine(CloudSim.clock() + ": " + getName() + ": Creation of VM #" + vmId
+                    + " failed in Datacenter #" + datacenterId);
+        }
+        incrementVmsAcks();
+
+        if (getVmsAcks() < getVmsRequested()) {
+            return;
+        }
+        Log.printLine(CloudSim.clock() + ": " + getName() + ": " + getVmsCreatedList().size() + " of "
+                + getVmsRequested() + " VMs created");
+        if (getVmsCreatedList().size() > 0) {
+            submitCloudlets();
+        } else {
+            Log.printLine(CloudSim.clock() + ": " + getName() + ": none of the required VMs could be created. Aborting");
+            finishExecution();
+        }
+    }
+
+    /**
+     * Submit every cloudlet to its bound VM, or round robin to the created VMs
+     * when it is not bound. Cloudlets of a VM that was not created stay in the
+     * cloudlet list.
+     */
+    @Override
+    protected void submitCloudlets() {
+        List<Vm> created = getVmsCreatedList();
+        boolean[] isCreated = new boolean[vms.length];
+        for (Vm vm : created) {
+            isCreated[vm.getId()] = true;
+        }
+        List<Cloudlet> cloudlets = getCloudletList();
+        List<Cloudlet> submitted = getCloudletSubmittedList();
+        List<Cloudlet> left = new ArrayList<Cloudlet>();
+        int next = 0; // Next created VM of unbound cloudlets
+        for (Cloudlet cloudlet : cloudlets) {
+            Vm vm;
+            if (cloudlet.getVmId() == -1) {
+                vm = created.get(next);
+                next = (next + 1) % created.size();
+                cloudlet.setVmId(vm.getId());
+            } else if (cloudlet.getVmId() >= 0 && cloudlet.getVmId() < vms.length && isCreated[cloudlet.getVmId()]) {
+                vm = vms[cloudlet.getVmId()];
+            } else {
+                Log.printLine(CloudSim.clock() + ": " + getName() + ": Postponing execution of cloudlet "
+                        + cloudlet.getCloudletId() + ": bound VM not available");
+                left.add(cloudlet);
+                continue;
+            }
+            sendNow(getVmsToDatacentersMap().get(vm.getId()), CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
+            cloudletsSubmitted++;
+            submitted.add(cloudlet);
+        }
+        cloudlets.clear();
+        cloudlets.addAll(left);
+    }
+}
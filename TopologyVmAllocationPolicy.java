@@ -0,0 +1,78 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.VmAllocationPolicy;
+
+/**
+ * Creates every VM on the host the Topology placed it on.
+ *
+ * The host of a VM is looked up by VM id in an array, instead of searching
+ * the host list for free Pes as VmAllocationPolicySimple does per VM.
+ */
+public class TopologyVmAllocationPolicy extends VmAllocationPolicy {
+
+    private final Topology topology;
+    private final int datacenter; // Topology datacenter of this policy
+    private final Host[] hosts; // Host of every topology host index
+    private final Map<String, Host> vmTable = new HashMap<String, Host>(); // Host of every created VM uid
+
+    /**
+     * @param hostList hosts of the datacenter
+     * @param topology host of every VM
+     * @param datacenter topology datacenter of the hosts
+     * @param hosts host of every topology host index, of every datacenter
+     */
+    public TopologyVmAllocationPolicy(List<? extends Host> hostList, Topology topology, int datacenter, Host[] hosts) {
+        super(hostList);
+        this.topology = topology;
+        this.datacenter = datacenter;
+        this.hosts = hosts;
+    }
+
+    /**
+     * Create a VM on its placed host. VMs placed in other datacenters are refused.
+     */
+    @Override
+    public boolean allocateHostForVm(Vm vm) {
+        int id = vm.getId();
+        if (id < 0 || id >= topology.getVmCount() || topology.getVmDatacenter(id) != datacenter) {
+            return false;
+        }
+        return allocateHostForVm(vm, hosts[topology.getVmHost(id)]);
+    }
+
+    @Override
+    public boolean allocateHostForVm(Vm vm, Host host) {
+        if (!host.vmCreate(vm)) {
+            return false;
+        }
+        vmTable.put(vm.getUid(), host);
+        return true;
+    }
+
+    @Override
+    public List<Map<String, Object>> optimizeAllocation(List<? extends Vm> vmList) {
+        return null;
+    }
+
+    @Override
+    public void deallocateHostForVm(Vm vm) {
+        Host host = vmTable.remove(vm.getUid());
+        if (host != null) {
+            host.vmDestroy(vm);
+        }
+    }
+
+    @Override
+    public Host getHost(Vm vm) {
+        return vmTable.get(vm.getUid());
+    }
+
+    @Override
+    public Host getHost(int vmId, int userId) {
+        return vmTable.get(Vm.getUid(userId, vmId));
+    }
+}
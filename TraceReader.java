@@ -0,0 +1,330 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader of the job lengths of a trace file.
+ *
+ * Two line formats are read:
+ *
+ * - swf: Standard Workload Format, whitespace separated fields, lines starting
+ *   with ';' being comments. The length of a job is its run time (field 4)
+ *   times its allocated processors (field 5) times the scale.
+ * - csv: comma separated fields, the length of a job being the value of one
+ *   column times the scale, like the task durations of a cluster trace.
+ *
+ * Lines without a positive length, such as headers, are skipped. A plain
+ * file is memory mapped in windows of CHUNK bytes and a file ending in .gz is
+ * inflated into one reused buffer. Numbers are parsed from the bytes in
+ * place, so reading a line allocates nothing and the trace is never loaded
+ * as a whole. A reader of a plain file can be limited to a byte range: it
+ * reads the lines starting in that range, so the readers of adjacent ranges
+ * read every line once. Not thread safe.
+ */
+public class TraceReader implements Closeable {
+
+    /** Bytes of a memory mapped window, the max length of a line */
+    static final int CHUNK = 1 << 26;
+
+    private static final int GZIP_BUFFER = 1 << 20; // Bytes of the inflated buffer, the max length of a gzip line
+
+    private final Path file;
+    private final boolean swf;
+    private final int column; // Length column of a csv line
+    private final double scale;
+    private final long start; // File offset of the range
+    private final long end; // File offset after the range
+
+    private ByteBuffer buf; // Current window, its position being the start of the next line
+    private boolean eof; // The window holds the end of the file
+    private FileChannel channel; // Mapped file, null for gzip
+    private long windowstart; // File offset of the mapped window
+    private InputStream gzip; // Inflated file, null when mapped
+
+    /**
+     * @param file trace file, gzip compressed when its name ends in .gz
+     * @param swf Standard Workload Format, otherwise csv
+     * @param column length column of a csv line, from 0
+     * @param scale task length of one unit of run time, or of the csv column
+     */
+    public TraceReader(Path file, boolean swf, int column, double scale) throws IOException {
+        this(file, swf, column, scale, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reader of the lines starting in a byte range of a plain file
+     *
+     * @param start file offset of the range
+     * @param end file offset after the range
+     */
+    public TraceReader(Path file, boolean swf, int column, double scale, long start, long end) throws IOException {
+        if (column < 0 || !(scale > 0)) {
+            throw new IllegalArgumentException("Trace column must not be negative and scale must be positive");
+        }
+        if (start < 0 || end < start || start > 0 && isGzip(file)) {
+            throw new IllegalArgumentException("Invalid byte range " + start + " to " + end + " of " + file);
+        }
+        this.file = file;
+        this.swf = swf;
+        this.column = column;
+        this.scale = scale;
+        this.start = start;
+        this.end = end;
+        open();
+    }
+
+    /**
+     * The file is gzip compressed, so it can only be read from its start
+     */
+    public static boolean isGzip(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    private void open() throws IOException {
+        if (isGzip(file)) {
+            gzip = new GZIPInputStream(Files.newInputStream(file), 1 << 16);
+            buf = ByteBuffer.allocate(GZIP_BUFFER);
+            buf.limit(0);
+            eof = false;
+        } else {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            if (start == 0) {
+                map(0);
+            } else {
+                map(Math.min(start - 1, channel.size()));
+                skipLine(); // The line holding the byte before the range belongs to the range before
+            }
+        }
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(CHUNK, channel.size() - start);
+        buf = channel.map(MapMode.READ_ONLY, start, size);
+        windowstart = start;
+        eof = start + size == channel.size();
+    }
+
+    /**
+     * Make more bytes available after the unread ones
+     *
+     * @return false at the end of the file
+     */
+    private boolean refill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (buf.position() == 0 && buf.limit() == buf.capacity()) {
+            throw new IOException("Line longer than " + buf.capacity() + " bytes in " + file);
+        }
+        if (channel != null) {
+            map(windowstart + buf.position()); // The next window starts with the unread line
+            return true;
+        }
+        buf.compact();
+        int n = gzip.read(buf.array(), buf.position(), buf.remaining());
+        if (n < 0) {
+            eof = true;
+        } else {
+            buf.position(buf.position() + n);
+        }
+        buf.flip();
+        return n >= 0;
+    }
+
+    private void skipLine() throws IOException {
+        while (true) {
+            int i = buf.position();
+            while (i < buf.limit() && buf.get(i) != '\n') {
+                i++;
+            }
+            if (i < buf.limit()) {
+                buf.position(i + 1);
+                return;
+            }
+            if (!refill()) {
+                buf.position(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Length of the next job
+     *
+     * @return positive task length, -1 at the end of the trace or range
+     */
+    public long next() throws IOException {
+        while (true) {
+            if (channel != null && windowstart + buf.position() >= end) {
+                return -1;
+            }
+            int start = buf.position();
+            int end = start;
+            int limit = buf.limit();
+            while (end < limit && buf.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit) {
+                if (refill()) {
+                    continue;
+                }
+                start = buf.position(); // Moved to the buffer start by a gzip refill
+                end = buf.limit();
+                if (start == end) {
+                    return -1;
+                }
+                buf.position(end); // Last line, without a line break
+            } else {
+                buf.position(end + 1);
+            }
+            long length = parse(start, end);
+            if (length > 0) {
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Job length of a line
+     *
+     * @return task length, -1 when the line has none
+     */
+    private long parse(int start, int end) {
+        int i = start;
+        while (i < end && isBlank(buf.get(i))) {
+            i++;
+        }
+        if (i == end || buf.get(i) == ';' || buf.get(i) == '#') {
+            return -1; // Empty or comment line
+        }
+        double value = Double.NaN; // Run time or column value
+        double processors = 1;
+        int field = 0;
+        while (i <= end) {
+            int fieldstart = i;
+            if (swf) {
+                while (i < end && !isBlank(buf.get(i))) {
+                    i++;
+                }
+            } else {
+                while (i < end && buf.get(i) != ',') {
+                    i++;
+                }
+            }
+            if (swf && field == 3 || !swf && field == column) {
+                value = parseNumber(fieldstart, i);
+            } else if (swf && field == 4) {
+                processors = parseNumber(fieldstart, i);
+                break;
+            } else if (!swf && field > column) {
+                break;
+            }
+            field++;
+            i++; // Separator
+            if (swf) {
+                while (i < end && isBlank(buf.get(i))) {
+                    i++;
+                }
+            }
+        }
+        double length = value * (processors > 0 ? processors : 1) * scale;
+        return length >= 0.5 ? Math.round(length) : -1; // NaN too
+    }
+
+    /**
+     * Decimal number of a field, with optional quotes, sign, fraction and
+     * exponent
+     *
+     * @return NaN when the field is not a number
+     */
+    private double parseNumber(int start, int end) {
+        while (start < end && (isBlank(buf.get(start)) || buf.get(start) == '"')) {
+            start++;
+        }
+        while (end > start && (isBlank(buf.get(end - 1)) || buf.get(end - 1) == '"')) {
+            end--;
+        }
+        int i = start;
+        boolean negative = i < end && buf.get(i) == '-';
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa < 100000000000000000L) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else if (!fraction) {
+                    exponent++; // Digits beyond long precision
+                }
+                digits++;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < end && (buf.get(i) == 'e' || buf.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && buf.get(i) == '-';
+            if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+                i++;
+            }
+            int e = 0;
+            int edigits = 0;
+            for (; i < end && buf.get(i) >= '0' && buf.get(i) <= '9' && e < 10000; i++, edigits++) {
+                e = e * 10 + (buf.get(i) - '0');
+            }
+            if (edigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+        double value = exponent == 0 ? mantissa : mantissa * Math.pow(10, exponent);
+        return negative ? -value : value;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Start reading from the first line of the range again
+     */
+    public void rewind() throws IOException {
+        close();
+        open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (gzip != null) {
+            gzip.close();
+            gzip = null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Randomized check of TraceReader.
+ *
+ * Writes random swf and csv traces, with comments, headers, blank lines,
+ * CRLF line breaks and a last line with or without a line break, as plain
+ * and gzip files. The job lengths read from every file, and from the byte
+ * ranges of a random split of a plain file, must be the lengths parsed from
+ * the lines with String methods, in trace order.
+ */
+public class TraceReaderCheck {
+
+    private static final double[] SCALES = { 1, 2, 10 }; // Whole numbers keep lengths off the rounding boundary
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("tracereader");
+        Path[] files = { dir.resolve("t.swf"), dir.resolve("t.swf.gz"), dir.resolve("t.csv"),
+                dir.resolve("t.csv.gz") };
+        try {
+            SelfCheck.run("TraceReader", args, 200, (rand, round) -> {
+                boolean swf = round % 2 == 0;
+                int column = swf ? 0 : rand.nextInt(4);
+                double scale = SCALES[rand.nextInt(SCALES.length)];
+                List<String> lines = new ArrayList<>();
+                int count = rand.nextInt(round % 10 == 0 ? 3 : 2000);
+                for (int i = 0; i < count; i++) {
+                    lines.add(nextLine(rand, swf, column));
+                }
+                String newline = rand.nextBoolean() ? "\n" : "\r\n";
+                boolean lastBreak = rand.nextBoolean();
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < lines.size(); i++) {
+                    text.append(lines.get(i));
+                    if (i < lines.size() - 1 || lastBreak) {
+                        text.append(newline);
+                    }
+                }
+                long[] expected = parse(lines, swf, column, scale);
+                byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+                Path plain = files[swf ? 0 : 2];
+                Path gzip = files[swf ? 1 : 3];
+                Files.write(plain, bytes);
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+                    out.write(bytes);
+                }
+                try (TraceReader reader = new TraceReader(plain, swf, column, scale)) {
+                    compare(read(reader), expected, "plain file");
+                    reader.rewind();
+                    compare(read(reader), expected, "rewound plain file");
+                }
+                try (TraceReader reader = new TraceReader(gzip, swf, column, scale)) {
+                    compare(read(reader), expected, "gzip file");
+                    reader.rewind();
+                    compare(read(reader), expected, "rewound gzip file");
+                }
+
+                long[] cuts = new long[rand.nextInt(8) + 2];
+                for (int i = 1; i < cuts.length - 1; i++) {
+                    cuts[i] = (long) (rand.nextDouble() * (bytes.length + 1));
+                }
+                cuts[cuts.length - 1] = bytes.length;
+                Arrays.sort(cuts);
+                List<Long> split = new ArrayList<>();
+                for (int i = 0; i + 1 < cuts.length; i++) {
+                    try (TraceReader reader = new TraceReader(plain, swf, column, scale, cuts[i], cuts[i + 1])) {
+                        for (long length : read(reader)) {
+                            split.add(length);
+                        }
+                    }
+                }
+                long[] joined = new long[split.size()];
+                for (int i = 0; i < joined.length; i++) {
+                    joined[i] = split.get(i);
+                }
+                compare(joined, expected, (cuts.length - 1) + " byte ranges at " + Arrays.toString(cuts));
+                return 5L * expected.length;
+            });
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Random trace line: mostly jobs, some with no positive length, and
+     * comments, headers and blank lines
+     */
+    private static String nextLine(Random rand, boolean swf, int column) {
+        switch (rand.nextInt(20)) {
+            case 0:
+                return swf ? "; Comment " + rand.nextInt() : "# comment";
+            case 1:
+                return rand.nextBoolean() ? "" : " \t";
+            case 2:
+                return swf ? "header line" : "job,length,cpu,mem";
+            default:
+                break;
+        }
+        String[] fields = new String[swf ? 5 + rand.nextInt(10) : column + 1 + rand.nextInt(3)];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = Integer.toString(rand.nextInt(1000));
+        }
+        int lengthField = swf ? 3 : column;
+        fields[lengthField] = nextNumber(rand);
+        if (swf) {
+            fields[4] = rand.nextInt(10) == 0 ? "-1" : Integer.toString(1 + rand.nextInt(64));
+        } else if (rand.nextInt(5) == 0) {
+            fields[lengthField] = "\"" + fields[lengthField] + "\"";
+        }
+        return swf ? "  " + String.join(rand.nextBoolean() ? " " : "\t  ", fields) : String.join(",", fields);
+    }
+
+    private static String nextNumber(Random rand) {
+        switch (rand.nextInt(10)) {
+            case 0:
+                return "-1";
+            case 1:
+                return "0";
+            case 2:
+                return rand.nextInt(1000) + (rand.nextBoolean() ? ".25" : ".75");
+            case 3:
+                return (1 + rand.nextInt(9)) + "e" + rand.nextInt(4);
+            case 4:
+                return "n/a";
+            default:
+                return Integer.toString(1 + rand.nextInt(100000));
+        }
+    }
+
+    /**
+     * Job lengths of the lines, parsed with String methods
+     */
+    private static long[] parse(List<String> lines, boolean swf, int column, double scale) {
+        List<Long> lengths = new ArrayList<>();
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith(";") || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = swf ? trimmed.split("\\s+") : line.split(",", -1);
+            double value = number(fields, swf ? 3 : column);
+            double processors = swf ? number(fields, 4) : 1;
+            double length = value * (processors > 0 ? processors : 1) * scale;
+            if (length >= 0.5) {
+                lengths.add(Math.round(length));
+            }
+        }
+        long[] result = new long[lengths.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = lengths.get(i);
+        }
+        return result;
+    }
+
+    private static double number(String[] fields, int field) {
+        if (field >= fields.length) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(fields[field].trim().replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static long[] read(TraceReader reader) throws IOException {
+        List<Long> lengths = new ArrayList<>();
+        for (long length = reader.next(); length >= 0; length = reader.next()) {
+            lengths.add(length);
+        }
+        long[] result = new long[lengths.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = lengths.get(i);
+        }
+        return result;
+    }
+
+    private static void compare(long[] actual, long[] expected, String source) {
+        SelfCheck.check(actual.length == expected.length, actual.length + " jobs read from the " + source
+                + ", expected " + expected.length);
+        for (int i = 0; i < expected.length; i++) {
+            SelfCheck.check(actual[i] == expected[i], "Job " + i + " of the " + source + " is " + actual[i]
+                    + ", expected " + expected[i]);
+        }
+    }
+}
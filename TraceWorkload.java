@@ -0,0 +1,268 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Task batches streamed from a job trace.
+ *
+ * The job lengths of the first warmup jobs are clustered into task types,
+ * then the trace is streamed: every job becomes the task type of the nearest
+ * cluster, in trace order. Only one window of the trace is in memory per
+ * reader.
+ *
+ * The last holdout share of the trace is the test region, read by
+ * nextTest(), and the training region before it is split between the
+ * training workers, so every worker streams its own part with its own reader
+ * and the same seed and workers train on the same jobs. A plain file is
+ * split by byte ranges. A gzip file can only be read from its start, so
+ * every part reads the whole file and keeps its own jobs: the first holdout
+ * share of every block of HOLDOUT_BLOCK jobs is the test region, and the
+ * training jobs are dealt to the workers in turn. At the end of its part a
+ * reader starts over, so any number of episodes can be fed from it.
+ */
+public class TraceWorkload implements TaskSource, Closeable {
+
+    /** Jobs of a gzip trace over which the test region is spread */
+    static final int HOLDOUT_BLOCK = 1000;
+
+    private final Path file;
+    private final boolean swf;
+    private final int column; // Length column of a csv trace
+    private final double scale;
+    private final double holdout; // Share of the trace held out for test batches
+    private final int holdoutjobs; // Test jobs of every block of a gzip file
+    private final boolean gzip;
+    private final long size; // File bytes, 0 for gzip
+    private final TaskTypeClusters clusters;
+    private final int[] tasktypelist; // Task length of every task type
+
+    private Part[] parts = new Part[0]; // Training part of every worker, created on first use
+    private Part test; // Test region, created on first use
+    private final LongAdder jobs = new LongAdder(); // Training jobs streamed
+    private final LongAdder passes = new LongAdder(); // Training parts read to their end
+
+    private TraceWorkload(Path file, boolean swf, int column, double scale, double holdout, TaskTypeClusters clusters)
+            throws IOException {
+        this.file = file;
+        this.swf = swf;
+        this.column = column;
+        this.scale = scale;
+        this.holdout = holdout;
+        this.holdoutjobs = holdout == 0 ? 0 : (int) Math.max(1, Math.round(holdout * HOLDOUT_BLOCK));
+        this.gzip = TraceReader.isGzip(file);
+        this.size = gzip ? 0 : Files.size(file);
+        this.clusters = clusters;
+        this.tasktypelist = clusters.getLengths();
+    }
+
+    /**
+     * Open a trace and cluster its job lengths
+     *
+     * @param file trace file, gzip compressed when its name ends in .gz
+     * @param format swf or csv, null to choose by the file name: swf for .swf
+     *            and .swf.gz, otherwise csv
+     * @param column length column of a csv trace, from 0
+     * @param scale task length of one unit of run time, or of the csv column
+     * @param tasktypes max number of task types
+     * @param warmup jobs clustered before the task types are fixed
+     * @param holdout share of the trace held out for test batches, 0 to test
+     *            on the whole trace
+     */
+    public static TraceWorkload open(Path file, String format, int column, double scale, int tasktypes, int warmup,
+            double holdout) throws IOException {
+        if (format == null) {
+            String name = file.getFileName().toString();
+            format = name.endsWith(".swf") || name.endsWith(".swf.gz") ? "swf" : "csv";
+        }
+        if (!format.equals("swf") && !format.equals("csv")) {
+            throw new IllegalArgumentException("Unknown trace format: " + format);
+        }
+        if (!(holdout >= 0 && holdout < 1)) {
+            throw new IllegalArgumentException("Trace holdout must be at least 0 and less than 1");
+        }
+        try (TraceReader reader = new TraceReader(file, format.equals("swf"), column, scale)) {
+            TaskTypeClusters clusters = new TaskTypeClusters(tasktypes);
+            for (int i = 0; i < warmup; i++) {
+                long length = reader.next();
+                if (length < 0) {
+                    break;
+                }
+                clusters.add(length);
+            }
+            if (clusters.size() == 0) {
+                throw new IOException("No job length in " + file);
+            }
+            clusters.freeze();
+            return new TraceWorkload(file, format.equals("swf"), column, scale, holdout, clusters);
+        }
+    }
+
+    /**
+     * Training part of a worker. The parts of one worker count are kept open
+     * and go on where they stopped, parts of another count start over.
+     */
+    @Override
+    public synchronized TaskSource forWorker(int worker, int workers) {
+        if (parts.length != workers) {
+            closeParts();
+            parts = new Part[workers];
+        }
+        if (parts[worker] == null) {
+            parts[worker] = openPart(worker, workers);
+        }
+        return parts[worker];
+    }
+
+    private Part openPart(int part, int workers) {
+        try {
+            if (gzip) {
+                return new Part(new TraceReader(file, swf, column, scale), part, workers);
+            }
+            long trainend = Math.round(size * (1 - holdout));
+            if (part < 0) {
+                return new Part(new TraceReader(file, swf, column, scale, holdout > 0 ? trainend : 0, size), part,
+                        workers);
+            }
+            return new Part(new TraceReader(file, swf, column, scale, trainend * part / workers,
+                    trainend * (part + 1) / workers), part, workers);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Next jobs of the training region, as the only worker. The random
+     * generator is not used.
+     */
+    @Override
+    public synchronized void next(SplittableRandom rand, int[] tasks, int n) {
+        forWorker(0, 1).next(rand, tasks, n);
+    }
+
+    /**
+     * Next jobs of the test region
+     */
+    public synchronized void nextTest(int[] tasks, int n) {
+        if (test == null) {
+            test = openPart(-1, 1);
+        }
+        test.next(null, tasks, n);
+    }
+
+    /**
+     * Task length of every task type, shortest first. The array is shared, do
+     * not change it.
+     */
+    public int[] getTaskTypeList() {
+        return tasktypelist;
+    }
+
+    /**
+     * Jobs streamed to training workers
+     */
+    public long getJobCount() {
+        return jobs.sum();
+    }
+
+    /**
+     * Times a training part was read to its end and started over
+     */
+    public long getPasses() {
+        return passes.sum();
+    }
+
+    private void closeParts() {
+        for (Part part : parts) {
+            if (part != null) {
+                part.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeParts();
+        parts = new Part[0];
+        if (test != null) {
+            test.close();
+            test = null;
+        }
+    }
+
+    /**
+     * Jobs of one training worker or of the test region, used by one thread
+     */
+    private class Part implements TaskSource {
+
+        private final TraceReader reader;
+        private final int part; // Training worker, -1 for the test region
+        private final int workers;
+        private long index; // Jobs read in this pass of a gzip file
+        private long trainindex; // Training jobs read in this pass of a gzip file
+
+        Part(TraceReader reader, int part, int workers) {
+            this.reader = reader;
+            this.part = part;
+            this.workers = workers;
+        }
+
+        @Override
+        public void next(SplittableRandom rand, int[] tasks, int n) {
+            try {
+                for (int j = 0; j < n; j++) {
+                    tasks[j] = clusters.classify(nextLength());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (part >= 0) {
+                jobs.add(n);
+            }
+        }
+
+        private long nextLength() throws IOException {
+            boolean rewound = false;
+            while (true) {
+                long length = reader.next();
+                if (length < 0) {
+                    if (rewound) {
+                        throw new IllegalStateException("No job in " + (part < 0 ? "the test region" : "part "
+                                + part + " of " + workers) + " of " + file);
+                    }
+                    reader.rewind(); // Start over
+                    index = 0;
+                    trainindex = 0;
+                    rewound = true;
+                    if (part >= 0) {
+                        passes.increment();
+                    }
+                } else if (!gzip || isOwn()) {
+                    return length;
+                }
+            }
+        }
+
+        /**
+         * The job just read from a gzip file belongs to this part
+         */
+        private boolean isOwn() {
+            boolean testjob = index++ % HOLDOUT_BLOCK < holdoutjobs;
+            if (part < 0) {
+                return testjob || holdoutjobs == 0;
+            }
+            return !testjob && trainindex++ % workers == part;
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Training run configuration.
+ */
+public class TrainingConfig {
+
+    private final int episodes; // Training episodes
+    private final int steps; // Learn steps per episode
+    private final int workers; // Parallel training workers
+    private final int syncEpisodes; // Episodes per worker between Q table merges
+    private final Long seed; // Seed of the worker random generators, null for a random seed
+    private final EpsilonSchedule epsilon; // Exploration rate of every episode, null for the default of the trainer
+    private final double threshold; // Max |delta Q| of a converged round, 0 to run every episode
+    private final ReplayConfig replay; // Experience replay, null to update the Q table at every learn step
+
+    /**
+     * Training run with the default exploration and no early stopping
+     */
+    public TrainingConfig(int episodes, int steps, int workers, int syncEpisodes) {
+        this(episodes, steps, workers, syncEpisodes, null);
+    }
+
+    public TrainingConfig(int episodes, int steps, int workers, int syncEpisodes, Long seed) {
+        this(episodes, steps, workers, syncEpisodes, seed, null, 0);
+    }
+
+    /**
+     * @param epsilon exploration rate of every episode, null for the default
+     *            exploration: uniformly random for a trainer, decaying to the
+     *            QLOConfig epsilon for a QLearningScheduler
+     * @param threshold stop once consecutive training rounds of syncEpisodes
+     *            episodes per worker change no Q value by threshold or more, 0
+     *            to run every episode
+     */
+    public TrainingConfig(int episodes, int steps, int workers, int syncEpisodes, Long seed, EpsilonSchedule epsilon,
+            double threshold) {
+        this(episodes, steps, workers, syncEpisodes, seed, epsilon, threshold, null);
+    }
+
+    /**
+     * @param replay experience replay, null to update the Q table at every learn step
+     */
+    public TrainingConfig(int episodes, int steps, int workers, int syncEpisodes, Long seed, EpsilonSchedule epsilon,
+            double threshold, ReplayConfig replay) {
+        if (episodes < 0 || steps < 0) {
+            throw new IllegalArgumentException("Episodes and steps must not be negative");
+        }
+        if (workers < 1 || syncEpisodes < 1) {
+            throw new IllegalArgumentException("Workers and sync episodes must be positive");
+        }
+        this.episodes = episodes;
+        this.steps = steps;
+        this.workers = workers;
+        this.syncEpisodes = syncEpisodes;
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Convergence threshold must not be negative");
+        }
+        this.seed = seed;
+        this.epsilon = epsilon;
+        this.threshold = threshold;
+        this.replay = replay;
+    }
+
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getSyncEpisodes() {
+        return syncEpisodes;
+    }
+
+    /**
+     * Seed of the training run, null when every run is seeded randomly
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Exploration rate of every episode, 1 when no schedule was set
+     */
+    public EpsilonSchedule getEpsilonSchedule() {
+        return epsilon != null ? epsilon : episode -> 1;
+    }
+
+    /**
+     * An epsilon schedule was set, otherwise the default exploration is used
+     */
+    public boolean hasEpsilonSchedule() {
+        return epsilon != null;
+    }
+
+    /**
+     * Copy of this run with another epsilon schedule
+     */
+    public TrainingConfig withEpsilonSchedule(EpsilonSchedule epsilon) {
+        return new TrainingConfig(episodes, steps, workers, syncEpisodes, seed, epsilon, threshold, replay);
+    }
+
+    public double getConvergenceThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Experience replay, null when the Q table is updated at every learn step
+     */
+    public ReplayConfig getReplay() {
+        return replay;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free handoff of Q table transitions from one collector thread to one
+ * learner thread.
+ *
+ * A bounded single producer, single consumer ring of primitive arrays. The
+ * collector writes a transition and then publishes its sequence number, the
+ * learner reads every published transition and then releases their slots,
+ * both with ordered writes and no locks. The collector never waits: a
+ * transition offered while the ring is full is dropped and counted.
+ */
+public class TransitionHandoff {
+
+    private final int mask;
+    private final int[] state;
+    private final int[] job;
+    private final int[] dest;
+    private final int[] nextstate;
+    private final double[] reward;
+    private final AtomicLong tail = new AtomicLong(); // Transitions published by the collector
+    private final AtomicLong head = new AtomicLong(); // Transitions taken by the learner
+    private long dropped; // Written by the collector only
+
+    /**
+     * @param capacity max number of transitions waiting, rounded up to a power of 2
+     */
+    public TransitionHandoff(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Handoff capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity * 2 - 1);
+        this.mask = size - 1;
+        this.state = new int[size];
+        this.job = new int[size];
+        this.dest = new int[size];
+        this.nextstate = new int[size];
+        this.reward = new double[size];
+    }
+
+    /**
+     * Publish a transition. Collector thread only.
+     *
+     * @return false when the ring was full and the transition was dropped
+     */
+    public boolean offer(int state, int job, int dest, int nextstate, double reward) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) t & mask;
+        this.state[slot] = state;
+        this.job[slot] = job;
+        this.dest[slot] = dest;
+        this.nextstate[slot] = nextstate;
+        this.reward[slot] = reward;
+        tail.lazySet(t + 1); // Publishes the slot writes
+        return true;
+    }
+
+    /**
+     * Move every published transition to a replay buffer. Learner thread only.
+     *
+     * @return number of transitions moved
+     */
+    public int drainTo(TransitionReplay replay) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            replay.add(state[slot], job[slot], dest[slot], nextstate[slot], reward[slot]);
+        }
+        head.lazySet(t); // Releases the slots to the collector
+        return (int) (t - h);
+    }
+
+    /**
+     * Transitions dropped because the ring was full, read by the collector
+     * or after it finished
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Replay ring buffer of Q table transitions.
+ *
+ * A transition is a learn step: its state, task type, destination VM, next
+ * state and reward. They are stored as one primitive array per field, so the
+ * buffer is allocated once and adding overwrites the oldest transition once
+ * it is full. A sample is returned ordered by Q table row, so a batch of
+ * updates walks the table in row order.
+ */
+public class TransitionReplay {
+
+    private final int capacity;
+    private final int[] state; // Q table state of every transition
+    private final int[] job; // Task type of every transition
+    private final int[] dest; // Destination VM of every transition
+    private final int[] nextstate; // Q table state after every transition
+    private final double[] reward; // Reward of every transition
+    private int next; // Slot of the next transition
+    private int size;
+
+    /**
+     * @param capacity max number of transitions
+     */
+    public TransitionReplay(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Replay capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.state = new int[capacity];
+        this.job = new int[capacity];
+        this.dest = new int[capacity];
+        this.nextstate = new int[capacity];
+        this.reward = new double[capacity];
+    }
+
+    /**
+     * Add a transition, replacing the oldest one when the buffer is full
+     */
+    public void add(int state, int job, int dest, int nextstate, double reward) {
+        this.state[next] = state;
+        this.job[next] = job;
+        this.dest[next] = dest;
+        this.nextstate[next] = nextstate;
+        this.reward[next] = reward;
+        next = next + 1 == capacity ? 0 : next + 1;
+        size = Math.min(size + 1, capacity);
+    }
+
+    /**
+     * Draw transitions uniformly, with replacement, ordered by Q table row
+     *
+     * @param rand random generator
+     * @param n number of transitions
+     * @param tasktype number of task types, the rows of a state
+     * @param order filled with row << 32 | slot of every drawn transition,
+     *            ascending. getSlot() extracts the slot.
+     */
+    public void sample(SplittableRandom rand, int n, int tasktype, long[] order) {
+        for (int i = 0; i < n; i++) {
+            int slot = rand.nextInt(size);
+            long row = (long) state[slot] * tasktype + job[slot];
+            order[i] = row << 32 | slot;
+        }
+        Arrays.sort(order, 0, n);
+    }
+
+    /**
+     * Slot of a sample entry
+     */
+    public static int getSlot(long order) {
+        return (int) order;
+    }
+
+    public int getState(int slot) {
+        return state[slot];
+    }
+
+    public int getJob(int slot) {
+        return job[slot];
+    }
+
+    public int getDest(int slot) {
+        return dest[slot];
+    }
+
+    public int getNextState(int slot) {
+        return nextstate[slot];
+    }
+
+    public double getReward(int slot) {
+        return reward[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+}
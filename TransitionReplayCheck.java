@@ -0,0 +1,64 @@
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of TransitionReplay.
+ *
+ * Adds numbered transitions to buffers of random capacity and draws samples
+ * between the adds. A sample must be ascending by Q table row, every entry
+ * must hold the row of its slot, and every slot must hold one of the last
+ * capacity transitions with all its fields. A large sample must draw every
+ * slot.
+ */
+public class TransitionReplayCheck {
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("TransitionReplay", args, 200, (rand, round) -> {
+            SplittableRandom samplerand = new SplittableRandom(rand.nextLong());
+            int capacity = 1 + rand.nextInt(300);
+            int states = 1 + rand.nextInt(50);
+            int tasktype = 1 + rand.nextInt(4);
+            TransitionReplay replay = new TransitionReplay(capacity);
+            int added = 0;
+            long[] order = new long[4096];
+            int checked = 0;
+            for (int step = 0; step < 20; step++) {
+                int adds = rand.nextInt(2 * capacity);
+                for (int i = 0; i < adds; i++) {
+                    replay.add(rand.nextInt(states), rand.nextInt(tasktype), added % 7, added % 11, added);
+                    added++;
+                }
+                SelfCheck.check(replay.size() == Math.min(added, capacity), "Size " + replay.size() + " after "
+                        + added + " adds to capacity " + capacity);
+                if (added == 0) {
+                    continue;
+                }
+                int n = 1 + rand.nextInt(order.length);
+                replay.sample(samplerand, n, tasktype, order);
+                boolean[] drawn = new boolean[replay.size()];
+                for (int i = 0; i < n; i++) {
+                    SelfCheck.check(i == 0 || order[i - 1] <= order[i], "Sample is not ordered by row");
+                    int slot = TransitionReplay.getSlot(order[i]);
+                    SelfCheck.check(slot >= 0 && slot < replay.size(), "Slot " + slot + " out of " + replay.size());
+                    long row = (long) replay.getState(slot) * tasktype + replay.getJob(slot);
+                    SelfCheck.check(order[i] >>> 32 == row, "Sample row differs from the row of slot " + slot);
+                    int number = (int) replay.getReward(slot);
+                    SelfCheck.check(number < added && number >= added - capacity, "Transition " + number
+                            + " is not one of the last " + capacity + " of " + added);
+                    SelfCheck.check(number % capacity == slot, "Transition " + number + " in slot " + slot);
+                    SelfCheck.check(replay.getDest(slot) == number % 7 && replay.getNextState(slot) == number % 11,
+                            "Fields of transition " + number + " differ");
+                    drawn[slot] = true;
+                }
+                if (n >= 20 * replay.size()) {
+                    for (int slot = 0; slot < drawn.length; slot++) {
+                        SelfCheck.check(drawn[slot], "Slot " + slot + " never drawn in " + n + " draws");
+                    }
+                }
+                checked += n;
+            }
+            replay.clear();
+            SelfCheck.check(replay.size() == 0, "Not empty after clear");
+            return checked;
+        });
+    }
+}
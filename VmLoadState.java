@@ -0,0 +1,147 @@
+import java.util.stream.IntStream;
+
+/**
+ * Load balancing state of the VM queues.
+ *
+ * Keeps the current queue length, the variance from the optimum length and the
+ * total absolute variance of every VM up to date while tasks are migrated, so a
+ * migration costs O(1) instead of re-summing every VM queue.
+ */
+public class VmLoadState {
+
+    private final int[] vmmips;
+    private final int mipssum;
+
+    private final long[] vmqoplen; // VM queue optimum length of task in load balancing
+    private final long[] vmcurqlen; // VM queue current length of task in load balancing
+    private final long[] vmqlvar; // VM queue task variance
+    private final long[] vmqlabsvar; // VM queue task absolute variance
+    private long cursumvmqlabsvar; // Current total VM queue task absolute variance
+    private long tasksum; // Total length of tasks in all VM queues
+
+    public VmLoadState(int[] vmmips) {
+        this.vmmips = vmmips;
+        this.mipssum = IntStream.of(vmmips).sum();
+        this.vmqoplen = new long[vmmips.length];
+        this.vmcurqlen = new long[vmmips.length];
+        this.vmqlvar = new long[vmmips.length];
+        this.vmqlabsvar = new long[vmmips.length];
+    }
+
+    /**
+     * Empty all VM queues before a new batch of tasks
+     */
+    public void clear() {
+        for (int j = 0; j < vmmips.length; j++) {
+            vmqoplen[j] = 0;
+            vmcurqlen[j] = 0;
+            vmqlvar[j] = 0;
+            vmqlabsvar[j] = 0;
+        }
+        cursumvmqlabsvar = 0;
+        tasksum = 0;
+    }
+
+    /**
+     * Add a task to a VM queue while the batch is built. Call balance() once
+     * the batch is complete.
+     *
+     * @param vm VM index
+     * @param length task length
+     */
+    public void add(int vm, long length) {
+        vmcurqlen[vm] = vmcurqlen[vm] + length;
+        tasksum = tasksum + length;
+    }
+
+    /**
+     * Remove a completed task from a VM queue. Call balance() before the
+     * variances are used again.
+     *
+     * @param vm VM index
+     * @param length task length
+     */
+    public void remove(int vm, long length) {
+        vmcurqlen[vm] = vmcurqlen[vm] - length;
+        tasksum = tasksum - length;
+    }
+
+    /**
+     * Calc Load Balancing Coefficient, VM queue optimum length, variance and
+     * absolute variance and the current total absolute variance of the batch
+     */
+    public void balance() {
+        double lbco = (double) tasksum / mipssum; // Calc Load Balancing Coefficient
+
+        cursumvmqlabsvar = 0;
+        for (int j = 0; j < vmmips.length; j++) {
+            vmqoplen[j] = Math.round(lbco * vmmips[j]);
+            vmqlvar[j] = vmqoplen[j] - vmcurqlen[j];
+            vmqlabsvar[j] = Math.abs(vmqlvar[j]);
+            cursumvmqlabsvar = cursumvmqlabsvar + vmqlabsvar[j];
+        }
+    }
+
+    /**
+     * Total absolute variance if a task were migrated, without changing the state
+     *
+     * @param source source VM index
+     * @param dest destination VM index
+     * @param length task length
+     */
+    public long getSumAbsVarianceAfterMove(int source, int dest, long length) {
+        long sourceVmQlAbsvar = Math.abs(vmqoplen[source] - (vmcurqlen[source] - length));
+        long destVmQlAbsvar = Math.abs(vmqoplen[dest] - (vmcurqlen[dest] + length));
+        return cursumvmqlabsvar - vmqlabsvar[source] + sourceVmQlAbsvar
+                - vmqlabsvar[dest] + destVmQlAbsvar;
+    }
+
+    /**
+     * Migrate a task from source VM queue to destination VM queue
+     *
+     * @param source source VM index
+     * @param dest destination VM index
+     * @param length task length
+     */
+    public void move(int source, int dest, long length) {
+        cursumvmqlabsvar = cursumvmqlabsvar - vmqlabsvar[source] - vmqlabsvar[dest];
+
+        vmcurqlen[source] = vmcurqlen[source] - length;
+        vmqlvar[source] = vmqoplen[source] - vmcurqlen[source];
+        vmqlabsvar[source] = Math.abs(vmqlvar[source]);
+
+        vmcurqlen[dest] = vmcurqlen[dest] + length;
+        vmqlvar[dest] = vmqoplen[dest] - vmcurqlen[dest];
+        vmqlabsvar[dest] = Math.abs(vmqlvar[dest]);
+
+        cursumvmqlabsvar = cursumvmqlabsvar + vmqlabsvar[source] + vmqlabsvar[dest];
+    }
+
+    public int getVmCount() {
+        return vmmips.length;
+    }
+
+    public long getLength(int vm) {
+        return vmcurqlen[vm];
+    }
+
+    public long getOptimumLength(int vm) {
+        return vmqoplen[vm];
+    }
+
+    public long getVariance(int vm) {
+        return vmqlvar[vm];
+    }
+
+    public long getAbsVariance(int vm) {
+        return vmqlabsvar[vm];
+    }
+
+    public long getSumAbsVariance() {
+        return cursumvmqlabsvar;
+    }
+
+    public long getTaskSum() {
+        return tasksum;
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Random;
+
+/**
+ * Randomized check of VmLoadState.
+ *
+ * Migrates random tasks between VM queues and compares the incrementally
+ * updated state, and the estimate of every migration, with a state rebuilt
+ * from the queue lengths.
+ */
+public class VmLoadStateCheck {
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("VmLoadState", args, 200, (rand, round) -> {
+            int vmcount = 1 + rand.nextInt(16);
+            int[] vmmips = new int[vmcount];
+            for (int i = 0; i < vmcount; i++) {
+                vmmips[i] = 100 * (1 + rand.nextInt(10));
+            }
+            long[] lengths = new long[vmcount];
+            VmLoadState load = new VmLoadState(vmmips);
+            for (int j = 0; j < 4 * vmcount; j++) {
+                int vm = rand.nextInt(vmcount);
+                long length = 1 + rand.nextInt(1000);
+                load.add(vm, length);
+                lengths[vm] += length;
+            }
+            load.balance();
+            compare(load, rebuild(vmmips, lengths), "balance");
+
+            int checked = 0;
+            for (int step = 0; step < 500; step++) {
+                int source = rand.nextInt(vmcount);
+                int dest = rand.nextInt(vmcount);
+                if (source == dest || lengths[source] == 0) {
+                    continue;
+                }
+                long length = 1 + (long) (rand.nextDouble() * lengths[source]);
+                long estimate = load.getSumAbsVarianceAfterMove(source, dest, length);
+                load.move(source, dest, length);
+                lengths[source] -= length;
+                lengths[dest] += length;
+                SelfCheck.check(estimate == load.getSumAbsVariance(), "Move estimate " + estimate + " but "
+                        + load.getSumAbsVariance() + " after the move");
+                compare(load, rebuild(vmmips, lengths), "move " + source + " -> " + dest);
+                checked++;
+            }
+            return checked;
+        });
+    }
+
+    /**
+     * Load state of the queue lengths, keeping the optimum lengths of the
+     * balanced batch since a move does not change the total
+     */
+    private static VmLoadState rebuild(int[] vmmips, long[] lengths) {
+        VmLoadState load = new VmLoadState(vmmips);
+        for (int i = 0; i < lengths.length; i++) {
+            load.add(i, lengths[i]);
+        }
+        load.balance();
+        return load;
+    }
+
+    private static void compare(VmLoadState actual, VmLoadState expected, String after) {
+        for (int i = 0; i < expected.getVmCount(); i++) {
+            SelfCheck.check(actual.getLength(i) == expected.getLength(i)
+                    && actual.getOptimumLength(i) == expected.getOptimumLength(i)
+                    && actual.getVariance(i) == expected.getVariance(i)
+                    && actual.getAbsVariance(i) == expected.getAbsVariance(i), "VM " + i + " differs after " + after);
+        }
+        SelfCheck.check(actual.getSumAbsVariance() == expected.getSumAbsVariance()
+                && actual.getTaskSum() == expected.getTaskSum(), "Total absolute variance "
+                        + actual.getSumAbsVariance() + ", expected " + expected.getSumAbsVariance() + " after " + after);
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Task queues of the VMs.
+ *
+ * Every VM queue is a packed array with a size counter. Tasks are appended at
+ * the end and removed by moving the last task into the free slot, so append,
+ * remove and random pick are O(1) and do not allocate once the queues have
+ * grown to the batch size.
+ */
+public class VmTaskQueues {
+
+    private final int[][] vmq; // Vm's task queue table, packed from index 0
+    private final int[] vmqsize; // Vm's task queue size
+
+    /**
+     * @param vmcount number of VMs
+     * @param capacity initial capacity of every VM queue
+     */
+    public VmTaskQueues(int vmcount, int capacity) {
+        this.vmq = new int[vmcount][Math.max(capacity, 1)];
+        this.vmqsize = new int[vmcount];
+    }
+
+    /**
+     * Create a random task batch queued round robin, as the test episode does
+     *
+     * @param rand random generator
+     * @param vmcount number of VMs
+     * @param taskcount number of tasks
+     * @param tasktype number of task types
+     * @return Vm's task queues holding task type indexes
+     */
+    public static VmTaskQueues roundRobin(Random rand, int vmcount, int taskcount, int tasktype) {
+        VmTaskQueues vmq = new VmTaskQueues(vmcount, (taskcount + vmcount - 1) / vmcount);
+        int vq = 0;
+        for (int j = 0; j < taskcount; j++) {
+            vmq.add(vq, rand.nextInt(tasktype)); // Create task randomly
+            vq = vq + 1;
+            if (vq == vmcount) {
+                vq = 0;
+            }
+        }
+        return vmq;
+    }
+
+    /**
+     * Create a task batch of given task types queued round robin
+     *
+     * @param tasks task type of every task
+     * @param vmcount number of VMs
+     * @return Vm's task queues holding task type indexes
+     */
+    public static VmTaskQueues roundRobin(int[] tasks, int vmcount) {
+        VmTaskQueues vmq = new VmTaskQueues(vmcount, (tasks.length + vmcount - 1) / vmcount);
+        for (int j = 0; j < tasks.length; j++) {
+            vmq.add(j % vmcount, tasks[j]);
+        }
+        return vmq;
+    }
+
+    /**
+     * Empty all VM queues
+     */
+    public void clear() {
+        Arrays.fill(vmqsize, 0);
+    }
+
+    /**
+     * Append a task at the end of a VM queue
+     *
+     * @param vm VM index
+     * @param task task
+     */
+    public void add(int vm, int task) {
+        int size = vmqsize[vm];
+        if (size == vmq[vm].length) {
+            vmq[vm] = Arrays.copyOf(vmq[vm], size * 2);
+        }
+        vmq[vm][size] = task;
+        vmqsize[vm] = size + 1;
+    }
+
+    /**
+     * Remove a task from a VM queue. The last task of the queue takes its slot.
+     *
+     * @param vm VM index
+     * @param idx task index in the VM queue
+     * @return removed task
+     */
+    public int remove(int vm, int idx) {
+        int size = vmqsize[vm] - 1;
+        int task = vmq[vm][idx];
+        vmq[vm][idx] = vmq[vm][size];
+        vmqsize[vm] = size;
+        return task;
+    }
+
+    /**
+     * Migrate a task from source VM queue to the end of destination VM queue
+     *
+     * @param source source VM index
+     * @param idx task index in the source VM queue
+     * @param dest destination VM index
+     * @return migrated task
+     */
+    public int move(int source, int idx, int dest) {
+        int task = remove(source, idx);
+        add(dest, task);
+        return task;
+    }
+
+    /**
+     * Copy of all VM queues with the same task order
+     */
+    public VmTaskQueues copy() {
+        VmTaskQueues copy = new VmTaskQueues(vmq.length, 1);
+        for (int i = 0; i < vmq.length; i++) {
+            copy.vmq[i] = Arrays.copyOf(vmq[i], Math.max(vmqsize[i], 1));
+            copy.vmqsize[i] = vmqsize[i];
+        }
+        return copy;
+    }
+
+    public int get(int vm, int idx) {
+        return vmq[vm][idx];
+    }
+
+    public int size(int vm) {
+        return vmqsize[vm];
+    }
+
+    public int getVmCount() {
+        return vmqsize.length;
+    }
+}
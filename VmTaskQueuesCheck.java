@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Randomized check of VmTaskQueues.
+ *
+ * Runs random appends, removals, migrations and copies on the packed queues
+ * and on a list per VM, removing from a list the way remove() does, and
+ * compares the queues after every operation.
+ */
+public class VmTaskQueuesCheck {
+
+    public static void main(String[] args) throws Exception {
+        SelfCheck.run("VmTaskQueues", args, 200, (rand, round) -> {
+            int vmcount = 1 + rand.nextInt(8);
+            int[] tasks = new int[rand.nextInt(40)];
+            for (int j = 0; j < tasks.length; j++) {
+                tasks[j] = rand.nextInt(5);
+            }
+            VmTaskQueues vmq = VmTaskQueues.roundRobin(tasks, vmcount);
+            List<List<Integer>> expected = new ArrayList<>();
+            for (int i = 0; i < vmcount; i++) {
+                expected.add(new ArrayList<>());
+            }
+            for (int j = 0; j < tasks.length; j++) {
+                expected.get(j % vmcount).add(tasks[j]);
+            }
+            compare(vmq, expected, "roundRobin");
+
+            int checked = 0;
+            for (int step = 0; step < 500; step++) {
+                int vm = rand.nextInt(vmcount);
+                int op = rand.nextInt(10);
+                String name;
+                if (op < 4 || expected.get(vm).isEmpty()) {
+                    int task = rand.nextInt(5);
+                    vmq.add(vm, task);
+                    expected.get(vm).add(task);
+                    name = "add";
+                } else if (op < 6) {
+                    int idx = rand.nextInt(vmq.size(vm));
+                    int task = vmq.remove(vm, idx);
+                    SelfCheck.check(task == remove(expected.get(vm), idx), "Removed task differs");
+                    name = "remove";
+                } else if (op < 9) {
+                    int dest = rand.nextInt(vmcount);
+                    int idx = rand.nextInt(vmq.size(vm));
+                    int task = vmq.move(vm, idx, dest);
+                    SelfCheck.check(task == remove(expected.get(vm), idx), "Migrated task differs");
+                    expected.get(dest).add(task);
+                    name = "move";
+                } else {
+                    VmTaskQueues copy = vmq.copy();
+                    compare(copy, expected, "copy");
+                    copy.add(vm, 0); // The copy must not share queues
+                    name = "copy";
+                }
+                compare(vmq, expected, name);
+                checked++;
+            }
+            vmq.clear();
+            for (int i = 0; i < vmcount; i++) {
+                SelfCheck.check(vmq.size(i) == 0, "VM " + i + " not empty after clear");
+            }
+            return checked;
+        });
+    }
+
+    /**
+     * Remove from a list like VmTaskQueues.remove(): the last task takes the
+     * slot
+     */
+    private static int remove(List<Integer> queue, int idx) {
+        int task = queue.get(idx);
+        queue.set(idx, queue.get(queue.size() - 1));
+        queue.remove(queue.size() - 1);
+        return task;
+    }
+
+    private static void compare(VmTaskQueues actual, List<List<Integer>> expected, String after) {
+        SelfCheck.check(actual.getVmCount() == expected.size(), "VM count differs after " + after);
+        for (int i = 0; i < expected.size(); i++) {
+            List<Integer> queue = expected.get(i);
+            SelfCheck.check(actual.size(i) == queue.size(), "Size of VM " + i + " differs after " + after);
+            for (int j = 0; j < queue.size(); j++) {
+                SelfCheck.check(actual.get(i, j) == queue.get(j),
+                        "Task " + j + " of VM " + i + " differs after " + after);
+            }
+        }
+    }
+}